@@ -51,6 +51,26 @@ public class Settings {
         }
     }
 
+    /**
+     * Enumerates settings that may be defined by the client. Parameter name of every setting is the constant name
+     * in lower case.
+     */
+    public enum Key {
+
+        PROFILE, LANGUAGE, MARKUP;
+
+        public String getParameterName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Processor<?>[] PROCESSORS_BY_KEY = new Processor<?>[Key.values().length];
+    static {
+        for (Key key : Key.values()) {
+            PROCESSORS_BY_KEY[key.ordinal()] = PROCESSORS_BY_PARAM_NAME.get(key.getParameterName());
+        }
+    }
+
     private static final String CURRENT_SETTINGS_PARAM_NAME = "current";
     private static final String ALL_SETTINGS_PARAM_NAME     = "all";
     
@@ -84,6 +104,22 @@ public class Settings {
         }
     }
     
+    /**
+     * Registers target setting within the current object. Doesn't allocate new objects, i.e. is intended to be used
+     * during the request data tokenizing.
+     *
+     * @param key       target key
+     * @param buffer    buffer that holds target value
+     * @param start     value start offset within the given buffer (inclusive)
+     * @param end       value end offset within the given buffer (exclusive)
+     */
+    public void setSetting(Key key, char[] buffer, int start, int end) {
+        final Processor<?> processor = PROCESSORS_BY_KEY[key.ordinal()];
+        if (processor != null) {
+            processor.update(buffer, start, end, this);
+        }
+    }
+
     /**
      * @return      settings to deliver to the rendering context for the actual rendering
      */
@@ -135,15 +171,21 @@ public class Settings {
         private final Map<String, T> STRING_TO_VALUE   = new HashMap<String, T>();
         private final List<String>   ALL_STRING_VALUES = new ArrayList<String>();
         
-        private final String paramName;
+        private final String   paramName;
+        private final T[]      values;
+        private final char[][] stringValues;
         
         Processor(String paramName, T... values) {
             this.paramName = paramName;
-            for (T value : values) {
+            this.values = values;
+            stringValues = new char[values.length][];
+            for (int i = 0; i < values.length; i++) {
+                T value = values[i];
                 String s = value.toString().toLowerCase().replace('_', '-');
                 VALUE_TO_STRING.put(value, s);
                 STRING_TO_VALUE.put(s, value);
                 ALL_STRING_VALUES.add(s);
+                stringValues[i] = s.toCharArray();
             }
         }
 
@@ -163,6 +205,27 @@ public class Settings {
             }
         }
 
+        @SuppressWarnings({"MismatchedQueryAndUpdateOfCollection"})
+        public void update(char[] buffer, int start, int end, Settings settings) {
+            for (int i = 0; i < stringValues.length; i++) {
+                char[] s = stringValues[i];
+                if (s.length != end - start) {
+                    continue;
+                }
+                int j = 0;
+                while (j < s.length && s[j] == buffer[start + j]) {
+                    j++;
+                }
+                if (j < s.length) {
+                    continue;
+                }
+                doUpdate(values[i], settings);
+                Map<String, Object> current = getRendererSettings(settings.rendererSettings, CURRENT_SETTINGS_PARAM_NAME);
+                current.put(paramName, ALL_STRING_VALUES.get(i));
+                return;
+            }
+        }
+
         @SuppressWarnings({"unchecked", "MismatchedQueryAndUpdateOfCollection"})
         public void update(T value, Settings settings) {
             doUpdate(value, settings);
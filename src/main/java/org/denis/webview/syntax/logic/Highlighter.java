@@ -1,9 +1,9 @@
 package org.denis.webview.syntax.logic;
 
+import org.denis.webview.util.io.ChunkedCharBuffer;
 import org.denis.webview.util.io.SymbolCountingReader;
 
 import java.io.IOException;
-import java.io.Reader;
 
 /**
  * Defines common contract for the algorithm that traverses given symbol stream and notifies interested clients
@@ -15,16 +15,61 @@ import java.io.Reader;
 public interface Highlighter {
 
     /**
-     * Processes given symbol stream and notifies all {@link #addListener(Listener) registered listeners}
-     * about discovered tokens.
+     * Processes given symbol stream and notifies all {@link #addSink(TokenSink) registered sinks} and
+     * {@link #addListener(Listener) listeners} about discovered tokens.
      * 
      * @param reader    target data provider
      * @throws IOException      in case of unexpected I/O problem with the given symbol stream
      */
     void process(SymbolCountingReader reader) throws IOException;
 
+    /**
+     * Processes given symbol stream as {@link #process(SymbolCountingReader)} does and additionally records lexer
+     * state checkpoints every {@link LexerCheckpoints#getLinesInterval() N lines} to the given holder. That allows
+     * to resume lexing from the nearest checkpoint instead of the document start later.
+     *
+     * @param reader        target data provider
+     * @param checkpoints   holder of the checkpoints to use (it's cleared before the processing);
+     *                      <code>null</code> means that no checkpoints should be recorded
+     * @throws IOException      in case of unexpected I/O problem with the given symbol stream
+     */
+    void process(SymbolCountingReader reader, LexerCheckpoints checkpoints) throws IOException;
+
+    /**
+     * Processes given in-memory text and notifies all {@link #addSink(TokenSink) registered sinks} and
+     * {@link #addListener(Listener) listeners} about discovered tokens.
+     * <p/>
+     * If chunk-parallel lexing is turned on, large texts are split by lines to the chunks that are lexed
+     * concurrently. Every chunk is lexed from the initial lexical state and is re-lexed if the state at the end of
+     * the previous chunk differs from it, so, the tokens are the same as the ones discovered by the sequential
+     * processing. Tokens are delivered in order at the calling thread.
+     *
+     * @param text      target text holder
+     * @throws IOException      in case of unexpected I/O problem during the processing
+     */
+    void process(ChunkedCharBuffer text) throws IOException;
+
+    /**
+     * Registers given sink within the current highlighter.
+     *
+     * @param sink      sink to register
+     * @return          <code>true</code> if no such sink was registered before; <code>false</code> otherwise
+     */
+    boolean addSink(TokenSink sink);
+
+    /**
+     * De-registers previously registered sink.
+     *
+     * @param sink      sink to de-register
+     * @return          <code>true</code> if given sink really was registered; <code>false</code> otherwise
+     */
+    boolean removeSink(TokenSink sink);
+
     /**
      * Registers given listener within the current highlighter.
+     * <p/>
+     * Listeners receive {@link TokenInfo} object per token, so, it's recommended to use
+     * {@link #addSink(TokenSink) sinks} for the performance-sensitive processing.
      * 
      * @param listener    listener to register
      * @return            <code>true</code> if no such listener was registered before; <code>false</code> otherwise
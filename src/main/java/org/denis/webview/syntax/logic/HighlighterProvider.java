@@ -3,21 +3,42 @@ package org.denis.webview.syntax.logic;
 import org.apache.log4j.Logger;
 import org.denis.webview.config.SourceType;
 import org.denis.webview.settings.Settings;
+import org.denis.webview.util.io.ChunkedCharBuffer;
 import org.denis.webview.util.io.SymbolCountingReader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Reader;
-import java.lang.reflect.Constructor;
+import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 'Glue' class between the application spring-infrastructure and generated lexers.
  * <p/>
+ * Lexers are provided by the {@link LexerFactory lexer factories} registered via {@link ServiceLoader}. Factories
+ * are resolved once during the initialization and {@link LexerPool lexer pools} are created lazily, i.e.
+ * lexers of particular source type are not loaded until the source of that type is processed.
+ * <p/>
+ * Large in-memory texts may be {@link Highlighter#process(ChunkedCharBuffer) lexed} by chunks concurrently at the
+ * provider's thread pool. That is turned off by default as not all platforms allow to create threads (e.g. legacy
+ * <code>Google App Engine</code> runtime doesn't), see {@link #setParallelism(int)}. Chunks are lexed by the
+ * lexers of the dedicated pools, so, they never compete with the requests for the pooled lexers.
+ * <p/>
  * Thread-safe.
  *
  * @author Denis Zhdanov
@@ -26,15 +47,81 @@ import java.util.concurrent.ConcurrentMap;
 @Component
 public class HighlighterProvider {
 
+    /** Min length of the in-memory text that is lexed by chunks concurrently. */
+    public static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    /** Min length of the text chunk lexed by the single thread. */
+    public static final int MIN_CHUNK_LENGTH = 64 * 1024;
+
+    /** Default max number of the text chunks lexed concurrently, i.e. chunk-parallel lexing is off by default. */
+    public static final int DEFAULT_PARALLELISM = 1;
+
     private static final Logger LOG = Logger.getLogger(HighlighterProvider.class);
 
-    private final ConcurrentMap<SourceType, Class<? extends Lexer>> highlighters
-            = new ConcurrentHashMap<SourceType, Class<? extends Lexer>>();
+
+    private final ConcurrentMap<SourceType, LexerFactory> factories
+            = new ConcurrentHashMap<SourceType, LexerFactory>();
+    private final ConcurrentMap<SourceType, LexerPool> lexerPools = new ConcurrentHashMap<SourceType, LexerPool>();
+    private final ConcurrentMap<SourceType, LexerPool> chunkLexerPools
+            = new ConcurrentHashMap<SourceType, LexerPool>();
+
+    /**
+     * Is created on demand as well as its threads, i.e. there are no lexing threads until a large text is processed
+     * with chunk-parallel lexing turned on. Guarded by <code>this</code>.
+     */
+    private ExecutorService lexingExecutor;
+    private volatile int    parallelism;
 
     private Settings settings;
-    
+
+    public HighlighterProvider() {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Creates new <code>HighlighterProvider</code> object.
+     *
+     * @param parallelism   max number of the text chunks lexed concurrently
+     * @throws IllegalArgumentException     if given parallelism is not positive
+     */
+    public HighlighterProvider(int parallelism) throws IllegalArgumentException {
+        setParallelism(parallelism);
+    }
+
     public Highlighter getHighlighter() {
-        return new HighlighterImpl(highlighters.get(settings.getSourceType()));
+        SourceType sourceType = settings.getSourceType();
+        int parallelismToUse = parallelism;
+        if (parallelismToUse < 2) {
+            return new HighlighterImpl(getLexerPool(sourceType), null, null, 1);
+        }
+        return new HighlighterImpl(getLexerPool(sourceType), getChunkLexerPool(sourceType), getLexingExecutor(),
+                                   parallelismToUse);
+    }
+
+    /**
+     * @param sourceType    target source type
+     * @return              pool of the lexers for the given source type, it exposes usage statistics
+     */
+    public LexerPool getLexerPool(SourceType sourceType) {
+        LexerPool result = lexerPools.get(sourceType);
+        if (result != null) {
+            return result;
+        }
+        LexerFactory factory = factories.get(sourceType);
+        if (factory == null) {
+            factory = new EmptyLexerFactory(sourceType);
+        }
+        result = new LexerPool(factory, LexerPool.DEFAULT_CAPACITY, LexerPool.DEFAULT_MAX_WAIT_MILLIS);
+        LexerPool existing = lexerPools.putIfAbsent(sourceType, result);
+        return existing == null ? result : existing;
+    }
+
+    /**
+     * @return      <code>true</code> if in-memory texts that are not shorter than {@link #PARALLEL_THRESHOLD} are lexed
+     *              by chunks concurrently; <code>false</code> otherwise
+     */
+    public boolean isParallelLexingOn() {
+        return parallelism > 1;
     }
 
     @Autowired
@@ -42,109 +129,546 @@ public class HighlighterProvider {
         this.settings = settings;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Allows to turn chunk-parallel lexing of the large in-memory texts on. It uses own threads, so, it should be
+     * turned on only at the platforms that allow to create threads. Is expected to be called before the processing
+     * starts.
+     *
+     * @param parallelism   max number of the text chunks lexed concurrently; values greater than one turn
+     *                      chunk-parallel lexing on
+     * @throws IllegalArgumentException     if given parallelism is not positive
+     */
+    @Value("${lexingParallelism}")
+    public void setParallelism(int parallelism) throws IllegalArgumentException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format("Can't set lexing parallelism. Reason: given "
+                + "parallelism is not positive (%d)", parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param sourceType    target source type
+     * @return              pool of the lexers used for the chunk-parallel lexing of the given source type
+     */
+    private LexerPool getChunkLexerPool(SourceType sourceType) {
+        LexerPool result = chunkLexerPools.get(sourceType);
+        if (result != null) {
+            return result;
+        }
+        LexerFactory factory = factories.get(sourceType);
+        if (factory == null) {
+            factory = new EmptyLexerFactory(sourceType);
+        }
+        // Pooled lexers are used only by the lexing threads, so, the pool never waits.
+        result = new LexerPool(factory, parallelism, 0);
+        LexerPool existing = chunkLexerPools.putIfAbsent(sourceType, result);
+        return existing == null ? result : existing;
+    }
+
+    private synchronized ExecutorService getLexingExecutor() {
+        if (lexingExecutor == null) {
+            lexingExecutor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread result = new Thread(r, "lexer-" + counter.incrementAndGet());
+                    result.setDaemon(true);
+                    return result;
+                }
+            });
+        }
+        return lexingExecutor;
+    }
+
     @PostConstruct
     public void init() {
+        long start = System.nanoTime();
+        try {
+            for (LexerFactory factory : ServiceLoader.load(LexerFactory.class, getClass().getClassLoader())) {
+                LexerFactory previous = factories.putIfAbsent(factory.getSourceType(), factory);
+                if (previous != null) {
+                    LOG.warn(String.format("Several lexer factories are registered for source type '%s' - %s and %s. "
+                                           + "The first one is used", factory.getSourceType(), previous, factory));
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            LOG.warn("Can't load lexer factories", e);
+        }
         for (SourceType sourceType : SourceType.values()) {
-            String name = sourceType.name();
-            String className = String.format("org.denis.webview.syntax.logic.%s.%sLexer",
-                    name.toLowerCase(), Character.toUpperCase(name.charAt(0)) + name.substring(1).toLowerCase());
-            try {
-                Class<?> clazz = getClass().getClassLoader().loadClass(className);
-                highlighters.put(sourceType, (Class<? extends Lexer>) clazz);
-            } catch (Throwable e) {
-                highlighters.put(sourceType, EmptyLexer.class);
-                LOG.warn(String.format("Can't instantiate lexer for source type '%s' (tried class with name %s)",
-                        sourceType, name), e);
+            if (!factories.containsKey(sourceType)) {
+                LOG.warn(String.format("No lexer factory is registered for source type '%s'", sourceType));
             }
         }
+        LOG.info(String.format("Lexer factories are resolved in %d us: %s",
+                               TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), factories.keySet()));
+    }
+
+    @PreDestroy
+    public synchronized void dispose() {
+        if (lexingExecutor != null) {
+            lexingExecutor.shutdownNow();
+            lexingExecutor = null;
+        }
+    }
+
+    private static class EmptyLexerFactory implements LexerFactory {
+
+        private final SourceType sourceType;
+
+        EmptyLexerFactory(SourceType sourceType) {
+            this.sourceType = sourceType;
+        }
+
+        @Override
+        public SourceType getSourceType() {
+            return sourceType;
+        }
+
+        @Override
+        public Lexer createLexer() {
+            return new EmptyLexer(null);
+        }
     }
 
     private static class EmptyLexer implements Lexer {
 
-        private final Reader reader;
+        private Reader reader;
 
         public EmptyLexer(Reader reader) {
             this.reader = reader;
         }
 
-        @SuppressWarnings({"StatementWithEmptyBody"})
         @Override
-        public List<TokenInfo> advance() throws IOException {
+        public void yyreset(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void yybegin(int state) {
+        }
+
+        @Override
+        public int yystate() {
+            return 0;
+        }
+
+        @Override
+        public void lex(TokenSink sink, LexerCheckpoints checkpoints) throws IOException {
             char[] buffer = new char[256];
-            while (reader.read(buffer) >= 0) ;
-            return null;
+            int offset = 0;
+            int linesToCheckpoint = checkpoints == null ? 0 : checkpoints.getLinesInterval();
+            for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+                if (checkpoints == null) {
+                    continue;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n' && --linesToCheckpoint <= 0) {
+                        linesToCheckpoint = checkpoints.getLinesInterval();
+                        checkpoints.add(offset + i + 1, 0);
+                    }
+                }
+                offset += read;
+            }
         }
     }
     
-    private static class HighlighterImpl implements Highlighter {
-        
-        private final Set<Listener> listeners = new HashSet<Listener>();
-        private final Class<? extends Lexer> lexerClass;
+    /**
+     * Dispatches tokens to the registered sinks.
+     * <p/>
+     * Sinks are stored at the arrays that are replaced on every registration change, so, the dispatch doesn't
+     * allocate iterators. Single registered sink (the common case) is notified without iterating the array at all.
+     */
+    private static class HighlighterImpl implements Highlighter, TokenSink {
 
-        public HighlighterImpl(Class<? extends Lexer> lexerClass) {
-            this.lexerClass = lexerClass;
+        private static final TokenSink[]      NO_SINKS       = new TokenSink[0];
+        private static final TokenBatchSink[] NO_BATCH_SINKS = new TokenBatchSink[0];
+
+        /** Max number of tokens accumulated for the batch sinks. */
+        private static final int BATCH_SIZE = 512;
+
+        private final LexerPool       lexerPool;
+        private final LexerPool       chunkLexerPool;
+        private final ExecutorService executor;
+        private final int             parallelism;
+
+        /** Sinks that are notified per token. */
+        private TokenSink[] sinks = NO_SINKS;
+
+        /** The only element of the {@link #sinks} if it's single; <code>null</code> otherwise. */
+        private TokenSink singleSink;
+
+        private TokenBatchSink[] batchSinks = NO_BATCH_SINKS;
+        private int[]            batch;
+        private int              batchLength;
+
+        private int numberOfEndTokensToProvide;
+        private int lastTokenEndOffset;
+
+        public HighlighterImpl(LexerPool lexerPool, LexerPool chunkLexerPool, ExecutorService executor,
+                               int parallelism)
+        {
+            this.lexerPool = lexerPool;
+            this.chunkLexerPool = chunkLexerPool;
+            this.executor = executor;
+            this.parallelism = parallelism;
         }
 
 
         @Override
         public void process(SymbolCountingReader reader) throws IOException {
+            process(reader, null);
+        }
+
+        @Override
+        public void process(SymbolCountingReader reader, LexerCheckpoints checkpoints) throws IOException {
+            Reader readerToUse = reader;
+//            readerToUse = new org.denis.webview.util.io.DebugReader(readerToUse);
+            if (batchSinks.length > 0) {
+                readerToUse = new BatchFlushingReader(readerToUse);
+            }
             Lexer lexer;
             try {
-                Constructor<? extends Lexer> constructor = lexerClass.getConstructor(Reader.class);
-//                lexer = constructor.newInstance(new org.denis.webview.util.io.DebugReader(reader));
-                lexer = constructor.newInstance(reader);
+                lexer = lexerPool.acquire(readerToUse);
             } catch (Exception e) {
                 LOG.error(e);
-                new HighlighterImpl(EmptyLexer.class).process(reader);
+                process(new EmptyLexer(readerToUse), reader, checkpoints);
                 return;
             }
-            int numberOfEndTokensToProvide = 0;
-            int lastTokenEndOffset = 0;
-            for (List<TokenInfo> tokenInfos = lexer.advance(); tokenInfos != null; tokenInfos = lexer.advance()) {
-                for (TokenInfo tokenInfo : tokenInfos) {
-                    lastTokenEndOffset = tokenInfo.getEndOffset();
-                    for (Listener listener : listeners) {
-                        listener.onToken(tokenInfo);
-                    }
-                    switch (tokenInfo.getTokenType().getCategory()) {
-                        case END:
-                        case END_LOOK_AHEAD: --numberOfEndTokensToProvide; break;
-                        case START:
-                            ++numberOfEndTokensToProvide;
-                            break;
-                        case COMPLETE:
+            try {
+                process(lexer, reader, checkpoints);
+            } finally {
+                lexerPool.release(lexer);
+            }
+        }
+
+        private void process(Lexer lexer, SymbolCountingReader reader, LexerCheckpoints checkpoints)
+            throws IOException
+        {
+            numberOfEndTokensToProvide = 0;
+            lastTokenEndOffset = 0;
+            batchLength = 0;
+            if (checkpoints != null) {
+                checkpoints.clear();
+            }
+            lexer.lex(this, checkpoints);
+            finish(reader.getReadSymbolsNumber());
+        }
+
+        @Override
+        public void process(ChunkedCharBuffer text) throws IOException {
+            int length = text.length();
+            int chunksNumber = Math.min(parallelism, length / MIN_CHUNK_LENGTH);
+            if (executor == null || length < PARALLEL_THRESHOLD || chunksNumber < 2) {
+                process(new SymbolCountingReader(text.getReader()));
+                return;
+            }
+
+            // Split the text at line starts.
+            int[] bounds = new int[chunksNumber + 1];
+            int count = 1;
+            for (int i = 1; i < chunksNumber; i++) {
+                int bound = i * (length / chunksNumber);
+                while (bound < length && text.charAt(bound - 1) != '\n') {
+                    bound++;
+                }
+                if (bound > bounds[count - 1] && bound < length) {
+                    bounds[count++] = bound;
+                }
+            }
+            bounds[count] = length;
+
+            // All chunks except the first one start from the guessed initial state.
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(count - 1);
+            try {
+                for (int i = 1; i < count; i++) {
+                    futures.add(executor.submit(new Chunk(chunkLexerPool, text, bounds[i], bounds[i + 1], 0)));
+                }
+                numberOfEndTokensToProvide = 0;
+                lastTokenEndOffset = 0;
+                batchLength = 0;
+                Chunk previous = new Chunk(lexerPool, text, bounds[0], bounds[1], 0).call();
+                dispatch(previous);
+                int mispredictions = 0;
+                for (int i = 1; i < count; i++) {
+                    Chunk chunk = get(futures.get(i - 1));
+                    if (chunk.startState != previous.endState) {
+                        mispredictions++;
+                        chunk = new Chunk(lexerPool, text, bounds[i], bounds[i + 1], previous.endState).call();
                     }
+                    dispatch(chunk);
+                    previous = chunk;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Lexed %d symbols by %d chunks, %d chunks are re-lexed",
+                                            length, count, mispredictions));
+                }
+            } finally {
+                for (Future<Chunk> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            finish(length);
+        }
+
+        private void dispatch(Chunk chunk) {
+            int[] tokens = chunk.tokens;
+            for (int i = 0; i < chunk.size; i += TokenBatchSink.TOKEN_SIZE) {
+                onToken(tokens[i], tokens[i + 1], tokens[i + 2]);
+            }
+        }
+
+        private static Chunk get(Future<Chunk> future) throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during waiting for the lexed text chunk");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
                 }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Can't lex text chunk", cause);
             }
+        }
 
+        /**
+         * Dispatches trailing tokens after the whole text is lexed and flushes accumulated tokens.
+         *
+         * @param totalReadSymbolsNumber    processed text length
+         */
+        private void finish(int totalReadSymbolsNumber) {
             // There is a possible case that particular token of category 'end' is not found (e.g. we discovered
             // end-of-line comment start but the input doesn't ends with line feed symbol). We want to provide
             // artificial 'end tokens' then.
-            int totalReadSymbolsNumber = reader.getReadSymbolsNumber();
             if (numberOfEndTokensToProvide > 0) {
-                TokenInfo tokenInfo = new TokenInfo(TokenType.END_TOKEN, totalReadSymbolsNumber, totalReadSymbolsNumber);
-                for (Listener listener : listeners) {
-                    for (int i = numberOfEndTokensToProvide; i > 0; i--) {
-                        listener.onToken(tokenInfo);
-                    }
+                for (int i = numberOfEndTokensToProvide; i > 0; i--) {
+                    dispatch(TokenTypeRegistry.END_TOKEN_ID, totalReadSymbolsNumber, totalReadSymbolsNumber);
                 }
             } else if (totalReadSymbolsNumber > lastTokenEndOffset) {
-                TokenInfo tokenInfo = new TokenInfo(null, lastTokenEndOffset, totalReadSymbolsNumber);
-                for (Listener listener : listeners) {
-                    listener.onToken(tokenInfo);
+                dispatch(TokenTypeRegistry.NO_TYPE_ID, lastTokenEndOffset, totalReadSymbolsNumber);
+            }
+            flushBatch();
+        }
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            lastTokenEndOffset = end;
+            dispatch(typeId, start, end);
+            TokenType.Category category = TokenTypeRegistry.getCategory(typeId);
+            if (category == null) {
+                return;
+            }
+            switch (category) {
+                case END:
+                case END_LOOK_AHEAD: --numberOfEndTokensToProvide; break;
+                case START:
+                    ++numberOfEndTokensToProvide;
+                    break;
+                case COMPLETE:
+            }
+        }
+
+        private void dispatch(int typeId, int start, int end) {
+            if (singleSink != null) {
+                singleSink.onToken(typeId, start, end);
+            } else {
+                for (TokenSink sink : sinks) {
+                    sink.onToken(typeId, start, end);
+                }
+            }
+
+            if (batch == null) {
+                return;
+            }
+            if (batchLength >= batch.length) {
+                flushBatch();
+            }
+            batch[batchLength++] = typeId;
+            batch[batchLength++] = start;
+            batch[batchLength++] = end;
+        }
+
+        private void flushBatch() {
+            if (batchLength <= 0) {
+                return;
+            }
+            int count = batchLength / TokenBatchSink.TOKEN_SIZE;
+            batchLength = 0;
+            for (TokenBatchSink sink : batchSinks) {
+                sink.onTokens(batch, count);
+            }
+        }
+
+        @Override
+        public boolean addSink(TokenSink sink) {
+            if (sink instanceof TokenBatchSink) {
+                TokenBatchSink[] newSinks = add(batchSinks, (TokenBatchSink) sink, TokenBatchSink.class);
+                if (newSinks == null) {
+                    return false;
                 }
+                batchSinks = newSinks;
+                if (batch == null) {
+                    batch = new int[BATCH_SIZE * TokenBatchSink.TOKEN_SIZE];
+                }
+                return true;
+            }
+            TokenSink[] newSinks = add(sinks, sink, TokenSink.class);
+            if (newSinks == null) {
+                return false;
             }
+            setSinks(newSinks);
+            return true;
+        }
+
+        @Override
+        public boolean removeSink(TokenSink sink) {
+            if (sink instanceof TokenBatchSink) {
+                TokenBatchSink[] newSinks = remove(batchSinks, (TokenBatchSink) sink, TokenBatchSink.class);
+                if (newSinks == null) {
+                    return false;
+                }
+                batchSinks = newSinks;
+                if (newSinks.length <= 0) {
+                    batch = null;
+                }
+                return true;
+            }
+            TokenSink[] newSinks = remove(sinks, sink, TokenSink.class);
+            if (newSinks == null) {
+                return false;
+            }
+            setSinks(newSinks);
+            return true;
         }
 
         @Override
         public boolean addListener(Listener listener) {
-            return listeners.add(listener);
+            return addSink(new ListenerTokenSink(listener));
         }
 
         @Override
         public boolean removeListener(Listener listener) {
-            return listeners.remove(listener);
+            return removeSink(new ListenerTokenSink(listener));
+        }
+
+        private void setSinks(TokenSink[] sinks) {
+            this.sinks = sinks;
+            singleSink = sinks.length == 1 ? sinks[0] : null;
+        }
+
+        /**
+         * @return      copy of the given array with the given element added; <code>null</code> if the array
+         *              already contains the element
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> T[] add(T[] array, T element, Class<T> clazz) {
+            for (T e : array) {
+                if (e.equals(element)) {
+                    return null;
+                }
+            }
+            T[] result = (T[]) Array.newInstance(clazz, array.length + 1);
+            System.arraycopy(array, 0, result, 0, array.length);
+            result[array.length] = element;
+            return result;
+        }
+
+        /**
+         * @return      copy of the given array with the given element removed; <code>null</code> if the array
+         *              doesn't contain the element
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> T[] remove(T[] array, T element, Class<T> clazz) {
+            for (int i = 0; i < array.length; i++) {
+                if (array[i].equals(element)) {
+                    T[] result = (T[]) Array.newInstance(clazz, array.length - 1);
+                    System.arraycopy(array, 0, result, 0, i);
+                    System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Delivers accumulated tokens to the {@link TokenBatchSink batch sinks} before every read from the
+         * processed symbol stream.
+         */
+        private class BatchFlushingReader extends Reader {
+
+            private final Reader delegate;
+
+            BatchFlushingReader(Reader delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                flushBatch();
+                return delegate.read(cbuf, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+        }
+    }
+
+    /**
+     * Text chunk lexed from the given lexical state, it's tokens and the lexical state at the chunk end.
+     */
+    private static class Chunk implements Callable<Chunk>, TokenSink {
+
+        private final LexerPool         lexerPool;
+        private final ChunkedCharBuffer text;
+        private final int               start;
+        private final int               end;
+
+        public final int startState;
+        public int       endState;
+        public int[]     tokens = new int[256 * TokenBatchSink.TOKEN_SIZE];
+        public int       size;
+
+        Chunk(LexerPool lexerPool, ChunkedCharBuffer text, int start, int end, int startState) {
+            this.lexerPool = lexerPool;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.startState = startState;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            Lexer lexer = lexerPool.acquire(text.getReader(start, end));
+            try {
+                lexer.yybegin(startState);
+                lexer.lex(this, null);
+                endState = lexer.yystate();
+            } finally {
+                lexerPool.release(lexer);
+            }
+            return this;
+        }
+
+        @Override
+        public void onToken(int typeId, int tokenStart, int tokenEnd) {
+            if (size + TokenBatchSink.TOKEN_SIZE > tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[size++] = typeId;
+            tokens[size++] = tokenStart + start;
+            tokens[size++] = tokenEnd + start;
         }
     }
 }
@@ -0,0 +1,461 @@
+package org.denis.webview.syntax.logic;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Highlighting state of the document that is edited by the client and re-highlighted incrementally.
+ * <p/>
+ * Session keeps the document text, discovered tokens and {@link LexerCheckpoints lexer checkpoints} for every line.
+ * When the document is {@link #edit(int, int, CharSequence) edited}, lexing is resumed from the checkpoint of the
+ * line that precedes the edit and stops as soon as the lexer reaches the line start after the edit with the same
+ * lexical state as the one recorded for that line before. Tokens and checkpoints after that line are reused, their
+ * offsets are just shifted by the edit length delta.
+ * <p/>
+ * Offsets are expressed in symbols (<code>char</code> values), line numbers are zero-based.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class HighlightingSession {
+
+    /** Max number of symbols of the session document. */
+    public static final int MAX_LENGTH = 1024 * 1024;
+
+    private static final int INITIAL_TEXT_CAPACITY   = 1024;
+    private static final int INITIAL_TOKENS_CAPACITY = 256 * TokenBatchSink.TOKEN_SIZE;
+
+    /** Max number of symbols given to the lexer per read, limits the lexing after the point where the states match. */
+    private static final int READ_CHUNK_SIZE = 512;
+
+    private final ResyncCheckpoints resyncCheckpoints = new ResyncCheckpoints();
+    private final ResyncSink        resyncSink        = new ResyncSink();
+    private final LexerPool         lexerPool;
+
+    private char[] text = new char[INITIAL_TEXT_CAPACITY];
+    private int    length;
+
+    /** Discovered tokens packed as described at {@link TokenBatchSink}. */
+    private int[] tokens = new int[INITIAL_TOKENS_CAPACITY];
+    private int   tokensNumber;
+
+    /** Holds checkpoint per line start, i.e. <code>i</code>-th checkpoint is the start of the line <code>i + 1</code>. */
+    private LexerCheckpoints checkpoints      = new LexerCheckpoints(1);
+    private LexerCheckpoints spareCheckpoints = new LexerCheckpoints(1);
+
+    private int[] openTokens = new int[16];
+
+    /**
+     * Creates new <code>HighlightingSession</code> object.
+     *
+     * @param lexerPool     pool of the lexers to use for the session document
+     * @throws IllegalArgumentException     if given pool is <code>null</code>
+     */
+    public HighlightingSession(LexerPool lexerPool) throws IllegalArgumentException {
+        if (lexerPool == null) {
+            throw new IllegalArgumentException("Can't create highlighting session. Reason: given lexer pool is null");
+        }
+        this.lexerPool = lexerPool;
+    }
+
+    /**
+     * Replaces the whole session document by the text from the given symbol stream.
+     *
+     * @param reader    new document text
+     * @return          information about the re-highlighted document region
+     * @throws IllegalArgumentException     if given text is longer than {@link #MAX_LENGTH}
+     * @throws IOException                  in case of unexpected I/O problem during reading the given stream
+     */
+    public Change load(Reader reader) throws IllegalArgumentException, IOException {
+        StringBuilder buffer = new StringBuilder();
+        char[] chunk = new char[READ_CHUNK_SIZE];
+        for (int read = reader.read(chunk); read >= 0; read = reader.read(chunk)) {
+            buffer.append(chunk, 0, read);
+            if (buffer.length() > MAX_LENGTH) {
+                throw new IllegalArgumentException(String.format("Can't load highlighting session document. Reason: "
+                    + "it's longer than %d symbols", MAX_LENGTH));
+            }
+        }
+        return edit(0, length, buffer);
+    }
+
+    /**
+     * Applies given edit to the session document and re-highlights affected lines.
+     *
+     * @param offset            offset of the edit
+     * @param removedLength     number of symbols removed from the document starting at the given offset
+     * @param inserted          text inserted to the given offset
+     * @return                  information about the re-highlighted document region
+     * @throws IllegalArgumentException     if given edit doesn't fit the current document or makes it longer than
+     *                                      {@link #MAX_LENGTH}
+     * @throws IOException                  in case of unexpected I/O problem during the lexing
+     */
+    public Change edit(int offset, int removedLength, CharSequence inserted)
+        throws IllegalArgumentException, IOException
+    {
+        if (offset < 0 || removedLength < 0 || offset > length - removedLength || inserted == null) {
+            throw new IllegalArgumentException(String.format("Can't apply edit to the highlighting session. Reason: "
+                + "it doesn't fit the document of length %d (offset %d, removed length %d, inserted text '%s')",
+                length, offset, removedLength, inserted));
+        }
+        if (length - removedLength + inserted.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException(String.format("Can't apply edit to the highlighting session. Reason: "
+                + "the document becomes longer than %d symbols (current length %d, removed length %d, inserted "
+                + "length %d)", MAX_LENGTH, length, removedLength, inserted.length()));
+        }
+        int delta = inserted.length() - removedLength;
+        int oldLinesNumber = getLinesNumber();
+
+        // The line that contains edit start may start with a line feed part, e.g. '\n' after '\r', so, lexing
+        // is resumed from the line before it.
+        int resumeIndex = checkpoints.find(offset - 1);
+        int resumeOffset = resumeIndex < 0 ? 0 : checkpoints.getOffset(resumeIndex);
+        int resumeState = resumeIndex < 0 ? 0 : checkpoints.getState(resumeIndex);
+
+        replaceText(offset, removedLength, inserted);
+        int firstAffectedToken = findFirstToken(resumeOffset);
+
+        resyncCheckpoints.start(resumeOffset, offset + inserted.length(), delta);
+        resyncSink.start(resumeOffset);
+        Lexer lexer = lexerPool.acquire(new ResyncReader(resumeOffset));
+        try {
+            lexer.yybegin(resumeState);
+            lexer.lex(resyncSink, resyncCheckpoints);
+        } finally {
+            lexerPool.release(lexer);
+        }
+
+        // Merge checkpoints.
+        LexerCheckpoints merged = spareCheckpoints;
+        merged.clear();
+        for (int i = 0; i <= resumeIndex; i++) {
+            merged.add(checkpoints.getOffset(i), checkpoints.getState(i));
+        }
+        for (int i = 0; i < resyncCheckpoints.size(); i++) {
+            merged.add(resyncCheckpoints.getOffset(i), resyncCheckpoints.getState(i));
+        }
+        int resyncIndex = resyncCheckpoints.resyncIndex;
+        if (resyncIndex >= 0) {
+            for (int i = resyncIndex; i < checkpoints.size(); i++) {
+                merged.add(checkpoints.getOffset(i) + delta, checkpoints.getState(i));
+            }
+        }
+        spareCheckpoints = checkpoints;
+        checkpoints = merged;
+
+        // Merge tokens.
+        int tailStart = tokensNumber;
+        if (resyncIndex >= 0) {
+            tailStart = findFirstToken(resyncCheckpoints.resyncOffset - delta);
+        }
+        int tailLength = tokensNumber - tailStart;
+        int relexedStart = firstAffectedToken * TokenBatchSink.TOKEN_SIZE;
+        int tailTarget = relexedStart + resyncSink.size;
+        ensureTokensCapacity(tailTarget + tailLength * TokenBatchSink.TOKEN_SIZE);
+        System.arraycopy(
+            tokens, tailStart * TokenBatchSink.TOKEN_SIZE, tokens, tailTarget, tailLength * TokenBatchSink.TOKEN_SIZE
+        );
+        for (int i = tailTarget, end = tailTarget + tailLength * TokenBatchSink.TOKEN_SIZE; i < end;
+             i += TokenBatchSink.TOKEN_SIZE)
+        {
+            tokens[i + 1] += delta;
+            tokens[i + 2] += delta;
+        }
+        System.arraycopy(resyncSink.buffer, 0, tokens, relexedStart, resyncSink.size);
+        tokensNumber = firstAffectedToken + resyncSink.size / TokenBatchSink.TOKEN_SIZE + tailLength;
+
+        int startLine = resumeIndex + 1;
+        if (resyncIndex < 0) {
+            return new Change(resumeOffset, length, startLine, oldLinesNumber, getLinesNumber());
+        }
+        return new Change(resumeOffset, resyncCheckpoints.resyncOffset, startLine, resyncIndex + 1,
+                          startLine + resyncCheckpoints.size() + 1);
+    }
+
+    /**
+     * Notifies given sink about the tokens of the given document region in a way that the region may be
+     * processed independently from the rest of the document, i.e. the tokens that are started before the region
+     * and are not finished yet are provided as zero-length tokens at the region start and all tokens that are not
+     * finished at the region end are closed by zero-length {@link TokenType#END_TOKEN end tokens}.
+     *
+     * @param start     region start offset, is expected to be a line start
+     * @param end       region end offset, is expected to be a line start or the document end
+     * @param sink      sink to notify
+     */
+    public void replay(int start, int end, TokenSink sink) {
+        int first = findFirstToken(start);
+        int depth = 0;
+        for (int i = 0, limit = first * TokenBatchSink.TOKEN_SIZE; i < limit; i += TokenBatchSink.TOKEN_SIZE) {
+            depth = updateOpenTokens(tokens[i], depth);
+        }
+        for (int i = 0; i < depth; i++) {
+            sink.onToken(openTokens[i], start, start);
+        }
+        for (int i = first * TokenBatchSink.TOKEN_SIZE, limit = tokensNumber * TokenBatchSink.TOKEN_SIZE; i < limit;
+             i += TokenBatchSink.TOKEN_SIZE)
+        {
+            int tokenStart = tokens[i + 1];
+            if (tokenStart > end || (tokenStart == end && end < length)) {
+                break;
+            }
+            sink.onToken(tokens[i], tokenStart, tokens[i + 2]);
+            depth = updateOpenTokens(tokens[i], depth);
+        }
+        for (; depth > 0; depth--) {
+            sink.onToken(TokenTypeRegistry.END_TOKEN_ID, end, end);
+        }
+    }
+
+    /**
+     * @return      array that holds the document text at its first {@link #getLength() length} symbols; the array
+     *              may be changed on the next edit
+     */
+    public char[] getChars() {
+        return text;
+    }
+
+    /**
+     * @return      document length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return      number of the document lines
+     */
+    public int getLinesNumber() {
+        return checkpoints.size() + 1;
+    }
+
+    /**
+     * @return      number of the document tokens
+     */
+    public int getTokensNumber() {
+        return tokensNumber;
+    }
+
+    private void replaceText(int offset, int removedLength, CharSequence inserted) {
+        int newLength = length - removedLength + inserted.length();
+        if (newLength > text.length) {
+            text = Arrays.copyOf(text, Math.max(newLength, text.length * 2));
+        }
+        System.arraycopy(text, offset + removedLength, text, offset + inserted.length(),
+                         length - offset - removedLength);
+        if (inserted instanceof String) {
+            ((String) inserted).getChars(0, inserted.length(), text, offset);
+        } else {
+            for (int i = 0; i < inserted.length(); i++) {
+                text[offset + i] = inserted.charAt(i);
+            }
+        }
+        length = newLength;
+    }
+
+    /**
+     * @param offset    target offset
+     * @return          index of the first token that starts at or after the given offset
+     */
+    private int findFirstToken(int offset) {
+        int low = 0;
+        int high = tokensNumber - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (tokens[middle * TokenBatchSink.TOKEN_SIZE + 1] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void ensureTokensCapacity(int capacity) {
+        if (capacity > tokens.length) {
+            tokens = Arrays.copyOf(tokens, Math.max(capacity, tokens.length * 2));
+        }
+    }
+
+    private int updateOpenTokens(int typeId, int depth) {
+        TokenType.Category category = TokenTypeRegistry.getCategory(typeId);
+        if (category == TokenType.Category.START) {
+            if (depth >= openTokens.length) {
+                openTokens = Arrays.copyOf(openTokens, depth * 2);
+            }
+            openTokens[depth] = typeId;
+            return depth + 1;
+        }
+        if ((category == TokenType.Category.END || category == TokenType.Category.END_LOOK_AHEAD) && depth > 0) {
+            return depth - 1;
+        }
+        return depth;
+    }
+
+    /**
+     * Describes document region re-highlighted after the edit. The lines <code>[startLine; oldEndLine)</code>
+     * of the document before the edit correspond to the lines <code>[startLine; newEndLine)</code> after it.
+     */
+    public static class Change {
+
+        private final int startOffset;
+        private final int endOffset;
+        private final int startLine;
+        private final int oldEndLine;
+        private final int newEndLine;
+
+        public Change(int startOffset, int endOffset, int startLine, int oldEndLine, int newEndLine) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.startLine = startLine;
+            this.oldEndLine = oldEndLine;
+            this.newEndLine = newEndLine;
+        }
+
+        /**
+         * @return      start offset of the re-highlighted region (line start)
+         */
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+        /**
+         * @return      end offset of the re-highlighted region (line start or the document end)
+         */
+        public int getEndOffset() {
+            return endOffset;
+        }
+
+        /**
+         * @return      first re-highlighted line
+         */
+        public int getStartLine() {
+            return startLine;
+        }
+
+        /**
+         * @return      line of the document before the edit that follows the re-highlighted region
+         */
+        public int getOldEndLine() {
+            return oldEndLine;
+        }
+
+        /**
+         * @return      line of the document after the edit that follows the re-highlighted region
+         */
+        public int getNewEndLine() {
+            return newEndLine;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("offsets [%d; %d), lines [%d; %d) -> [%d; %d)",
+                                 startOffset, endOffset, startLine, oldEndLine, startLine, newEndLine);
+        }
+    }
+
+    /**
+     * Records checkpoints discovered during re-lexing and detects the line start after the edit where the lexer
+     * state matches the state recorded before the edit.
+     */
+    private class ResyncCheckpoints extends LexerCheckpoints {
+
+        private int base;
+        private int editEnd;
+        private int delta;
+
+        /** Index of the checkpoint recorded before the edit where lexing may be stopped, negative if not found. */
+        public int resyncIndex;
+        public int resyncOffset;
+
+        ResyncCheckpoints() {
+            super(1);
+        }
+
+        public void start(int base, int editEnd, int delta) {
+            this.base = base;
+            this.editEnd = editEnd;
+            this.delta = delta;
+            resyncIndex = -1;
+            clear();
+        }
+
+        public boolean isResynced() {
+            return resyncIndex >= 0;
+        }
+
+        @Override
+        public void add(int offset, int state) {
+            if (isResynced()) {
+                return;
+            }
+            int absoluteOffset = offset + base;
+            if (absoluteOffset >= editEnd) {
+                int oldOffset = absoluteOffset - delta;
+                int i = checkpoints.find(oldOffset);
+                if (i >= 0 && checkpoints.getOffset(i) == oldOffset && checkpoints.getState(i) == state) {
+                    resyncIndex = i;
+                    resyncOffset = absoluteOffset;
+                    return;
+                }
+            }
+            super.add(absoluteOffset, state);
+        }
+    }
+
+    private class ResyncSink implements TokenSink {
+
+        public int[] buffer = new int[INITIAL_TOKENS_CAPACITY];
+        public int   size;
+
+        private int base;
+
+        public void start(int base) {
+            this.base = base;
+            size = 0;
+        }
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            if (resyncCheckpoints.isResynced()) {
+                return;
+            }
+            if (size + TokenBatchSink.TOKEN_SIZE > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = typeId;
+            buffer[size++] = start + base;
+            buffer[size++] = end + base;
+        }
+    }
+
+    /**
+     * Provides the document text to the lexer by small chunks and reports the stream end as soon as the lexer
+     * states are matched.
+     */
+    private class ResyncReader extends Reader {
+
+        private int position;
+
+        ResyncReader(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (resyncCheckpoints.isResynced() || position >= length) {
+                return -1;
+            }
+            int result = Math.min(Math.min(len, READ_CHUNK_SIZE), length - position);
+            System.arraycopy(text, position, cbuf, off, result);
+            position += result;
+            return result;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.denis.webview.syntax.logic;
+
+import org.denis.webview.config.SourceType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds {@link HighlightingSession highlighting sessions} by the document ids.
+ * <p/>
+ * Document ids are generated by the registry randomly, i.e. clients can't choose or guess ids of the documents
+ * of other clients.
+ * <p/>
+ * At most {@link #DEFAULT_CAPACITY} sessions which documents are not longer than {@link #MAX_TOTAL_LENGTH} symbols
+ * in total are kept, the least recently used sessions are dropped when the limits are exceeded. It's assumed that
+ * the client re-sends the whole document if its session is not found.
+ * <p/>
+ * Thread-safe. Sessions themselves are not thread-safe, so, the clients are expected to synchronize on them.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+@Component
+public class HighlightingSessionRegistry {
+
+    /** Max number of kept sessions. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** Max total number of symbols of the kept sessions documents. */
+    public static final long MAX_TOTAL_LENGTH = 16L * HighlightingSession.MAX_LENGTH;
+
+    private static final int    ID_BYTES   = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Map<String, HighlightingSession> sessions
+        = new LinkedHashMap<String, HighlightingSession>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HighlightingSession> eldest) {
+            return size() > DEFAULT_CAPACITY;
+        }
+    };
+
+    private final SecureRandom random = new SecureRandom();
+
+    private HighlighterProvider highlighterProvider;
+
+    /**
+     * @param id    target document id
+     * @return      session of the document with the given id if any; <code>null</code> otherwise
+     */
+    public synchronized HighlightingSession get(String id) {
+        HighlightingSession result = sessions.get(id);
+        if (result != null) {
+            trim();
+        }
+        return result;
+    }
+
+    /**
+     * Creates new session for the new document.
+     *
+     * @param sourceType    type of the document source
+     * @return              id of the new session document, the session is available via {@link #get(String)}
+     */
+    public synchronized String create(SourceType sourceType) {
+        String id;
+        do {
+            id = generateId();
+        } while (sessions.containsKey(id));
+        sessions.put(id, new HighlightingSession(highlighterProvider.getLexerPool(sourceType)));
+        trim();
+        return id;
+    }
+
+    @Autowired
+    public void setHighlighterProvider(HighlighterProvider highlighterProvider) {
+        this.highlighterProvider = highlighterProvider;
+    }
+
+    /**
+     * Drops the least recently used sessions while the total length of the kept documents exceeds
+     * {@link #MAX_TOTAL_LENGTH}. Documents lengths are read without synchronization on the sessions, i.e. the
+     * total length is an estimate that is good enough for the purpose.
+     */
+    private void trim() {
+        long totalLength = 0;
+        for (HighlightingSession session : sessions.values()) {
+            totalLength += session.getLength();
+        }
+        for (Iterator<HighlightingSession> it = sessions.values().iterator();
+             totalLength > MAX_TOTAL_LENGTH && it.hasNext();)
+        {
+            totalLength -= it.next().getLength();
+            it.remove();
+        }
+    }
+
+    private String generateId() {
+        byte[] bytes = new byte[ID_BYTES];
+        random.nextBytes(bytes);
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            result[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(result);
+    }
+}
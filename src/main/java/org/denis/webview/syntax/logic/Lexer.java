@@ -1,7 +1,5 @@
 package org.denis.webview.syntax.logic;
 
-import java.util.List;
-
 /**
  * Defines general contract for jflex-generated lexers.
  * 
@@ -10,5 +8,35 @@ import java.util.List;
  */
 public interface Lexer {
 
-    List<TokenInfo> advance() throws java.io.IOException;
+    /**
+     * Processes the whole symbol stream given to the current lexer and notifies given sink about all discovered
+     * tokens.
+     *
+     * @param sink          callback to notify about discovered tokens
+     * @param checkpoints   holder of the lexer state checkpoints to record during the processing (if necessary)
+     * @throws java.io.IOException      in case of unexpected I/O problem during reading the symbol stream
+     */
+    void lex(TokenSink sink, LexerCheckpoints checkpoints) throws java.io.IOException;
+
+    /**
+     * Resets the current lexer to the initial state and makes it process given symbol stream, i.e. allows to reuse
+     * the lexer for processing another data.
+     *
+     * @param reader    symbol stream to process (<code>null</code> means that the lexer is not going to be used
+     *                  until the next reset)
+     */
+    void yyreset(java.io.Reader reader);
+
+    /**
+     * Switches the current lexer to the given lexical state, allows to resume lexing from the
+     * {@link LexerCheckpoints checkpoint}. Is expected to be called after {@link #yyreset(java.io.Reader) reset}.
+     *
+     * @param state     lexical state to use
+     */
+    void yybegin(int state);
+
+    /**
+     * @return      current lexical state of the current lexer
+     */
+    int yystate();
 }
@@ -0,0 +1,133 @@
+package org.denis.webview.syntax.logic;
+
+import java.util.Arrays;
+
+/**
+ * Holds lexer state checkpoints recorded every {@link #getLinesInterval() N lines} during the processing.
+ * <p/>
+ * Every checkpoint is a pair of the offset of the line start and the lexical state of the lexer at that offset,
+ * i.e. lexing may be resumed from any checkpoint. <code>i</code>-th checkpoint corresponds to the start of the
+ * line with (zero-based) number <code>(i + 1) * N</code>.
+ * <p/>
+ * Checkpoints are stored at the single primitive array.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class LexerCheckpoints {
+
+    /** Default number of lines between the checkpoints. */
+    public static final int DEFAULT_LINES_INTERVAL = 256;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int linesInterval;
+
+    /** Checkpoint offsets and states, i.e. <code>offset1, state1, offset2, state2, ...</code> */
+    private int[] data = new int[INITIAL_CAPACITY * 2];
+    private int   size;
+
+    public LexerCheckpoints() {
+        this(DEFAULT_LINES_INTERVAL);
+    }
+
+    public LexerCheckpoints(int linesInterval) throws IllegalArgumentException {
+        if (linesInterval <= 0) {
+            throw new IllegalArgumentException(String.format("Can't create lexer checkpoints. Reason: given lines "
+                + "interval is not positive (%d)", linesInterval));
+        }
+        this.linesInterval = linesInterval;
+    }
+
+    /**
+     * @return      number of lines between the checkpoints
+     */
+    public int getLinesInterval() {
+        return linesInterval;
+    }
+
+    /**
+     * Records new checkpoint. Checkpoints are expected to be recorded in order of increasing offsets.
+     *
+     * @param offset    offset of the line start
+     * @param state     lexical state of the lexer at the given offset
+     */
+    public void add(int offset, int state) {
+        if (size * 2 >= data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size * 2] = offset;
+        data[size * 2 + 1] = state;
+        size++;
+    }
+
+    /**
+     * @return      number of recorded checkpoints
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index     checkpoint index
+     * @return          offset of the checkpoint with the given index
+     */
+    public int getOffset(int index) {
+        return data[index * 2];
+    }
+
+    /**
+     * @param index     checkpoint index
+     * @return          lexical state of the checkpoint with the given index
+     */
+    public int getState(int index) {
+        return data[index * 2 + 1];
+    }
+
+    /**
+     * @param index     checkpoint index
+     * @return          zero-based number of the line which start is denoted by the checkpoint with the given index
+     */
+    public int getLine(int index) {
+        return (index + 1) * linesInterval;
+    }
+
+    /**
+     * Finds the last checkpoint located before or at the given offset.
+     *
+     * @param offset    target offset
+     * @return          index of the last checkpoint which offset is not greater than the given offset;
+     *                  <code>-1</code> if there is no such checkpoint
+     */
+    public int find(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (data[middle * 2] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Removes all checkpoints located after the given offset.
+     *
+     * @param offset    target offset
+     */
+    public void truncate(int offset) {
+        size = find(offset) + 1;
+    }
+
+    /**
+     * Removes all checkpoints.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,32 @@
+package org.denis.webview.syntax.logic;
+
+import org.denis.webview.config.SourceType;
+
+/**
+ * Service provider interface for the {@link Lexer lexers} of particular {@link SourceType source type}.
+ * <p/>
+ * Implementations are registered via {@link java.util.ServiceLoader standard service provider mechanism}, i.e. they
+ * are listed at the <code>'META-INF/services/org.denis.webview.syntax.logic.LexerFactory'</code> resource. They are
+ * expected to be lightweight, i.e. lexer class should not be loaded until the {@link #createLexer() first lexer}
+ * is requested.
+ * <p/>
+ * Implementations are expected to be thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public interface LexerFactory {
+
+    /**
+     * @return      source type which lexers are created by the current factory
+     */
+    SourceType getSourceType();
+
+    /**
+     * Creates new lexer. It's assumed that the lexer is {@link Lexer#yyreset(java.io.Reader) reset} to the target
+     * symbol stream before the processing.
+     *
+     * @return      new lexer
+     */
+    Lexer createLexer();
+}
@@ -0,0 +1,193 @@
+package org.denis.webview.syntax.logic;
+
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of the {@link Lexer lexers} of particular type.
+ * <p/>
+ * Lexers are relatively expensive to create (every <code>JFlex</code> lexer allocates its own input buffer and
+ * state arrays), so, they are {@link Lexer#yyreset(Reader) reset} and reused between the requests.
+ * <p/>
+ * At most {@link #getCapacity() capacity} lexers are created by the pool. When all of them are in use, the
+ * client waits for the released lexer during the limited amount of time and gets unpooled lexer if the wait
+ * is unsuccessful.
+ * <p/>
+ * Exposes usage statistics - pool hit rate and time spent waiting for the released lexers.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class LexerPool {
+
+    /** Default max number of pooled lexers. */
+    public static final int DEFAULT_CAPACITY = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /** Default max time to wait for the released lexer when all pooled lexers are in use. */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 100;
+
+    private final AtomicInteger created       = new AtomicInteger();
+    private final AtomicLong    hits          = new AtomicLong();
+    private final AtomicLong    misses        = new AtomicLong();
+    private final AtomicLong    waits         = new AtomicLong();
+    private final AtomicLong    waitTimeNanos = new AtomicLong();
+
+    private final BlockingQueue<Lexer>         idle;
+    private final LexerFactory                 factory;
+    private final int                          capacity;
+    private final long                         maxWaitMillis;
+
+    /**
+     * Creates new <code>LexerPool</code> object.
+     *
+     * @param factory           factory of the pooled lexers
+     * @param capacity          max number of pooled lexers
+     * @param maxWaitMillis     max time to wait for the released lexer when all pooled lexers are in use
+     * @throws IllegalArgumentException     if given factory is <code>null</code> or given capacity is not positive
+     */
+    public LexerPool(LexerFactory factory, int capacity, long maxWaitMillis) throws IllegalArgumentException {
+        if (factory == null) {
+            throw new IllegalArgumentException("Can't create lexer pool. Reason: given lexer factory is null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Can't create lexer pool for %s. Reason: given capacity "
+                + "is not positive (%d)", factory.getSourceType(), capacity));
+        }
+        this.factory = factory;
+        this.capacity = capacity;
+        this.maxWaitMillis = maxWaitMillis;
+        idle = new ArrayBlockingQueue<Lexer>(capacity);
+    }
+
+    /**
+     * Provides lexer configured to process given symbol stream. It's assumed that the lexer is
+     * {@link #release(Lexer) released} after the processing.
+     *
+     * @param reader    symbol stream to process
+     * @return          lexer configured to process given symbol stream
+     * @throws IllegalStateException    if new lexer can't be created
+     */
+    public Lexer acquire(Reader reader) throws IllegalStateException {
+        Lexer result = idle.poll();
+        if (result != null) {
+            hits.incrementAndGet();
+        } else if (created.incrementAndGet() <= capacity) {
+            try {
+                result = create();
+            } catch (IllegalStateException e) {
+                created.decrementAndGet();
+                throw e;
+            }
+            misses.incrementAndGet();
+        } else {
+            created.decrementAndGet();
+            result = await();
+        }
+        result.yyreset(reader);
+        return result;
+    }
+
+    /**
+     * Returns given lexer previously {@link #acquire(Reader) acquired} from the current pool.
+     *
+     * @param lexer     lexer to release
+     */
+    public void release(Lexer lexer) {
+        // Don't hold the processed stream.
+        lexer.yyreset(null);
+        idle.offer(lexer);
+    }
+
+    /**
+     * @return      max number of pooled lexers
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return      number of {@link #acquire(Reader) acquisitions} served by the pooled lexers
+     */
+    public long getHitsNumber() {
+        return hits.get();
+    }
+
+    /**
+     * @return      number of {@link #acquire(Reader) acquisitions} served by the newly created lexers
+     */
+    public long getMissesNumber() {
+        return misses.get();
+    }
+
+    /**
+     * @return      ratio of the {@link #acquire(Reader) acquisitions} served by the pooled lexers,
+     *              <code>0</code> if there were no acquisitions
+     */
+    public double getHitRate() {
+        long hitsNumber = hits.get();
+        long total = hitsNumber + misses.get();
+        return total <= 0 ? 0 : (double) hitsNumber / total;
+    }
+
+    /**
+     * @return      number of {@link #acquire(Reader) acquisitions} that waited for the released lexer
+     */
+    public long getWaitsNumber() {
+        return waits.get();
+    }
+
+    /**
+     * @return      total time spent waiting for the released lexers (in nanoseconds)
+     */
+    public long getWaitTimeNanos() {
+        return waitTimeNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: capacity=%d, hits=%d, misses=%d, hit rate=%.3f, waits=%d, wait time=%dms",
+                             factory.getSourceType(), capacity, hits.get(), misses.get(),
+                             getHitRate(), waits.get(), TimeUnit.NANOSECONDS.toMillis(waitTimeNanos.get()));
+    }
+
+    private Lexer await() {
+        waits.incrementAndGet();
+        long start = System.nanoTime();
+        Lexer result = null;
+        try {
+            result = idle.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        waitTimeNanos.addAndGet(System.nanoTime() - start);
+        if (result == null) {
+            // Unpooled lexer, it's dropped on release if the pool is full.
+            misses.incrementAndGet();
+            return create();
+        }
+        hits.incrementAndGet();
+        return result;
+    }
+
+    private Lexer create() throws IllegalStateException {
+        Lexer result;
+        try {
+            result = factory.createLexer();
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(String.format("Can't create lexer for %s", factory.getSourceType()), e);
+        } catch (LinkageError e) {
+            throw new IllegalStateException(String.format("Can't create lexer for %s", factory.getSourceType()), e);
+        }
+        if (result == null) {
+            throw new IllegalStateException(String.format("Can't create lexer for %s. Reason: %s returned null",
+                                                          factory.getSourceType(), factory));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package org.denis.webview.syntax.logic;
+
+/**
+ * Adapts {@link Highlighter.Listener} to the {@link TokenSink} contract, i.e. builds {@link TokenInfo} object
+ * for every token.
+ * <p/>
+ * Adapters of the same listener are equal.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ListenerTokenSink implements TokenSink {
+
+    private final Highlighter.Listener listener;
+
+    public ListenerTokenSink(Highlighter.Listener listener) throws IllegalArgumentException {
+        if (listener == null) {
+            throw new IllegalArgumentException("Can't create token sink. Reason: given listener is null");
+        }
+        this.listener = listener;
+    }
+
+    @Override
+    public void onToken(int typeId, int start, int end) {
+        listener.onToken(new TokenInfo(TokenTypeRegistry.get(typeId), start, end));
+    }
+
+    @Override
+    public int hashCode() {
+        return listener.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return listener.equals(((ListenerTokenSink) o).listener);
+    }
+}
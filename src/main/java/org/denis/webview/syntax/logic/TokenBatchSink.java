@@ -0,0 +1,29 @@
+package org.denis.webview.syntax.logic;
+
+/**
+ * {@link TokenSink} that is able to process discovered tokens in batches.
+ * <p/>
+ * {@link Highlighter} accumulates tokens for the batch sinks and delivers them before every read from the processed
+ * symbol stream and at the end of the processing, i.e. all tokens discovered at the already read data are delivered
+ * before the next data is read.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public interface TokenBatchSink extends TokenSink {
+
+    /** Number of ints used to represent single token at the packed tokens array. */
+    int TOKEN_SIZE = 3;
+
+    /**
+     * Notifies about discovered tokens.
+     * <p/>
+     * Given array is reused between the calls, i.e. its content is valid only during the current method call.
+     *
+     * @param packed    packed tokens - <code>i</code>-th token's {@link TokenSink#onToken(int, int, int) type id,
+     *                  start and end offsets} are stored at the <code>i * TOKEN_SIZE</code>,
+     *                  <code>i * TOKEN_SIZE + 1</code> and <code>i * TOKEN_SIZE + 2</code> indices
+     * @param count     number of tokens at the given array
+     */
+    void onTokens(int[] packed, int count);
+}
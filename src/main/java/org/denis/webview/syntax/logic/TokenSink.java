@@ -0,0 +1,23 @@
+package org.denis.webview.syntax.logic;
+
+/**
+ * Callback for the tokens discovered by {@link Lexer}.
+ * <p/>
+ * Tokens are given as primitives, so, no objects are allocated per token. Token type is identified by its
+ * {@link TokenType#getId() id} (use {@link TokenTypeRegistry#get(int)} to get the type by id).
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public interface TokenSink {
+
+    /**
+     * Notifies about discovered token.
+     *
+     * @param typeId    {@link TokenType#getId() id} of the token type; {@link TokenTypeRegistry#NO_TYPE_ID} for
+     *                  the text that doesn't belong to any token
+     * @param start     token start offset (inclusive)
+     * @param end       token end offset (exclusive)
+     */
+    void onToken(int typeId, int start, int end);
+}
@@ -12,6 +12,11 @@ public interface TokenType {
             return Category.END;
         }
 
+        @Override
+        public int getId() {
+            return TokenTypeRegistry.END_TOKEN_ID;
+        }
+
         @Override
         public String toString() {
             return "END";
@@ -24,6 +29,11 @@ public interface TokenType {
             return Category.END_LOOK_AHEAD;
         }
 
+        @Override
+        public int getId() {
+            return TokenTypeRegistry.END_LOOK_AHEAD_TOKEN_ID;
+        }
+
         @Override
         public String toString() {
             return "END_LOOK_AHEAD";
@@ -32,6 +42,12 @@ public interface TokenType {
 
     Category getCategory();
 
+    /**
+     * @return      unique id of the current token type {@link TokenTypeRegistry#register(TokenType) registered}
+     *              at the {@link TokenTypeRegistry}
+     */
+    int getId();
+
     /**
      * For the performance reasons we may don't want to parse complete token text, e.g. consider that we
      * are interested in string literals. We may define complete string literal token like like the one
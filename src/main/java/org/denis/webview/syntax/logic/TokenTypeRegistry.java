@@ -0,0 +1,57 @@
+package org.denis.webview.syntax.logic;
+
+/**
+ * Maps {@link TokenType token types} to the int ids and vice versa.
+ * <p/>
+ * Ids are assigned on registration, i.e. they are not stable between application runs and should not be persisted.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class TokenTypeRegistry {
+
+    /** Id that denotes absence of token type, i.e. the text that doesn't belong to any token. */
+    public static final int NO_TYPE_ID              = -1;
+    public static final int END_TOKEN_ID            = 0;
+    public static final int END_LOOK_AHEAD_TOKEN_ID = 1;
+
+    private static volatile TokenType[] types = { TokenType.END_TOKEN, TokenType.END_LOOK_AHEAD_TOKEN };
+
+    private TokenTypeRegistry() {
+    }
+
+    /**
+     * Registers given token type. It's assumed that token types register themselves during initialization and
+     * expose the returned id via {@link TokenType#getId()}.
+     *
+     * @param tokenType     token type to register
+     * @return              id of the given token type
+     */
+    public static synchronized int register(TokenType tokenType) {
+        TokenType[] newTypes = new TokenType[types.length + 1];
+        System.arraycopy(types, 0, newTypes, 0, types.length);
+        newTypes[types.length] = tokenType;
+        types = newTypes;
+        return types.length - 1;
+    }
+
+    /**
+     * @param id    token type id
+     * @return      token type with the given id if any; <code>null</code> otherwise
+     */
+    public static TokenType get(int id) {
+        TokenType[] typesToUse = types;
+        return id < 0 || id >= typesToUse.length ? null : typesToUse[id];
+    }
+
+    /**
+     * @param id    token type id
+     * @return      category of the token type with the given id if any; <code>null</code> otherwise
+     */
+    public static TokenType.Category getCategory(int id) {
+        TokenType tokenType = get(id);
+        return tokenType == null ? null : tokenType.getCategory();
+    }
+}
@@ -0,0 +1,164 @@
+package org.denis.webview.syntax.logic.java;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Classifies identifiers discovered by the {@link JavaLexer} as keywords.
+ * <p/>
+ * Uses minimal perfect hash over the keywords set built by 'hash and displace' scheme: keywords are distributed
+ * to the buckets by the hash with zero seed and every bucket has a seed that maps all its keywords to the distinct
+ * table slots. Table size equals to the number of keywords, so, any identifier is checked by two hash calculations
+ * and single comparison.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class JavaKeywords {
+
+    private static final String[] KEYWORDS = {
+        "abstract", "continue", "for", "new", "switch", "assert", "default", "goto", "package", "synchronized",
+        "boolean", "do", "if", "private", "this", "break", "double", "implements", "protected", "throw",
+        "byte", "else", "import", "public", "throws", "case", "enum", "instanceof", "return", "transient",
+        "catch", "extends", "int", "short", "try", "char", "final", "interface", "static", "void",
+        "class", "finally", "long", "strictfp", "volatile", "const", "float", "native", "super", "while", "null"
+    };
+
+    private static final int MIN_LENGTH;
+    private static final int MAX_LENGTH;
+
+    /** Seeds of the buckets. */
+    private static final int[]    SEEDS;
+    private static final char[][] TABLE = new char[KEYWORDS.length][];
+
+    static {
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (String keyword : KEYWORDS) {
+            minLength = Math.min(minLength, keyword.length());
+            maxLength = Math.max(maxLength, keyword.length());
+        }
+        MIN_LENGTH = minLength;
+        MAX_LENGTH = maxLength;
+        SEEDS = build();
+    }
+
+    private JavaKeywords() {
+    }
+
+    /**
+     * @param buffer    symbols holder
+     * @param start     identifier start offset at the given buffer
+     * @param length    identifier length
+     * @return          <code>true</code> if given identifier is a keyword; <code>false</code> otherwise
+     */
+    public static boolean isKeyword(char[] buffer, int start, int length) {
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return false;
+        }
+        int seed = SEEDS[index(hash(0, buffer, start, length), SEEDS.length)];
+        char[] keyword = TABLE[index(hash(seed, buffer, start, length), TABLE.length)];
+        if (keyword.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keyword[i] != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param keyword   identifier to check
+     * @return          <code>true</code> if given identifier is a keyword; <code>false</code> otherwise
+     */
+    public static boolean isKeyword(String keyword) {
+        return isKeyword(keyword.toCharArray(), 0, keyword.length());
+    }
+
+    private static int[] build() {
+        int bucketsNumber = (KEYWORDS.length + 1) / 2;
+        char[][][] buckets = new char[bucketsNumber][][];
+        int[] sizes = new int[bucketsNumber];
+        for (String keyword : KEYWORDS) {
+            char[] chars = keyword.toCharArray();
+            int bucket = index(hash(0, chars, 0, chars.length), bucketsNumber);
+            if (buckets[bucket] == null) {
+                buckets[bucket] = new char[KEYWORDS.length][];
+            }
+            buckets[bucket][sizes[bucket]++] = chars;
+        }
+
+        // Process large buckets first as it's harder to find free slots for them.
+        Integer[] order = new Integer[bucketsNumber];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final int[] bucketSizes = sizes;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return bucketSizes[o2] - bucketSizes[o1];
+            }
+        });
+
+        int[] result = new int[bucketsNumber];
+        int[] slots = new int[KEYWORDS.length];
+        for (int bucket : order) {
+            if (sizes[bucket] <= 0) {
+                continue;
+            }
+            for (int seed = 1; ; seed++) {
+                if (place(buckets[bucket], sizes[bucket], seed, slots)) {
+                    result[bucket] = seed;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tries to place given keywords to the free {@link #TABLE} slots.
+     *
+     * @return      <code>true</code> if all keywords are placed; <code>false</code> otherwise (the table is not
+     *              changed then)
+     */
+    private static boolean place(char[][] keywords, int size, int seed, int[] slots) {
+        for (int i = 0; i < size; i++) {
+            int slot = index(hash(seed, keywords[i], 0, keywords[i].length), TABLE.length);
+            if (TABLE[slot] != null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+        for (int i = 0; i < size; i++) {
+            TABLE[slots[i]] = keywords[i];
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of the given symbols mixed with the given seed.
+     */
+    private static int hash(int seed, char[] buffer, int start, int length) {
+        int result = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = start, end = start + length; i < end; i++) {
+            result ^= buffer[i];
+            result *= 0x01000193;
+        }
+        return result;
+    }
+
+    private static int index(int hash, int size) {
+        return (hash & 0x7FFFFFFF) % size;
+    }
+}
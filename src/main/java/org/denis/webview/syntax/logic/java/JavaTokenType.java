@@ -1,6 +1,7 @@
 package org.denis.webview.syntax.logic.java;
 
 import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.logic.TokenTypeRegistry;
 
 /**
  * Enumerates interested java token types.
@@ -24,6 +25,7 @@ public enum JavaTokenType implements TokenType {
     };
     
     private final Category category;
+    private final int      id;
 
     JavaTokenType() {
         this(Category.START);
@@ -31,10 +33,16 @@ public enum JavaTokenType implements TokenType {
 
     JavaTokenType(Category category) {
         this.category = category;
+        id = TokenTypeRegistry.register(this);
     }
 
     @Override
     public Category getCategory() {
         return category;
     }
+
+    @Override
+    public int getId() {
+        return id;
+    }
 }
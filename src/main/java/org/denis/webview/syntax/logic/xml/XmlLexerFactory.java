@@ -0,0 +1,28 @@
+package org.denis.webview.syntax.logic.xml;
+
+import org.denis.webview.config.SourceType;
+import org.denis.webview.syntax.logic.Lexer;
+import org.denis.webview.syntax.logic.LexerFactory;
+
+import java.io.Reader;
+
+/**
+ * {@link LexerFactory} for the {@link SourceType#XML xml} sources.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class XmlLexerFactory implements LexerFactory {
+
+    @Override
+    public SourceType getSourceType() {
+        return SourceType.XML;
+    }
+
+    @Override
+    public Lexer createLexer() {
+        return new XmlLexer((Reader) null);
+    }
+}
@@ -0,0 +1,42 @@
+package org.denis.webview.syntax.logic.xml;
+
+import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.logic.TokenTypeRegistry;
+
+/**
+ * Enumerates interested xml token types.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public enum XmlTokenType implements TokenType {
+
+    // Markup.
+    TAG_START, TAG_END(Category.COMPLETE), ATTRIBUTE_NAME_START, ATTRIBUTE_VALUE_START,
+    ENTITY_REFERENCE(Category.COMPLETE),
+
+    // Special sections.
+    COMMENT_START, CDATA_START, PROCESSING_INSTRUCTION_START, DOCTYPE_START;
+
+    private final Category category;
+    private final int      id;
+
+    XmlTokenType() {
+        this(Category.START);
+    }
+
+    XmlTokenType(Category category) {
+        this.category = category;
+        id = TokenTypeRegistry.register(this);
+    }
+
+    @Override
+    public Category getCategory() {
+        return category;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+}
@@ -1,15 +1,31 @@
 package org.denis.webview.syntax.output;
 
-import org.denis.webview.syntax.logic.TokenInfo;
 import org.denis.webview.syntax.logic.TokenType;
 import org.denis.webview.syntax.output.markup.MarkupScheme;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.Arrays;
 
 /**
  * Applies discovered tokens to the target output.
  * <p/>
+ * The output may be either a {@link Writer} or an {@link OutputStream}. In the latter case the output is
+ * <code>UTF-8</code> bytes produced directly, i.e. markup and replacements are written in the
+ * {@link MarkupScheme#getEncodedMarkup(TokenType) pre-encoded} form and source text is encoded in bulk while it
+ * consists of <code>ASCII</code> symbols.
+ * <p/>
+ * Markup, escaped text and replacements are collected at the own buffer that is written to the target output
+ * by large blocks, i.e. there is a single target call per few kilobytes instead of a few calls per token. So,
+ * {@link #flush()} is expected to be called when the output is done.
+ * <p/>
+ * Adjacent spans with the same markup are merged, i.e. a span is not closed until it's known that the next span
+ * differs from it. Spans separated by spaces and tabs are merged as well if their markup is
+ * {@link MarkupScheme#isWhiteSpaceNeutral(TokenType) white space neutral}, e.g. <code>'public static final'</code>
+ * is written as a single span. Merging may be switched off by {@link #setMergeSpans(boolean)}.
+ * <p/>
  * Not thread-safe.
  *
  * @author Denis Zhdanov
@@ -25,86 +41,406 @@ public class OutputProcessor {
     private static final char[] GT  = "&gt;".toCharArray();
     private static final char[] AMP = "&amp;".toCharArray();
 
+    private static final byte[] START_TOKEN_PREFIX_BYTES = encode(START_TOKEN_PREFIX);
+    private static final byte[] START_TOKEN_SUFFIX_BYTES = encode(START_TOKEN_SUFFIX);
+    private static final byte[] END_TOKEN_MARK_BYTES     = encode(END_TOKEN_MARK);
+
+    /** Replacements of the <code>ASCII</code> symbols that should be escaped by their codes; null otherwise. */
+    private static final char[][] ESCAPES         = new char[128][];
+    private static final byte[][] ENCODED_ESCAPES = new byte[128][];
+    static {
+        ESCAPES['<'] = LT;
+        ESCAPES['>'] = GT;
+        ESCAPES['&'] = AMP;
+        for (int i = 0; i < ESCAPES.length; i++) {
+            if (ESCAPES[i] != null) {
+                ENCODED_ESCAPES[i] = encode(ESCAPES[i]);
+            }
+        }
+    }
+
+    /** Encoded form of the malformed surrogate symbols, the same as the one used by the jdk encoder. */
+    private static final byte REPLACEMENT_BYTE = '?';
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Max number of blanks between two spans that may be merged. */
+    private static final int MAX_HELD_BLANKS = 64;
+
     private final Writer       writer;
+    private final OutputStream out;
+    private final char[]       chars;
+    private final byte[]       bytes;
     private final MarkupScheme markupScheme;
 
+    private int  charsNumber;
+    private int  bytesNumber;
+    private char highSurrogate;
+
+    /** Token types of the spans that are open at the output, the innermost is the last one. */
+    private TokenType[] openSpans = new TokenType[8];
+    private int         openSpansNumber;
+
+    /** Token type of the span which closing is deferred until it's known that the next span differs from it. */
+    private TokenType closedSpan;
+
+    /** Blanks that follow the {@link #closedSpan closed span} and are not written yet. */
+    private final char[] heldBlanks = new char[MAX_HELD_BLANKS];
+    private int          heldBlanksNumber;
+
+    private boolean mergeSpans = true;
+
     public OutputProcessor(Writer writer, MarkupScheme markupScheme) {
         this.writer = writer;
 //        this.writer = new org.denis.webview.util.io.DebugWriter(writer);
         this.markupScheme = markupScheme;
+        out = null;
+        chars = new char[BUFFER_SIZE];
+        bytes = null;
+    }
+
+    /**
+     * Creates output processor that writes <code>UTF-8</code> bytes to the given stream.
+     *
+     * @param out             target output stream
+     * @param markupScheme    markup scheme to use
+     */
+    public OutputProcessor(OutputStream out, MarkupScheme markupScheme) {
+        this.out = out;
+        this.markupScheme = markupScheme;
+        writer = null;
+        chars = null;
+        bytes = new byte[BUFFER_SIZE];
     }
 
     /**
      * Asks to write given data to the output possibly indicating that it is of particular token type.
-     * 
+     *
      * @param data     target data holder
      * @param start    start offset of the target data within the given buffer
      * @param end      end offset of the target data within the given buffer
-     * @param token    target data type if defined (not null)
+     * @param tokenType    target data type if defined (not null)
      */
-    public void write(char[] data, int start, int end, TokenInfo token) {
+    public void write(char[] data, int start, int end, TokenType tokenType) {
         try {
-            doWrite(data, start, end, token == null ? null : token.getTokenType());
+            doWrite(data, start, end, tokenType);
         } catch (IOException e) {
             // Ignore
         }
     }
 
+    /**
+     * Writes buffered data (if any) to the target output and flushes it. High surrogate that ends the output without
+     * the low surrogate is written as a replacement symbol.
+     *
+     * @throws IOException      in case of unexpected I/O problem during writing to the target output
+     */
+    public void flush() throws IOException {
+        writeClosedSpan();
+        if (out == null) {
+            flushChars();
+            writer.flush();
+        } else {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                if (bytesNumber >= bytes.length) {
+                    flushBytes();
+                }
+                bytes[bytesNumber++] = REPLACEMENT_BYTE;
+            }
+            flushBytes();
+            out.flush();
+        }
+    }
+
+    /**
+     * Allows to define if adjacent spans with the same markup should be merged. Is expected to be called before
+     * the output starts.
+     *
+     * @param mergeSpans    flag that indicates if adjacent spans with the same markup should be merged
+     */
+    public void setMergeSpans(boolean mergeSpans) {
+        this.mergeSpans = mergeSpans;
+    }
+
     private void doWrite(char[] data, int start, int end, TokenType tokenType) throws IOException {
         if (tokenType == null) {
-            writeEscaped(data, start, end);
+            writeText(data, start, end);
             return;
         }
 
         if (tokenType.getCategory() == TokenType.Category.END) {
-            writeEscaped(data, start, end);
-            writer.write(END_TOKEN_MARK);
+            writeText(data, start, end);
+            closeSpan();
             return;
         }
 
         if (tokenType.getCategory() == TokenType.Category.END_LOOK_AHEAD) {
-            writer.write(END_TOKEN_MARK);
-            writeEscaped(data, start, end);
+            closeSpan();
+            writeText(data, start, end);
             return;
         }
 
         char[] markup = markupScheme.getMarkup(tokenType);
         if (markup.length <= 0) {
-            writeEscaped(data, start, end);
+            writeText(data, start, end);
             return;
         }
 
-        writer.write(START_TOKEN_PREFIX);
-        writer.write(markup);
-        writer.write(START_TOKEN_SUFFIX);
-        writeEscaped(data, start, end);
+        openSpan(tokenType, markup);
+        writeText(data, start, end);
 
         if (tokenType.getCategory() == TokenType.Category.COMPLETE) {
-            writer.write(END_TOKEN_MARK);
+            closeSpan();
         }
     }
-    
-    private void writeEscaped(char[] data, final int startOffset, final int endOffset) throws IOException {
-        for (int start = startOffset, end = startOffset; end < endOffset; ++end) {
-            char[] replacement = null;
-            switch (data[end]) {
-                case '<': replacement = LT; break;
-                case '>': replacement = GT; break;
-                case '&': replacement = AMP; break;
+
+    private void openSpan(TokenType tokenType, char[] markup) throws IOException {
+        if (openSpansNumber >= openSpans.length) {
+            TokenType[] newOpenSpans = new TokenType[openSpans.length * 2];
+            System.arraycopy(openSpans, 0, newOpenSpans, 0, openSpansNumber);
+            openSpans = newOpenSpans;
+        }
+        openSpans[openSpansNumber++] = tokenType;
+
+        if (closedSpan != null) {
+            char[] closedMarkup = markupScheme.getMarkup(closedSpan);
+            if (closedMarkup == markup || Arrays.equals(closedMarkup, markup)) {
+                // Continue the closed span.
+                closedSpan = null;
+                writeHeldBlanks();
+                return;
             }
+            writeClosedSpan();
+        }
 
-            if (replacement == null) {
-                if (end == endOffset - 1 && endOffset > start) {
-                    writer.write(data, start, endOffset - start);
+        writeRaw(START_TOKEN_PREFIX, START_TOKEN_PREFIX_BYTES);
+        if (out == null) {
+            writeChars(markup, 0, markup.length);
+        } else {
+            writeBytes(markupScheme.getEncodedMarkup(tokenType));
+        }
+        writeRaw(START_TOKEN_SUFFIX, START_TOKEN_SUFFIX_BYTES);
+    }
+
+    private void closeSpan() throws IOException {
+        writeClosedSpan();
+        if (!mergeSpans || openSpansNumber <= 0) {
+            // There is no information about the span to close if its opening hasn't been seen.
+            openSpansNumber = Math.max(0, openSpansNumber - 1);
+            writeRaw(END_TOKEN_MARK, END_TOKEN_MARK_BYTES);
+            return;
+        }
+        closedSpan = openSpans[--openSpansNumber];
+    }
+
+    /**
+     * Writes the end mark of the {@link #closedSpan closed span} (if any) followed by the blanks held after it.
+     */
+    private void writeClosedSpan() throws IOException {
+        if (closedSpan == null) {
+            return;
+        }
+        closedSpan = null;
+        writeRaw(END_TOKEN_MARK, END_TOKEN_MARK_BYTES);
+        writeHeldBlanks();
+    }
+
+    private void writeHeldBlanks() throws IOException {
+        if (heldBlanksNumber > 0) {
+            writeEscaped(heldBlanks, 0, heldBlanksNumber);
+            heldBlanksNumber = 0;
+        }
+    }
+
+    /**
+     * Writes given text unless it consists of the blanks that may get into the {@link #closedSpan closed span}
+     * if it's continued by the next span. Such blanks are held until the next span is known.
+     */
+    private void writeText(char[] data, int start, int end) throws IOException {
+        if (start >= end) {
+            return;
+        }
+        if (closedSpan != null) {
+            if (end - start <= MAX_HELD_BLANKS - heldBlanksNumber && isBlank(data, start, end)
+                && markupScheme.isWhiteSpaceNeutral(closedSpan))
+            {
+                System.arraycopy(data, start, heldBlanks, heldBlanksNumber, end - start);
+                heldBlanksNumber += end - start;
+                return;
+            }
+            writeClosedSpan();
+        }
+        writeEscaped(data, start, end);
+    }
+
+    private static boolean isBlank(char[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] != ' ' && data[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeRaw(char[] chars, byte[] encoded) throws IOException {
+        if (out == null) {
+            writeChars(chars, 0, chars.length);
+        } else {
+            writeBytes(encoded);
+        }
+    }
+
+    /**
+     * Escapes given text to the chars buffer. Text between the symbols to escape is copied by blocks.
+     */
+    private void writeEscaped(char[] data, int startOffset, int endOffset) throws IOException {
+        if (out != null) {
+            encodeEscaped(data, startOffset, endOffset);
+            return;
+        }
+        char[][] escapes = ESCAPES;
+        for (int i = startOffset; i < endOffset; i++) {
+            int start = i;
+            for (char c; i < endOffset && ((c = data[i]) >= escapes.length || escapes[c] == null); i++) ;
+            if (i > start) {
+                writeChars(data, start, i - start);
+            }
+            if (i < endOffset) {
+                char[] replacement = escapes[data[i]];
+                writeChars(replacement, 0, replacement.length);
+            }
+        }
+    }
+
+    /**
+     * Escapes given text and encodes it to <code>UTF-8</code> at the bytes buffer. <code>ASCII</code> symbols that
+     * don't need to be escaped are copied by a tight loop that is bounded by the free buffer space only.
+     * <p/>
+     * Surrogate pair may be split between two calls, its high surrogate is kept until the next call then.
+     */
+    private void encodeEscaped(char[] data, int startOffset, int endOffset) throws IOException {
+        byte[] bytes = this.bytes;
+        byte[][] escapes = ENCODED_ESCAPES;
+        int i = startOffset;
+        while (i < endOffset) {
+            if (highSurrogate == 0) {
+                int n = bytesNumber;
+                int limit = i + Math.min(endOffset - i, bytes.length - n);
+                for (char c; i < limit && (c = data[i]) < escapes.length && escapes[c] == null; i++) {
+                    bytes[n++] = (byte) c;
+                }
+                bytesNumber = n;
+                if (i >= endOffset) {
+                    break;
+                }
+                if (n >= bytes.length) {
+                    flushBytes();
+                    continue;
                 }
-                continue;
             }
-            
-            if (end > start) {
-                writer.write(data, start, end - start);
+
+            char c = data[i++];
+            byte[] replacement = c < escapes.length ? escapes[c] : null;
+            if (replacement == null) {
+                encode(c);
+            } else {
+                writeBytes(replacement);
             }
-            writer.write(replacement);
-            start = end + 1;
+        }
+    }
+
+    /**
+     * Encodes given non-<code>ASCII</code> symbol to the bytes buffer.
+     *
+     * @param c     symbol to encode
+     * @throws IOException      in case of unexpected I/O problem during flushing the buffer
+     */
+    private void encode(char c) throws IOException {
+        if (bytes.length - bytesNumber < 4) {
+            flushBytes();
+        }
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                bytes[bytesNumber++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[bytesNumber++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[bytesNumber++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[bytesNumber++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            bytes[bytesNumber++] = REPLACEMENT_BYTE;
+        }
+
+        if (c < 0x80) {
+            // ASCII symbols get here only after the high surrogate.
+            bytes[bytesNumber++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[bytesNumber++] = (byte) (0xC0 | (c >> 6));
+            bytes[bytesNumber++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[bytesNumber++] = REPLACEMENT_BYTE;
+        } else {
+            bytes[bytesNumber++] = (byte) (0xE0 | (c >> 12));
+            bytes[bytesNumber++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[bytesNumber++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void writeChars(char[] data, int start, int length) throws IOException {
+        if (chars.length - charsNumber < length) {
+            flushChars();
+            if (length > chars.length) {
+                writer.write(data, start, length);
+                return;
+            }
+        }
+        System.arraycopy(data, start, chars, charsNumber, length);
+        charsNumber += length;
+    }
+
+    private void flushChars() throws IOException {
+        if (charsNumber > 0) {
+            writer.write(chars, 0, charsNumber);
+            charsNumber = 0;
+        }
+    }
+
+    private void writeBytes(byte[] data) throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            if (bytesNumber >= bytes.length) {
+                flushBytes();
+            }
+            bytes[bytesNumber++] = REPLACEMENT_BYTE;
+        }
+        if (bytes.length - bytesNumber < data.length) {
+            flushBytes();
+            if (data.length > bytes.length) {
+                out.write(data);
+                return;
+            }
+        }
+        System.arraycopy(data, 0, bytes, bytesNumber, data.length);
+        bytesNumber += data.length;
+    }
+
+    private void flushBytes() throws IOException {
+        if (bytesNumber > 0) {
+            out.write(bytes, 0, bytesNumber);
+            bytesNumber = 0;
+        }
+    }
+
+    private static byte[] encode(char[] text) {
+        try {
+            return new String(text).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
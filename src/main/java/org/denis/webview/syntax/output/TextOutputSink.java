@@ -0,0 +1,108 @@
+package org.denis.webview.syntax.output;
+
+import org.denis.webview.syntax.logic.TokenSink;
+import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.logic.TokenTypeRegistry;
+import org.denis.webview.util.io.ChunkedCharBuffer;
+
+/**
+ * Writes in-memory text with the discovered tokens to the {@link OutputProcessor}, i.e. the text between the
+ * tokens is written as-is and the tokens' text is written with their types.
+ * <p/>
+ * The text may be held either by a single array or by a {@link ChunkedCharBuffer}. The chunks are written
+ * directly, only the tokens that cross chunk bounds are copied.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class TextOutputSink implements TokenSink {
+
+    private static final char[] EMPTY_TEXT = new char[0];
+
+    private final char[]            text;
+    private final ChunkedCharBuffer chunkedText;
+    private final OutputProcessor   outputProcessor;
+
+    /** Buffer for the symbols that cross chunk bounds. Lazily initialized. */
+    private char[] joinBuffer;
+
+    /** Offset of the first text symbol that is not written yet. */
+    private int position;
+
+    /**
+     * Creates new <code>TextOutputSink</code> object.
+     *
+     * @param text              target text holder
+     * @param start             offset of the first text symbol to write
+     * @param outputProcessor   output to use
+     */
+    public TextOutputSink(char[] text, int start, OutputProcessor outputProcessor) {
+        this(text, null, start, outputProcessor);
+    }
+
+    /**
+     * Creates new <code>TextOutputSink</code> object.
+     *
+     * @param text              target text holder
+     * @param start             offset of the first text symbol to write
+     * @param outputProcessor   output to use
+     */
+    public TextOutputSink(ChunkedCharBuffer text, int start, OutputProcessor outputProcessor) {
+        this(null, text, start, outputProcessor);
+    }
+
+    private TextOutputSink(char[] text, ChunkedCharBuffer chunkedText, int start, OutputProcessor outputProcessor) {
+        this.text = text;
+        this.chunkedText = chunkedText;
+        this.outputProcessor = outputProcessor;
+        position = start;
+    }
+
+    @Override
+    public void onToken(int typeId, int start, int end) {
+        if (start > position) {
+            write(position, start, null);
+        }
+        write(start, end, TokenTypeRegistry.get(typeId));
+        position = Math.max(position, end);
+    }
+
+    /**
+     * Writes the text remaining after the last token.
+     *
+     * @param end   offset after the last text symbol to write
+     */
+    public void finish(int end) {
+        if (end > position) {
+            write(position, end, null);
+        }
+        position = Math.max(position, end);
+    }
+
+    private void write(int start, int end, TokenType tokenType) {
+        if (text != null) {
+            outputProcessor.write(text, start, end, tokenType);
+            return;
+        }
+        if (start >= end) {
+            outputProcessor.write(EMPTY_TEXT, 0, 0, tokenType);
+            return;
+        }
+        int chunkSize = chunkedText.getChunkSize();
+        int chunk = start / chunkSize;
+        int chunkStart = chunk * chunkSize;
+        if (end - chunkStart <= chunkSize) {
+            outputProcessor.write(chunkedText.getChunk(chunk), start - chunkStart, end - chunkStart, tokenType);
+            return;
+        }
+
+        // Symbols of the same token are written at once in order to be put into a single markup run.
+        if (joinBuffer == null || joinBuffer.length < end - start) {
+            joinBuffer = new char[Math.max(end - start, chunkSize)];
+        }
+        chunkedText.getChars(start, end, joinBuffer, 0);
+        outputProcessor.write(joinBuffer, 0, end - start, tokenType);
+    }
+}
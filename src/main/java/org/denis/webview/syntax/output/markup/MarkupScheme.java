@@ -12,7 +12,8 @@ import org.denis.webview.syntax.logic.TokenType;
  */
 public interface MarkupScheme {
 
-    char[] EMPTY_MARKUP = new char[0];
+    char[] EMPTY_MARKUP         = new char[0];
+    byte[] EMPTY_ENCODED_MARKUP = new byte[0];
 
     /**
      * Allows to retrieve markup data for the given token type.
@@ -21,4 +22,23 @@ public interface MarkupScheme {
      * @return              markup data for the given token type if any; empty array otherwise
      */
     char[] getMarkup(TokenType tokenType);
+
+    /**
+     * Allows to retrieve {@link #getMarkup(TokenType) markup data} for the given token type encoded to
+     * <code>UTF-8</code>, i.e. implementations are expected to encode the markup once and return the same array.
+     *
+     * @param tokenType     target token type
+     * @return              <code>UTF-8</code> markup data for the given token type if any; empty array otherwise
+     */
+    byte[] getEncodedMarkup(TokenType tokenType);
+
+    /**
+     * Allows to answer if white space marked up for the given token type looks the same as the plain white space,
+     * i.e. if the white space between two tokens with the same markup may be put into a single markup run.
+     *
+     * @param tokenType     target token type
+     * @return              <code>true</code> if the markup of the given token type doesn't change white space
+     *                      appearance; <code>false</code> otherwise
+     */
+    boolean isWhiteSpaceNeutral(TokenType tokenType);
 }
@@ -4,6 +4,7 @@ import org.denis.webview.config.MarkupType;
 import org.denis.webview.config.Profile;
 import org.denis.webview.settings.Settings;
 import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.output.markup.css.ClassBasedMarkupScheme;
 import org.denis.webview.syntax.output.markup.inline.InlineStyleMarkupScheme;
 import org.denis.webview.syntax.output.markup.inline.StyleScheme;
 import org.denis.webview.syntax.output.markup.inline.StyleSchemeImpl;
@@ -36,7 +37,17 @@ public class MarkupSchemeProvider {
      * @return  markup scheme for the current settings if any is registered; <code>null</code> otherwise
      */
     public MarkupScheme getScheme() {
-        return schemes.get(new Tuple(settings.getMarkupType(), settings.getProfile()));
+        return getScheme(settings.getMarkupType(), settings.getProfile());
+    }
+
+    /**
+     * @param markupType    target markup type
+     * @param profile       target profile
+     * @return              markup scheme for the given markup type and profile if any is registered;
+     *                      <code>null</code> otherwise
+     */
+    public MarkupScheme getScheme(MarkupType markupType, Profile profile) {
+        return schemes.get(new Tuple(markupType, profile));
     }
 
     @Autowired
@@ -44,6 +55,12 @@ public class MarkupSchemeProvider {
         this.settings = settings;
     }
 
+    /**
+     * Registers {@link MarkupType#INLINE inline} and {@link MarkupType#CLASS_BASED class-based} markup schemes
+     * for every profile of the given style schemes.
+     *
+     * @param preRegisteredSchemes  style schemes to use
+     */
     @Autowired
     public void initInlineMarkup(Collection<StyleScheme> preRegisteredSchemes) {
         Map<Profile, StyleSchemeImpl> map = new HashMap<Profile, StyleSchemeImpl>();
@@ -58,6 +75,8 @@ public class MarkupSchemeProvider {
         }
         for (Map.Entry<Profile, StyleSchemeImpl> entry : map.entrySet()) {
             schemes.put(new Tuple(MarkupType.INLINE, entry.getKey()), new InlineStyleMarkupScheme(entry.getValue()));
+            schemes.put(new Tuple(MarkupType.CLASS_BASED, entry.getKey()),
+                        new ClassBasedMarkupScheme(entry.getValue()));
         }
     }
 }
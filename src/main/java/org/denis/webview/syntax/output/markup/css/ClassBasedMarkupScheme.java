@@ -0,0 +1,137 @@
+package org.denis.webview.syntax.output.markup.css;
+
+import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.output.markup.MarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.StyleRule;
+import org.denis.webview.syntax.output.markup.inline.StyleScheme;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Markup scheme for output that is highlighted by css classes.
+ * <p/>
+ * Every styled token type is marked by the class name derived from the token type name (like
+ * <code>class="java-keyword"</code>), i.e. the names are stable between application runs and don't depend on the
+ * {@link TokenType#getId() token type ids} that are assigned on registration. The rules of the given
+ * {@link StyleScheme} are compiled to the {@link #getStylesheet() stylesheet} with the rule per class once during
+ * the construction. The stylesheet is identified by its {@link #getVersion() version}, so, it may be cached by the
+ * clients for as long as the version is referenced.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ClassBasedMarkupScheme implements MarkupScheme {
+
+    private static final String TOKEN_TYPE_SUFFIX = "TokenType";
+
+    private final Map<TokenType, char[]> markup        = new ConcurrentHashMap<TokenType, char[]>();
+    private final Map<TokenType, byte[]> encodedMarkup = new ConcurrentHashMap<TokenType, byte[]>();
+
+    private final Set<TokenType> whiteSpaceVisible
+        = Collections.newSetFromMap(new ConcurrentHashMap<TokenType, Boolean>());
+
+    private final String stylesheet;
+    private final String version;
+
+    public ClassBasedMarkupScheme(StyleScheme styleScheme) {
+        List<TokenType> tokenTypes = new ArrayList<TokenType>(styleScheme.getSupportedTokenTypes());
+        Collections.sort(tokenTypes, new Comparator<TokenType>() {
+            @Override
+            public int compare(TokenType t1, TokenType t2) {
+                return getClassName(t1).compareTo(getClassName(t2));
+            }
+        });
+
+        StringBuilder buffer = new StringBuilder();
+        for (TokenType tokenType : tokenTypes) {
+            String className = getClassName(tokenType);
+            String attribute = String.format("class=\"%s\"", className);
+            markup.put(tokenType, attribute.toCharArray());
+            encodedMarkup.put(tokenType, encode(attribute));
+            buffer.append(".").append(className).append("{");
+            for (StyleRule styleRule : styleScheme.getRules(tokenType)) {
+                buffer.append(styleRule.getAttribute().getCssName()).append(":").append(styleRule.getValue())
+                    .append(";");
+                if (styleRule.getAttribute().isWhiteSpaceVisible()) {
+                    whiteSpaceVisible.add(tokenType);
+                }
+            }
+            buffer.append("}\n");
+        }
+        stylesheet = buffer.toString();
+
+        CRC32 checksum = new CRC32();
+        checksum.update(encode(stylesheet));
+        version = Long.toHexString(checksum.getValue());
+    }
+
+    /**
+     * @param tokenType     target token type
+     * @return              css class name used for the given token type, e.g. <code>'java-keyword'</code> for
+     *                      the <code>JavaTokenType.KEYWORD</code>
+     */
+    public static String getClassName(TokenType tokenType) {
+        String name;
+        if (tokenType instanceof Enum) {
+            Enum<?> constant = (Enum<?>) tokenType;
+            String language = constant.getDeclaringClass().getSimpleName();
+            if (language.endsWith(TOKEN_TYPE_SUFFIX)) {
+                language = language.substring(0, language.length() - TOKEN_TYPE_SUFFIX.length());
+            }
+            name = language + "_" + constant.name();
+        } else {
+            name = tokenType.toString();
+        }
+        return name.toLowerCase(Locale.US).replace('_', '-');
+    }
+
+    @Override
+    public char[] getMarkup(TokenType tokenType) {
+        char[] result = markup.get(tokenType);
+        return result == null ? EMPTY_MARKUP : result;
+    }
+
+    @Override
+    public byte[] getEncodedMarkup(TokenType tokenType) {
+        byte[] result = encodedMarkup.get(tokenType);
+        return result == null ? EMPTY_ENCODED_MARKUP : result;
+    }
+
+    @Override
+    public boolean isWhiteSpaceNeutral(TokenType tokenType) {
+        return !whiteSpaceVisible.contains(tokenType);
+    }
+
+    /**
+     * @return      css rules for the classes used by the current scheme
+     */
+    public String getStylesheet() {
+        return stylesheet;
+    }
+
+    /**
+     * @return      {@link #getStylesheet() stylesheet} checksum, i.e. the stylesheet changes with the version only
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    private static byte[] encode(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
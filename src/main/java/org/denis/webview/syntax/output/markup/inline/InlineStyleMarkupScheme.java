@@ -3,6 +3,7 @@ package org.denis.webview.syntax.output.markup.inline;
 import org.denis.webview.syntax.logic.TokenType;
 import org.denis.webview.syntax.output.markup.MarkupScheme;
 
+import java.io.UnsupportedEncodingException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,6 +17,10 @@ public class InlineStyleMarkupScheme implements MarkupScheme {
 
     private final Map<TokenType, char[]> markup
             = new ConcurrentHashMap<TokenType, char[]>();
+    private final Map<TokenType, byte[]> encodedMarkup
+            = new ConcurrentHashMap<TokenType, byte[]>();
+    private final Set<TokenType> whiteSpaceVisible
+            = Collections.newSetFromMap(new ConcurrentHashMap<TokenType, Boolean>());
 
     public InlineStyleMarkupScheme(StyleScheme styleScheme) {
         for (TokenType tokenType : styleScheme.getSupportedTokenTypes()) {
@@ -23,9 +28,17 @@ public class InlineStyleMarkupScheme implements MarkupScheme {
             for (StyleRule styleRule : styleScheme.getRules(tokenType)) {
                 buffer.append(styleRule.getAttribute().getCssName()).append(":").append(styleRule.getValue())
                     .append(";");
+                if (styleRule.getAttribute().isWhiteSpaceVisible()) {
+                    whiteSpaceVisible.add(tokenType);
+                }
             }
             buffer.append("\"");
             markup.put(tokenType, buffer.toString().toCharArray());
+            try {
+                encodedMarkup.put(tokenType, buffer.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
         }
     }
 
@@ -34,4 +47,15 @@ public class InlineStyleMarkupScheme implements MarkupScheme {
         char[] result = markup.get(tokenType);
         return result == null ? EMPTY_MARKUP : result;
     }
+
+    @Override
+    public byte[] getEncodedMarkup(TokenType tokenType) {
+        byte[] result = encodedMarkup.get(tokenType);
+        return result == null ? EMPTY_ENCODED_MARKUP : result;
+    }
+
+    @Override
+    public boolean isWhiteSpaceNeutral(TokenType tokenType) {
+        return !whiteSpaceVisible.contains(tokenType);
+    }
 }
@@ -7,17 +7,27 @@ package org.denis.webview.syntax.output.markup.inline;
  * @since 6/7/11 6:30 PM
  */
 public enum StyleAttribute {
-    COLOR, BACKGROUND_COLOR,
+    COLOR(false), BACKGROUND_COLOR(true),
     
-    FONT_WEIGHT, FONT_STYLE, TEXT_DECORATION;
+    FONT_WEIGHT(false), FONT_STYLE(false), TEXT_DECORATION(true);
 
     private String cssName;
+    private final boolean whiteSpaceVisible;
 
-    StyleAttribute() {
+    StyleAttribute(boolean whiteSpaceVisible) {
+        this.whiteSpaceVisible = whiteSpaceVisible;
         cssName = toString().toLowerCase().replace("_", "-");
     }
 
     public String getCssName() {
         return cssName;
     }
+
+    /**
+     * @return      <code>true</code> if white space styled by the current attribute looks differently from the
+     *              plain white space (e.g. it has background or is underlined); <code>false</code> otherwise
+     */
+    public boolean isWhiteSpaceVisible() {
+        return whiteSpaceVisible;
+    }
 }
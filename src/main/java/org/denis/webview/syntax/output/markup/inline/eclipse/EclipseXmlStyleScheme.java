@@ -0,0 +1,39 @@
+package org.denis.webview.syntax.output.markup.inline.eclipse;
+
+import org.denis.webview.config.Profile;
+import org.denis.webview.syntax.logic.xml.XmlTokenType;
+import org.denis.webview.syntax.output.markup.inline.StyleAttribute;
+import org.denis.webview.syntax.output.markup.inline.StyleRule;
+import org.denis.webview.syntax.output.markup.inline.StyleSchemeImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+@Component
+public class EclipseXmlStyleScheme extends StyleSchemeImpl {
+
+    public EclipseXmlStyleScheme() {
+        super(Profile.ECLIPSE);
+
+        registerMarkup();
+        registerSections();
+    }
+
+    private void registerMarkup() {
+        final StyleRule tagColor = new StyleRule(StyleAttribute.COLOR, "#3f7f7f");
+        register(XmlTokenType.TAG_START, tagColor);
+        register(XmlTokenType.TAG_END, tagColor);
+        register(XmlTokenType.ATTRIBUTE_NAME_START, new StyleRule(StyleAttribute.COLOR, "#7f007f"));
+        register(XmlTokenType.ATTRIBUTE_VALUE_START, new StyleRule(StyleAttribute.COLOR, "#2a00ff"), StyleRule.ITALIC);
+        register(XmlTokenType.ENTITY_REFERENCE, new StyleRule(StyleAttribute.COLOR, "#2a00ff"));
+    }
+
+    private void registerSections() {
+        register(XmlTokenType.COMMENT_START, new StyleRule(StyleAttribute.COLOR, "#3f5fbf"));
+        register(XmlTokenType.CDATA_START, new StyleRule(StyleAttribute.COLOR, "#008080"));
+        register(XmlTokenType.PROCESSING_INSTRUCTION_START, new StyleRule(StyleAttribute.COLOR, "#008080"));
+        register(XmlTokenType.DOCTYPE_START, new StyleRule(StyleAttribute.COLOR, "#008080"));
+    }
+}
@@ -0,0 +1,40 @@
+package org.denis.webview.syntax.output.markup.inline.idea;
+
+import org.denis.webview.config.Profile;
+import org.denis.webview.syntax.logic.xml.XmlTokenType;
+import org.denis.webview.syntax.output.markup.inline.StyleAttribute;
+import org.denis.webview.syntax.output.markup.inline.StyleRule;
+import org.denis.webview.syntax.output.markup.inline.StyleSchemeImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+@Component
+public class IdeaXmlStyleScheme extends StyleSchemeImpl {
+
+    public IdeaXmlStyleScheme() {
+        super(Profile.IDEA);
+
+        registerMarkup();
+        registerSections();
+    }
+
+    private void registerMarkup() {
+        StyleRule[] tagRules = {new StyleRule(StyleAttribute.COLOR, "#000080"), StyleRule.BOLD};
+        register(XmlTokenType.TAG_START, tagRules);
+        register(XmlTokenType.TAG_END, tagRules);
+        register(XmlTokenType.ATTRIBUTE_NAME_START, new StyleRule(StyleAttribute.COLOR, "#0000ff"));
+        register(XmlTokenType.ATTRIBUTE_VALUE_START, new StyleRule(StyleAttribute.COLOR, "#008000"), StyleRule.BOLD);
+        register(XmlTokenType.ENTITY_REFERENCE, new StyleRule(StyleAttribute.COLOR, "#0000ff"));
+    }
+
+    private void registerSections() {
+        register(XmlTokenType.COMMENT_START, new StyleRule(StyleAttribute.COLOR, "#808080"), StyleRule.ITALIC);
+        register(XmlTokenType.CDATA_START, new StyleRule(StyleAttribute.BACKGROUND_COLOR, "#f0f0f0"));
+        StyleRule[] prologRules = {new StyleRule(StyleAttribute.COLOR, "#000080"), StyleRule.BOLD};
+        register(XmlTokenType.PROCESSING_INSTRUCTION_START, prologRules);
+        register(XmlTokenType.DOCTYPE_START, prologRules);
+    }
+}
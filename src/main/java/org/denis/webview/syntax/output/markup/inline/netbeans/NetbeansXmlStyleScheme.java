@@ -0,0 +1,40 @@
+package org.denis.webview.syntax.output.markup.inline.netbeans;
+
+import org.denis.webview.config.Profile;
+import org.denis.webview.syntax.logic.xml.XmlTokenType;
+import org.denis.webview.syntax.output.markup.inline.StyleAttribute;
+import org.denis.webview.syntax.output.markup.inline.StyleRule;
+import org.denis.webview.syntax.output.markup.inline.StyleSchemeImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+@Component
+public class NetbeansXmlStyleScheme extends StyleSchemeImpl {
+
+    public NetbeansXmlStyleScheme() {
+        super(Profile.NETBEANS);
+
+        registerMarkup();
+        registerSections();
+    }
+
+    private void registerMarkup() {
+        StyleRule color = new StyleRule(StyleAttribute.COLOR, "#0000e6");
+        register(XmlTokenType.TAG_START, color);
+        register(XmlTokenType.TAG_END, color);
+        register(XmlTokenType.ATTRIBUTE_NAME_START, new StyleRule(StyleAttribute.COLOR, "#009900"));
+        register(XmlTokenType.ATTRIBUTE_VALUE_START, new StyleRule(StyleAttribute.COLOR, "#ce7b00"));
+        register(XmlTokenType.ENTITY_REFERENCE, new StyleRule(StyleAttribute.COLOR, "#b20000"));
+    }
+
+    private void registerSections() {
+        register(XmlTokenType.COMMENT_START, new StyleRule(StyleAttribute.COLOR, "#969696"));
+        register(XmlTokenType.CDATA_START, new StyleRule(StyleAttribute.COLOR, "#969696"));
+        StyleRule color = new StyleRule(StyleAttribute.COLOR, "#0000e6");
+        register(XmlTokenType.PROCESSING_INSTRUCTION_START, color);
+        register(XmlTokenType.DOCTYPE_START, color);
+    }
+}
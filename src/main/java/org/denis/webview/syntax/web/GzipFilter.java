@@ -0,0 +1,301 @@
+package org.denis.webview.syntax.web;
+
+import org.denis.webview.util.io.FlushableGzipOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses responses by <code>'gzip'</code> if the client accepts it (as defined by the
+ * <code>'Accept-Encoding'</code> request header).
+ * <p/>
+ * Highlighted html is very repetitive, so, it's compressed well. However, it's rendered progressively, so, the
+ * response is compressed as a stream that is {@link FlushableGzipOutputStream flushed} according to the
+ * configured thresholds instead of being buffered until the end.
+ * <p/>
+ * Aggregated {@link #getCompressionRatio() compression ratio} is exposed for monitoring.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class GzipFilter implements Filter {
+
+    private static final String ACCEPT_ENCODING_HEADER  = "Accept-Encoding";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String CONTENT_LENGTH_HEADER   = "Content-Length";
+    private static final String VARY_HEADER             = "Vary";
+    private static final String GZIP                    = "gzip";
+
+    private final AtomicLong responsesNumber   = new AtomicLong();
+    private final AtomicLong inputBytesNumber  = new AtomicLong();
+    private final AtomicLong outputBytesNumber = new AtomicLong();
+
+    private volatile int level          = Deflater.DEFAULT_COMPRESSION;
+    private volatile int minFlushBytes  = 4 * 1024;
+    private volatile int autoFlushBytes = 32 * 1024;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException
+    {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)
+            || !acceptsGzip(((HttpServletRequest) request).getHeader(ACCEPT_ENCODING_HEADER)))
+        {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.addHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+        GzipResponse gzipResponse = new GzipResponse(httpResponse);
+        try {
+            chain.doFilter(request, gzipResponse);
+            gzipResponse.finish();
+        } finally {
+            gzipResponse.end();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Allows to answer if given <code>'Accept-Encoding'</code> header value allows <code>'gzip'</code> encoding.
+     *
+     * @param acceptEncoding    <code>'Accept-Encoding'</code> header value (if any)
+     * @return                  <code>true</code> if <code>'gzip'</code> is acceptable; <code>false</code> otherwise
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] parts = encoding.split(";");
+            String name = parts[0].trim();
+            if (!GZIP.equalsIgnoreCase(name) && !"x-gzip".equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (accepted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return      ratio of the uncompressed to compressed size of all responses compressed so far; zero if there
+     *              were no such responses
+     */
+    public double getCompressionRatio() {
+        long output = outputBytesNumber.get();
+        return output <= 0 ? 0 : (double) inputBytesNumber.get() / output;
+    }
+
+    /**
+     * @return      compression statistics in human-readable form
+     */
+    public String getReport() {
+        return String.format(Locale.US, "gzip responses: %d, uncompressed bytes: %d, compressed bytes: %d, "
+                                        + "ratio: %.2f%n", responsesNumber.get(), inputBytesNumber.get(),
+                             outputBytesNumber.get(), getCompressionRatio());
+    }
+
+    /**
+     * @param level     compression level to use (<code>0-9</code> or <code>-1</code> for the default level)
+     * @throws IllegalArgumentException     if given level is invalid
+     */
+    public void setLevel(int level) throws IllegalArgumentException {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION
+                                                      || level > Deflater.BEST_COMPRESSION))
+        {
+            throw new IllegalArgumentException(String.format("Can't set gzip compression level. Reason: invalid "
+                                                             + "level %d is given", level));
+        }
+        this.level = level;
+    }
+
+    /**
+     * @param minFlushBytes     min number of the uncompressed bytes since the previous flush that makes the response
+     *                          flush effective, i.e. smaller flushes are ignored in order to keep compression ratio
+     */
+    public void setMinFlushBytes(int minFlushBytes) {
+        this.minFlushBytes = minFlushBytes;
+    }
+
+    /**
+     * @param autoFlushBytes    number of the uncompressed bytes after which the response is flushed automatically;
+     *                          non-positive value means that only explicit flushes are applied
+     */
+    public void setAutoFlushBytes(int autoFlushBytes) {
+        this.autoFlushBytes = autoFlushBytes;
+    }
+
+    /**
+     * Compresses the content written to the wrapped response. The compressed stream is created lazily, i.e.
+     * responses without content (like errors or redirects) are not affected.
+     */
+    private class GzipResponse extends HttpServletResponseWrapper {
+
+        private FlushableGzipOutputStream gzipStream;
+        private ServletOutputStream       outputStream;
+        private PrintWriter               writer;
+
+        GzipResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("Can't get response output stream. Reason: writer is already used");
+            }
+            if (outputStream == null) {
+                final FlushableGzipOutputStream stream = getGzipStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        stream.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        stream.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        stream.flush();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (outputStream != null) {
+                throw new IllegalStateException("Can't get response writer. Reason: output stream is already used");
+            }
+            if (writer == null) {
+                // The wrapped response reports the container default charset if no charset is set explicitly.
+                writer = new PrintWriter(new OutputStreamWriter(getGzipStream(), getResponse().getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (outputStream != null) {
+                outputStream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            // Content length is unknown as the content is compressed.
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (!CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void reset() {
+            if (gzipStream != null) {
+                throw new IllegalStateException("Can't reset the response. Reason: compressed content is written");
+            }
+            super.reset();
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (gzipStream != null) {
+                throw new IllegalStateException("Can't reset the response. Reason: compressed content is written");
+            }
+            super.resetBuffer();
+        }
+
+        private FlushableGzipOutputStream getGzipStream() throws IOException {
+            if (gzipStream == null) {
+                HttpServletResponse response = (HttpServletResponse) getResponse();
+                response.setHeader(CONTENT_ENCODING_HEADER, GZIP);
+                gzipStream = new FlushableGzipOutputStream(response.getOutputStream(), level, minFlushBytes,
+                                                           autoFlushBytes);
+            }
+            return gzipStream;
+        }
+
+        /**
+         * Writes the rest of the compressed content (if any) to the wrapped response and updates the statistics.
+         *
+         * @throws IOException      in case of unexpected I/O problem during writing to the wrapped response
+         */
+        void finish() throws IOException {
+            if (gzipStream == null) {
+                return;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            gzipStream.finish();
+            responsesNumber.incrementAndGet();
+            inputBytesNumber.addAndGet(gzipStream.getInputBytesNumber());
+            outputBytesNumber.addAndGet(gzipStream.getOutputBytesNumber());
+        }
+
+        /**
+         * Releases the compressor (if any), it's expected to be called after the response processing even if it
+         * fails.
+         */
+        void end() {
+            if (gzipStream != null) {
+                gzipStream.end();
+            }
+        }
+    }
+}
@@ -1,18 +1,67 @@
 package org.denis.webview.syntax.web;
 
+import org.denis.webview.config.MarkupType;
+import org.denis.webview.config.Profile;
+import org.denis.webview.settings.Settings;
+import org.denis.webview.syntax.logic.HighlightingSession;
+import org.denis.webview.syntax.logic.HighlightingSessionRegistry;
+import org.denis.webview.syntax.output.OutputProcessor;
+import org.denis.webview.syntax.output.TextOutputSink;
+import org.denis.webview.syntax.output.markup.MarkupScheme;
+import org.denis.webview.syntax.output.markup.MarkupSchemeProvider;
+import org.denis.webview.syntax.output.markup.css.ClassBasedMarkupScheme;
+import org.denis.webview.util.io.ContentEncoding;
+import org.denis.webview.util.io.MultipartInputStream;
 import org.denis.webview.view.CommonViewHelper;
 import org.denis.webview.view.ViewType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.ModelAndView;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.util.Collections;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Controller for syntax requests, i.e. requests to actually highlight target text.
+ * <p/>
+ * Following request formats are supported:
+ * <ul>
+ *     <li>
+ *          <b>form data</b> - all settings and the source are given as <code>'application/x-www-form-urlencoded'</code>
+ *          request body;
+ *     </li>
+ *     <li>
+ *          <b>raw body</b> - the whole <code>'text/plain'</code> or <code>'application/octet-stream'</code> request body
+ *          is the source and settings are given at the query string, e.g.
+ *          <code>'/content/syntax/highlight.html?language=java&profile=idea'</code>;
+ *     </li>
+ *     <li>
+ *          <b>multipart</b> - <code>'multipart/form-data'</code> request body where the source is given by the
+ *          uploaded file or <code>'source'</code> part and settings are given at the preceding parts or
+ *          at the query string. The source is streamed to the highlighter directly;
+ *     </li>
+ * </ul>
+ * Request body may be compressed, <code>'gzip'</code> and <code>'deflate'</code> content encodings are supported.
+ * The body is inflated incrementally as the highlighter consumes it. Malformed compressed body is answered by
+ * <code>'400 Bad Request'</code> if it's detected before the rendering starts.
+ * <p/>
+ * {@link MarkupType#CLASS_BASED Class-based} output refers to the
+ * {@link #handleStylesheet(String, HttpServletRequest, HttpServletResponse) profile stylesheet} by the versioned url,
+ * so, the stylesheet is cached by the clients.
+ * <p/>
+ * Documents that are edited and re-highlighted repeatedly may be processed incrementally via
+ * {@link #handleSession(HttpServletRequest, HttpServletResponse) session requests}.
+ * <p/>
+ * Responses are compressed by the {@link GzipFilter} if the client accepts it, its statistics is reported at
+ * <code>'/content/syntax/compression'</code>.
  *
  * @author Denis Zhdanov
  * @since 21.06.2010
@@ -20,11 +69,39 @@ import java.util.Collections;
 @Controller
 public class SyntaxController {
 
-    private static final String HIGHLIGHT_VIEW_NAME  = "syntax";
-    private static final String HIGHLIGHTED_VAR_NAME = "highlighted";
+    static final String HIGHLIGHT_VIEW_NAME  = "syntax";
+    static final String HIGHLIGHTED_VAR_NAME = "highlighted";
+    static final String STYLESHEET_VAR_NAME  = "stylesheet";
+
+    private static final String STYLESHEET_URL_PATTERN   = "/content/syntax/style/%s.css?v=%s";
+    private static final String STYLESHEET_VERSION_PARAM = "v";
+    private static final String STYLESHEET_CONTENT_TYPE  = "text/css;charset=UTF-8";
+    private static final String STYLESHEET_CACHE_CONTROL = "public, max-age=31536000";
+    private static final String CACHE_CONTROL_HEADER     = "Cache-Control";
+    private static final String ETAG_HEADER              = "ETag";
+    private static final String IF_NONE_MATCH_HEADER     = "If-None-Match";
+
+    private static final String   CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String   MULTIPART_CONTENT_TYPE  = "multipart/form-data";
+    private static final String   BOUNDARY_PARAMETER      = "boundary";
+    private static final String[] RAW_CONTENT_TYPES       = { "text/plain", "application/octet-stream" };
+
+    private static final String SESSION_ID_PARAMETER     = "id";
+    private static final String EDIT_OFFSET_PARAMETER    = "offset";
+    private static final String REMOVED_LENGTH_PARAMETER = "removed";
+    private static final String SESSION_ID_HEADER        = "X-Session-Id";
+    private static final String START_LINE_HEADER        = "X-Start-Line";
+    private static final String OLD_END_LINE_HEADER      = "X-Old-End-Line";
+    private static final String NEW_END_LINE_HEADER      = "X-New-End-Line";
+    private static final String FRAGMENT_CONTENT_TYPE    = "text/html;charset=UTF-8";
+    private static final String REPORT_CONTENT_TYPE      = "text/plain;charset=UTF-8";
 
     private final CommonViewHelper viewHelper;
     private SyntaxHighlightRenderable renderable;
+    private Settings settings;
+    private HighlightingSessionRegistry sessionRegistry;
+    private MarkupSchemeProvider markupSchemeProvider;
+    private GzipFilter gzipFilter;
 
     @Autowired
     public SyntaxController(CommonViewHelper viewHelper) {
@@ -32,15 +109,310 @@ public class SyntaxController {
     }
 
     @RequestMapping("/syntax/**")
-    public ModelAndView handle(Reader reader) throws IOException {
-        renderable.prepare(reader);
-        return viewHelper.map(
-                HIGHLIGHT_VIEW_NAME, ViewType.SYNTAX, Collections.singletonMap(HIGHLIGHTED_VAR_NAME, renderable)
-        );
+    public ModelAndView handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ContentEncoding encoding;
+        try {
+            encoding = ContentEncoding.parse(request.getHeader(CONTENT_ENCODING_HEADER));
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, e.getMessage());
+            return null;
+        }
+        String mimeType = getMimeType(request.getContentType());
+        try {
+            InputStream in = encoding.decode(request.getInputStream());
+            if (isRawBody(mimeType)) {
+                applyQuerySettings(request);
+                renderable.prepareRaw(in, request.getCharacterEncoding(), request.getContentLength());
+            } else if (MULTIPART_CONTENT_TYPE.equalsIgnoreCase(mimeType)) {
+                String boundary = MultipartInputStream.getHeaderParameter(request.getContentType(), BOUNDARY_PARAMETER);
+                if (boundary == null || boundary.length() == 0) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Multipart boundary is undefined");
+                    return null;
+                }
+                applyQuerySettings(request);
+                renderable.prepareMultipart(in, boundary, request.getCharacterEncoding(), request.getContentLength());
+            } else {
+                renderable.prepare(in);
+            }
+        } catch (IllegalArgumentException e) {
+            // Malformed request body, e.g. truncated compressed data or invalid url-encoded symbols.
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        } catch (IllegalStateException e) {
+            // Form data ends in the middle of the '%XX' sequence.
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put(HIGHLIGHTED_VAR_NAME, renderable);
+        MarkupScheme markupScheme = markupSchemeProvider.getScheme();
+        if (markupScheme instanceof ClassBasedMarkupScheme) {
+            model.put(STYLESHEET_VAR_NAME, String.format(STYLESHEET_URL_PATTERN,
+                    settings.getProfile().name().toLowerCase(), ((ClassBasedMarkupScheme) markupScheme).getVersion()));
+        }
+        return viewHelper.map(HIGHLIGHT_VIEW_NAME, ViewType.SYNTAX, model);
+    }
+
+    /**
+     * Serves the stylesheet of the {@link MarkupType#CLASS_BASED class-based} markup for the given profile. It's
+     * generated once at the startup and is allowed to be cached for a long time as its url contains its version.
+     * Requests for another version (e.g. from the pages rendered before the redeploy) are redirected to the url
+     * of the current version, i.e. a stale version url never caches the current stylesheet.
+     *
+     * @param profileName   target profile name
+     * @param request       target request
+     * @param response      target response
+     * @return              <code>null</code> as the response is written directly
+     * @throws IOException      in case of unexpected I/O problem during the processing
+     */
+    @RequestMapping("/syntax/style/{profile}.css")
+    public ModelAndView handleStylesheet(@PathVariable("profile") String profileName,
+                                         HttpServletRequest request, HttpServletResponse response)
+        throws IOException
+    {
+        MarkupScheme markupScheme = null;
+        for (Profile profile : Profile.values()) {
+            if (profile.name().equalsIgnoreCase(profileName)) {
+                markupScheme = markupSchemeProvider.getScheme(MarkupType.CLASS_BASED, profile);
+            }
+        }
+        if (!(markupScheme instanceof ClassBasedMarkupScheme)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, String.format("Unknown profile '%s'", profileName));
+            return null;
+        }
+        ClassBasedMarkupScheme scheme = (ClassBasedMarkupScheme) markupScheme;
+        if (!scheme.getVersion().equals(request.getParameter(STYLESHEET_VERSION_PARAM))) {
+            response.sendRedirect(String.format(STYLESHEET_URL_PATTERN, profileName.toLowerCase(),
+                                                scheme.getVersion()));
+            return null;
+        }
+        String etag = String.format("\"%s\"", scheme.getVersion());
+        response.setHeader(ETAG_HEADER, etag);
+        response.setHeader(CACHE_CONTROL_HEADER, STYLESHEET_CACHE_CONTROL);
+        if (etag.equals(request.getHeader(IF_NONE_MATCH_HEADER))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+        response.setContentType(STYLESHEET_CONTENT_TYPE);
+        Writer writer = response.getWriter();
+        writer.write(scheme.getStylesheet());
+        writer.flush();
+        return null;
+    }
+
+    /**
+     * Highlights the document incrementally. The document text or edit is given by the raw request body and settings
+     * are given at the query string:
+     * <ul>
+     *     <li>
+     *          if there is no <code>'offset'</code> parameter, the body is the whole document text, new session
+     *          is created for it. Its id is generated by the server and is returned at the
+     *          <code>'X-Session-Id'</code> response header;
+     *     </li>
+     *     <li>
+     *          otherwise the body is the text to insert at the given offset to the document of the session
+     *          identified by the <code>'id'</code> query parameter after removing <code>'removed'</code> symbols
+     *          starting from it. <code>'404 Not Found'</code> is returned if there is no session for the given
+     *          document, the client is expected to re-send the whole document then;
+     *     </li>
+     * </ul>
+     * Documents can't be longer than {@link HighlightingSession#MAX_LENGTH} symbols,
+     * <code>'413 Request Entity Too Large'</code> is returned otherwise.
+     * <p/>
+     * The response is the highlighted HTML of the changed lines only. Lines
+     * <code>[X-Start-Line; X-Old-End-Line)</code> of the previous document version are replaced by it, i.e. it
+     * contains the lines <code>[X-Start-Line; X-New-End-Line)</code> of the new version (zero-based). The HTML is
+     * written to the response stream as <code>UTF-8</code> bytes directly.
+     *
+     * @param request   target request
+     * @param response  target response
+     * @return          <code>null</code> as the response is written directly
+     * @throws IOException      in case of unexpected I/O problem during the processing
+     */
+    @RequestMapping("/syntax/session")
+    public ModelAndView handleSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String offset = request.getParameter(EDIT_OFFSET_PARAMETER);
+        String id = request.getParameter(SESSION_ID_PARAMETER);
+        if (offset != null && (id == null || id.length() == 0)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Document id is undefined");
+            return null;
+        }
+        ContentEncoding encoding;
+        try {
+            encoding = ContentEncoding.parse(request.getHeader(CONTENT_ENCODING_HEADER));
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, e.getMessage());
+            return null;
+        }
+        applyQuerySettings(request);
+        String text;
+        try {
+            text = readAll(SyntaxHighlightRenderable.createRawReader(
+                encoding.decode(request.getInputStream()), request.getCharacterEncoding()
+            ), HighlightingSession.MAX_LENGTH);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+        if (text == null) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, String.format(
+                "Document can't be longer than %d symbols", HighlightingSession.MAX_LENGTH
+            ));
+            return null;
+        }
+
+        if (offset == null) {
+            id = sessionRegistry.create(settings.getSourceType());
+            response.setHeader(SESSION_ID_HEADER, id);
+        }
+        HighlightingSession session = sessionRegistry.get(id);
+        if (session == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, String.format("No session for document '%s'", id));
+            return null;
+        }
+
+        synchronized (session) {
+            HighlightingSession.Change change;
+            try {
+                if (offset == null) {
+                    change = session.edit(0, session.getLength(), text);
+                } else {
+                    String removed = request.getParameter(REMOVED_LENGTH_PARAMETER);
+                    int removedLength = removed == null ? 0 : Integer.parseInt(removed);
+                    if (session.getLength() - removedLength + text.length() > HighlightingSession.MAX_LENGTH) {
+                        response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, String.format(
+                            "Document can't be longer than %d symbols", HighlightingSession.MAX_LENGTH
+                        ));
+                        return null;
+                    }
+                    change = session.edit(Integer.parseInt(offset), removedLength, text);
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is IllegalArgumentException as well.
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return null;
+            }
+            response.setContentType(FRAGMENT_CONTENT_TYPE);
+            response.setIntHeader(START_LINE_HEADER, change.getStartLine());
+            response.setIntHeader(OLD_END_LINE_HEADER, change.getOldEndLine());
+            response.setIntHeader(NEW_END_LINE_HEADER, change.getNewEndLine());
+            OutputProcessor outputProcessor
+                = new OutputProcessor(response.getOutputStream(), markupSchemeProvider.getScheme());
+            TextOutputSink sink = new TextOutputSink(session.getChars(), change.getStartOffset(), outputProcessor);
+            session.replay(change.getStartOffset(), change.getEndOffset(), sink);
+            sink.finish(change.getEndOffset());
+            outputProcessor.flush();
+        }
+        return null;
+    }
+
+    /**
+     * Reports statistics of the {@link GzipFilter response compression}.
+     *
+     * @param response  target response
+     * @return          <code>null</code> as the response is written directly
+     * @throws IOException      in case of unexpected I/O problem during the processing
+     */
+    @RequestMapping("/syntax/compression")
+    public ModelAndView handleCompression(HttpServletResponse response) throws IOException {
+        if (gzipFilter == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Response compression is not configured");
+            return null;
+        }
+        response.setContentType(REPORT_CONTENT_TYPE);
+        Writer writer = response.getWriter();
+        writer.write(gzipFilter.getReport());
+        writer.flush();
+        return null;
     }
 
     @Autowired
     public void setRenderable(SyntaxHighlightRenderable renderable) {
         this.renderable = renderable;
     }
+
+    @Autowired
+    public void setSettings(Settings settings) {
+        this.settings = settings;
+    }
+
+    @Autowired
+    public void setSessionRegistry(HighlightingSessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @Autowired
+    public void setMarkupSchemeProvider(MarkupSchemeProvider markupSchemeProvider) {
+        this.markupSchemeProvider = markupSchemeProvider;
+    }
+
+    @Autowired(required = false)
+    public void setGzipFilter(GzipFilter gzipFilter) {
+        this.gzipFilter = gzipFilter;
+    }
+
+    /**
+     * Reads the whole given stream unless it's longer than the given limit.
+     *
+     * @param reader        target stream
+     * @param maxLength     max number of symbols to read
+     * @return              stream data if it's not longer than the given limit; <code>null</code> otherwise
+     * @throws IOException      in case of unexpected I/O problem during reading the given stream
+     */
+    private static String readAll(Reader reader, int maxLength) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[1024];
+        for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+            result.append(buffer, 0, read);
+            if (result.length() > maxLength) {
+                return null;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Applies settings given at the query string of the given request.
+     *
+     * @param request   target request
+     */
+    private void applyQuerySettings(HttpServletRequest request) {
+        for (Settings.Key key : Settings.Key.values()) {
+            String name = key.getParameterName();
+            String value = request.getParameter(name);
+            if (value != null) {
+                settings.setSetting(name, value);
+            }
+        }
+    }
+
+    /**
+     * @param contentType   request content type (if any)
+     * @return              mime type of the given content type, i.e. the content type without parameters
+     */
+    private static String getMimeType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int end = contentType.indexOf(';');
+        return (end < 0 ? contentType : contentType.substring(0, end)).trim();
+    }
+
+    /**
+     * Allows to answer if request body of the given mime type is the source to highlight as-is.
+     *
+     * @param mimeType  request mime type (if any)
+     * @return          <code>true</code> if request body is the raw source; <code>false</code> otherwise
+     */
+    private static boolean isRawBody(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        for (String rawType : RAW_CONTENT_TYPES) {
+            if (rawType.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -6,13 +6,19 @@ import org.apache.velocity.runtime.Renderable;
 import org.denis.webview.settings.Settings;
 import org.denis.webview.syntax.logic.Highlighter;
 import org.denis.webview.syntax.logic.HighlighterProvider;
-import org.denis.webview.syntax.logic.TokenInfo;
+import org.denis.webview.syntax.logic.TokenBatchSink;
+import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.logic.TokenTypeRegistry;
 import org.denis.webview.syntax.output.OutputProcessor;
+import org.denis.webview.syntax.output.TextOutputSink;
 import org.denis.webview.syntax.output.markup.MarkupScheme;
 import org.denis.webview.syntax.output.markup.MarkupSchemeProvider;
 import org.denis.webview.util.io.CharBufferReader;
+import org.denis.webview.util.io.ChunkedCharBuffer;
+import org.denis.webview.util.io.HttpParametersReader;
+import org.denis.webview.util.io.MultipartInputStream;
 import org.denis.webview.util.io.SymbolCountingReader;
-import org.denis.webview.util.io.UrlDecodingReader;
+import org.denis.webview.util.io.UrlDecodingInputStreamReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
@@ -20,9 +26,13 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.CharBuffer;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Adapter of application-specific syntax highlighting logic to <code>Velocity</code> API.
@@ -36,9 +46,24 @@ import java.nio.CharBuffer;
 @Scope(value = WebApplicationContext.SCOPE_REQUEST,  proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class SyntaxHighlightRenderable implements Renderable {
 
+    /**
+     * Max number of the source symbols that may be stored in memory waiting for the settings that are given after
+     * the source.
+     */
+    public static final int MAX_BUFFERED_SOURCE_LENGTH = 1024 * 1024;
+
+    /**
+     * Max number of the raw or multipart source symbols that may be stored in memory in order to be lexed by chunks
+     * concurrently.
+     */
+    public static final int MAX_SPOOLED_SOURCE_LENGTH = 8 * 1024 * 1024;
+
     private static final Logger LOG = Logger.getLogger(SyntaxHighlightRenderable.class);
-    private static final String SOURCE_PARAMETER_NAME = "source";
-    private static final int    BUFFER_SIZE           = 1024;
+    private static final int    BUFFER_SIZE = 1024;
+    private static final String UTF_8       = "UTF-8";
+    private static final String US_ASCII    = "US-ASCII";
+
+    private static final String CHARSET_PARAMETER = "charset";
 
     /**
      * Buffers used during syntax highlighting processing.
@@ -52,8 +77,11 @@ public class SyntaxHighlightRenderable implements Renderable {
     
     private ReadData activeData = readerData1;
 
-    /** Buffer used during highlighting parameters parsing. */
-    private final CharBuffer paramsBuffer = CharBuffer.allocate(32);
+    /** Holds <code>'source'</code> parameter value until all request parameters are processed (if necessary). */
+    private final ChunkedCharBuffer source = new ChunkedCharBuffer();
+
+    /** Flag that indicates if the whole source is held at the {@link #source} buffer. */
+    private boolean sourceBuffered;
 
     private MarkupSchemeProvider markupSchemeProvider;
     private HighlighterProvider highlighterProvider;
@@ -66,27 +94,214 @@ public class SyntaxHighlightRenderable implements Renderable {
         MarkupScheme markupScheme = markupSchemeProvider.getScheme();
         OutputProcessor outputProcessor = new OutputProcessor(writer, markupScheme);
 
+        // Large source that is already in memory may be lexed by chunks concurrently.
+        Highlighter highlighter = highlighterProvider.getHighlighter();
+        if (sourceBuffered && source.length() >= HighlighterProvider.PARALLEL_THRESHOLD) {
+            TextOutputSink sink = new TextOutputSink(source, 0, outputProcessor);
+            highlighter.addSink(sink);
+            highlighter.process(source);
+            sink.finish(source.length());
+            outputProcessor.flush();
+            return true;
+        }
+
         // Setup rolling input symbol stream.
         CharBufferListener readerListener = new CharBufferListener(outputProcessor);
         CharBufferReader charBufferReader = new CharBufferReader(activeData.buffer, readerListener);
         readerListener.setReader(charBufferReader);
 
         // Parse tokens.
-        Highlighter highlighter = highlighterProvider.getHighlighter();
-        highlighter.addListener(new HighlighterListener(outputProcessor));
+        highlighter.addSink(new HighlighterSink(outputProcessor));
         SymbolCountingReader symbolCountingReader = new SymbolCountingReader(charBufferReader);
         symbolCountingReader.adjustReadSymbolsNumber(activeData.size());
         highlighter.process(symbolCountingReader);
+        outputProcessor.flush();
 
         return true;
     }
 
-    public void prepare(Reader reader) throws IOException {
-//        this.reader = new HtmlEntityDecodingReader(new UrlDecodingReader(new HttpParametersReader(
-        this.reader = new UrlDecodingReader(reader);
-        parseParams();
+    /**
+     * Prepares current renderable to highlighting of the url-encoded form data contained at the given
+     * request body stream.
+     * <p/>
+     * Request parameters may go in any order. If all settings are given before the <code>'source'</code> parameter,
+     * its value is streamed to the highlighter directly (parameters after it are ignored then). Otherwise the value
+     * is stored in memory until all parameters are processed, that guarantees that all settings are applied before
+     * the rendering starts. If the value is longer than {@link #MAX_BUFFERED_SOURCE_LENGTH} symbols, only that
+     * number of symbols is stored and the rest of the value is streamed after them with the settings given
+     * before it (parameters after it are ignored then).
+     * <p/>
+     * Only the first <code>'source'</code> parameter is processed, the others are ignored.
+     *
+     * @param in    raw request body
+     * @throws IOException      in case of unexpected I/O problem during reading the given stream
+     */
+    public void prepare(InputStream in) throws IOException {
+        final Set<Parameter> givenSettings = EnumSet.noneOf(Parameter.class);
+        HttpParametersReader<Parameter> parametersReader
+            = new HttpParametersReader<Parameter>(in, Parameter.class, Parameter.SOURCE);
+        HttpParametersReader.Listener<Parameter> listener = new HttpParametersReader.Listener<Parameter>() {
+            @Override
+            public void onParameter(Parameter key, char[] buffer, int start, int end) {
+                if (key.settingsKey != null) {
+                    settings.setSetting(key.settingsKey, buffer, start, end);
+                    givenSettings.add(key);
+                }
+            }
+
+            @Override
+            public void onStreamingParameter(Parameter key, Reader value) {
+                // Duplicate source, ignore it.
+            }
+        };
+        activeData.buffer.limit(0);
+        Reader value = parametersReader.parseToStreamingParameter(listener);
+        if (value == null) {
+            reader = source.getReader();
+            sourceBuffered = true;
+        } else if (givenSettings.containsAll(Parameter.SETTINGS)) {
+            reader = value;
+        } else if (source.append(value, MAX_BUFFERED_SOURCE_LENGTH)) {
+            parametersReader.parse(listener);
+            reader = source.getReader();
+            sourceBuffered = true;
+        } else {
+            reader = source.getReader(value);
+        }
     }
     
+    /**
+     * Prepares current renderable to highlighting of the source contained at the given request body stream as-is,
+     * i.e. the body is neither url-decoded nor tokenized.
+     * <p/>
+     * It's assumed that all settings are already applied, so, the body is streamed to the highlighter directly
+     * unless it's {@link #spool(Reader, int) spooled} for the chunk-parallel lexing.
+     *
+     * @param in                raw request body
+     * @param charset           name of the body charset (if defined; <code>null</code> means <code>UTF-8</code>)
+     * @param contentLength     request body length in bytes if known; negative value otherwise
+     * @throws IOException      in case of unexpected I/O problem during reading the given stream
+     */
+    public void prepareRaw(InputStream in, String charset, int contentLength) throws IOException {
+        reader = spool(createRawReader(in, charset), contentLength);
+        activeData.buffer.limit(0);
+    }
+
+    /**
+     * Prepares current renderable to highlighting of the <code>'multipart/form-data'</code> contained at the given
+     * request body stream.
+     * <p/>
+     * The source is given either by the <code>'source'</code> part or by the file part. Its body is streamed to the
+     * highlighter directly (unless it's {@link #spool(Reader, int) spooled} for the chunk-parallel lexing), so,
+     * settings should be given by the preceding parts (parts after the source are ignored). File parts with empty
+     * file name (no file is chosen) are skipped.
+     *
+     * @param in                raw request body
+     * @param boundary          multipart boundary
+     * @param charset           name of the default parts charset (if defined; <code>null</code> means
+     *                          <code>UTF-8</code>)
+     * @param contentLength     request body length in bytes if known; negative value otherwise
+     * @throws IllegalArgumentException     if given boundary is undefined
+     * @throws IOException                  in case of unexpected I/O problem during reading the given stream
+     */
+    public void prepareMultipart(InputStream in, String boundary, String charset, int contentLength)
+        throws IllegalArgumentException, IOException
+    {
+        MultipartInputStream multipart = new MultipartInputStream(in, boundary);
+        reader = null;
+        char[] value = null;
+        while (reader == null && multipart.nextPart()) {
+            String fileName = multipart.getFileName();
+            Parameter parameter = Parameter.byName(multipart.getName());
+            if (fileName != null) {
+                if (fileName.length() > 0) {
+                    reader = spool(createRawReader(multipart, getCharset(multipart, charset)), contentLength);
+                }
+                continue;
+            }
+            if (parameter == Parameter.SOURCE) {
+                reader = spool(createRawReader(multipart, getCharset(multipart, charset)), contentLength);
+            } else if (parameter != null) {
+                if (value == null) {
+                    value = new char[HttpParametersReader.MAX_VALUE_LENGTH];
+                }
+                int length = readValue(createRawReader(multipart, getCharset(multipart, charset)), value);
+                if (length >= 0) {
+                    settings.setSetting(parameter.settingsKey, value, 0, length);
+                }
+            }
+        }
+        if (reader == null) {
+            reader = source.getReader();
+        }
+        activeData.buffer.limit(0);
+    }
+
+    /**
+     * @param in        raw source bytes
+     * @param charset   name of the source charset (if defined; <code>null</code> means <code>UTF-8</code>)
+     * @return          symbol stream that decodes the given bytes
+     * @throws IOException      if given charset is not supported
+     */
+    static Reader createRawReader(InputStream in, String charset) throws IOException {
+        if (charset == null || UTF_8.equalsIgnoreCase(charset) || US_ASCII.equalsIgnoreCase(charset)) {
+            return new UrlDecodingInputStreamReader(
+                in, UrlDecodingInputStreamReader.DEFAULT_BUFFER_SIZE, false, false, false
+            );
+        } else {
+            return new InputStreamReader(in, charset);
+        }
+    }
+
+    /**
+     * Stores the given source in memory if it's going to be lexed by chunks concurrently, i.e. if chunk-parallel
+     * lexing is on and the request body is not shorter than {@link HighlighterProvider#PARALLEL_THRESHOLD} and not
+     * longer than {@link #MAX_SPOOLED_SOURCE_LENGTH}. Only that number of symbols is stored if the source turns
+     * out to be longer (e.g. the body is compressed), the rest of it is streamed after them then.
+     *
+     * @param value             source stream
+     * @param contentLength     request body length in bytes if known; negative value otherwise
+     * @return                  symbol stream to highlight
+     * @throws IOException      in case of unexpected I/O problem during reading the given stream
+     */
+    private Reader spool(Reader value, int contentLength) throws IOException {
+        if (!highlighterProvider.isParallelLexingOn() || contentLength < HighlighterProvider.PARALLEL_THRESHOLD
+            || contentLength > MAX_SPOOLED_SOURCE_LENGTH)
+        {
+            return value;
+        }
+        if (source.append(value, MAX_SPOOLED_SOURCE_LENGTH)) {
+            sourceBuffered = true;
+            return source.getReader();
+        }
+        return source.getReader(value);
+    }
+
+    private static String getCharset(MultipartInputStream multipart, String defaultCharset) {
+        String result = MultipartInputStream.getHeaderParameter(multipart.getContentType(), CHARSET_PARAMETER);
+        return result == null ? defaultCharset : result;
+    }
+
+    /**
+     * Reads the whole given stream to the given buffer.
+     *
+     * @param reader    target stream
+     * @param buffer    target buffer
+     * @return          number of read symbols if the whole stream fits the buffer; negative value otherwise
+     * @throws IOException      in case of unexpected I/O problem during reading the given stream
+     */
+    private static int readValue(Reader reader, char[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = reader.read(buffer, length, buffer.length - length)) >= 0) {
+            length += read;
+        }
+        if (length >= buffer.length && reader.read() >= 0) {
+            return -1;
+        }
+        return length;
+    }
+
     @Autowired
     public void setMarkupSchemeProvider(MarkupSchemeProvider markupSchemeProvider) {
         this.markupSchemeProvider = markupSchemeProvider;
@@ -102,51 +317,36 @@ public class SyntaxHighlightRenderable implements Renderable {
         this.settings = settings;
     }
 
-    private enum Target { KEY, VALUE }
-    @SuppressWarnings({"unchecked", "EqualsBetweenInconvertibleTypes"})
-    private void parseParams() throws IOException, IllegalArgumentException {
-        CharBuffer readerBuffer = activeData.buffer;
-        readerBuffer.clear();
-        paramsBuffer.clear();
-        Target target = Target.KEY;
-        String key = null;
-        while (reader.read(readerBuffer) >= 0) {
-            readerBuffer.flip();
-            while (readerBuffer.hasRemaining()) {
-                char c = readerBuffer.get();
-                switch (target) {
-                    case KEY:
-                        if (c == '=') {
-                            key = new String(paramsBuffer.array(), 0, paramsBuffer.position());
-                            if (SOURCE_PARAMETER_NAME.equals(key)) {
-                                activeData.bufferStart = readerBuffer.position();
-                                activeData.bufferEnd = readerBuffer.limit();
-                                activeData.bufferShift = activeData.bufferStart;
-                                activeData.clientShift = 0;
-                                activeData.readSymbols = readerBuffer.remaining();
-                                return;
-                            }
-                            target = Target.VALUE;
-                            paramsBuffer.clear();
-                        } else {
-                            paramsBuffer.put(c);
-                        }
-                        break;
-                    case VALUE:
-                        if (c != '&') {
-                            paramsBuffer.put(c);
-                            break;
-                        }
-                        if (key != null) {
-                            String value = new String(paramsBuffer.array(), 0, paramsBuffer.position());
-                            settings.setSetting(key, value);
-                        }
-                        paramsBuffer.clear();
-                        target = Target.KEY;
-                        
+    /**
+     * Enumerates request parameters processed by the current renderable.
+     */
+    private enum Parameter {
+
+        PROFILE(Settings.Key.PROFILE), LANGUAGE(Settings.Key.LANGUAGE), MARKUP(Settings.Key.MARKUP), SOURCE(null);
+
+        /** Parameters that define settings. */
+        public static final Set<Parameter> SETTINGS = EnumSet.of(PROFILE, LANGUAGE, MARKUP);
+
+        public final Settings.Key settingsKey;
+
+        Parameter(Settings.Key settingsKey) {
+            this.settingsKey = settingsKey;
+        }
+
+        /**
+         * @param name  parameter name (if any)
+         * @return      parameter with the given name if any; <code>null</code> otherwise
+         */
+        public static Parameter byName(String name) {
+            if (name == null) {
+                return null;
+            }
+            for (Parameter parameter : values()) {
+                if (parameter.name().equalsIgnoreCase(name)) {
+                    return parameter;
                 }
             }
-            readerBuffer.clear();
+            return null;
         }
     }
 
@@ -188,6 +388,7 @@ public class SyntaxHighlightRenderable implements Renderable {
             // Flush all data from the buffer if it has the one.
             if (!newData.isEmpty()) {
                 outputProcessor.write(newData.buffer.array(), newData.bufferStart, newData.bufferEnd, null);
+                newData.bufferStart = newData.bufferEnd;
             }
 
             newData.buffer.clear();
@@ -207,36 +408,48 @@ public class SyntaxHighlightRenderable implements Renderable {
         }
     }
 
-    private class HighlighterListener implements Highlighter.Listener {
+    private class HighlighterSink implements TokenBatchSink {
 
         private final OutputProcessor outputProcessor;
 
-        public HighlighterListener(OutputProcessor outputProcessor) {
+        public HighlighterSink(OutputProcessor outputProcessor) {
             this.outputProcessor = outputProcessor;
         }
 
         @Override
-        public void onToken(TokenInfo info) {
+        public void onTokens(int[] packed, int count) {
+            for (int i = 0, end = count * TOKEN_SIZE; i < end; i += TOKEN_SIZE) {
+                onToken(packed[i], packed[i + 1], packed[i + 2]);
+            }
+        }
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            TokenType info = TokenTypeRegistry.get(typeId);
             ReadData prevData = activeData == readerData1 ? readerData2 : readerData1;
-            flushBufferIfNecessary(info, prevData, activeData);
-            flushBufferIfNecessary(info, activeData, null);
+            flushBufferIfNecessary(info, start, end, prevData, activeData);
+            flushBufferIfNecessary(info, start, end, activeData, null);
         }
 
-        private void flushBufferIfNecessary(TokenInfo info, ReadData data, ReadData next) {
+        private void flushBufferIfNecessary(TokenType info, int tokenStart, int tokenEnd, ReadData data, ReadData next) {
             if (data.isEmpty()) {
                 return;
             }
 
-            int tokenStartOffsetWithinBuffer = info.getStartOffset() - data.clientShift + data.bufferShift;
-            int tokenEndOffsetWithinBuffer = info.getEndOffset() - data.clientShift + data.bufferShift;
+            int tokenStartOffsetWithinBuffer = tokenStart - data.clientShift + data.bufferShift;
+            int tokenEndOffsetWithinBuffer = tokenEnd - data.clientShift + data.bufferShift;
 
             // Discovered token is located before the data from the given buffer.
             if (tokenEndOffsetWithinBuffer < 0) {
                 return;
             }
             
-            // Discovered token starts before or at the start of the given buffer.
-            if (tokenStartOffsetWithinBuffer <= data.bufferStart) {
+            // Discovered token starts before the start of the given buffer.
+            if (tokenStartOffsetWithinBuffer < data.bufferStart) {
+                // The whole token is written already, e.g. together with the end of the previous buffer.
+                if (tokenEndOffsetWithinBuffer <= data.bufferStart) {
+                    return;
+                }
                 int end = Math.min(data.bufferEnd, tokenEndOffsetWithinBuffer);
                 outputProcessor.write(data.buffer.array(), data.bufferStart, end, info);
                 data.bufferStart = end;
@@ -0,0 +1,330 @@
+package org.denis.webview.syntax.web;
+
+import org.apache.log4j.Logger;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.denis.webview.config.MarkupType;
+import org.denis.webview.config.Profile;
+import org.denis.webview.config.SourceType;
+import org.denis.webview.settings.Settings;
+import org.denis.webview.view.CommonViewHelper;
+import org.denis.webview.view.ViewType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.AbstractRequestAttributes;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.view.velocity.VelocityConfig;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warms the application up, i.e. runs built-in sources through the whole highlighting pipeline (request parsing,
+ * lexing, markup, velocity templates) for every {@link SourceType}, {@link Profile} and {@link MarkupType}
+ * combination. All settings are given before the source, i.e. the source is streamed to the highlighter the same way
+ * as for the requests from the UI. That moves lexer tables unpacking, templates parsing, request-scoped beans
+ * instantiation and hot loops compilation from the first client requests to the instance startup.
+ * <p/>
+ * The hosting platform doesn't allow background threads, so, the warm-up is performed at the request thread by
+ * the following endpoints:
+ * <ul>
+ *     <li>
+ *          <code>'/_ah/warmup'</code> - performs the warm-up if it's not started yet or waits for its end
+ *          otherwise and answers by <code>'200 OK'</code> with the timings report; it's called by the hosting
+ *          platform before the instance receives the traffic;
+ *     </li>
+ *     <li>
+ *          <code>'/content/ready'</code> - <code>'200 OK'</code> with the timings report if warm-up is done;
+ *          <code>'503 Service Unavailable'</code> otherwise;
+ *     </li>
+ * </ul>
+ * The report contains in-process time of the first and the fastest of the subsequent warm-up passes per
+ * combination. Note that it's not a client-observed latency - it doesn't include network, servlet container and
+ * dispatching overhead, and the first pass of a combination benefits from the passes of the previous combinations.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+@Controller
+public class WarmUpController {
+
+    private static final Logger LOG = Logger.getLogger(WarmUpController.class);
+
+    /** Number of highlighting passes per (source type; profile; markup type) combination. */
+    public static final int PASSES_NUMBER = 30;
+
+    private static final long   WAIT_TIMEOUT_SECONDS = 60;
+    private static final String REPORT_CONTENT_TYPE  = "text/plain;charset=UTF-8";
+    private static final String TEMPLATE_SUFFIX      = ".vm";
+    private static final String UTF_8                = "UTF-8";
+
+    private static final String JAVA_SOURCE
+        = "/*\n * Licensed under the Apache License, Version 2.0.\n */\npackage org.example;\n\n"
+          + "import java.util.*;\n\n"
+          + "/**\n * Javadoc with {@link List tag} and <code>html</code>.\n *\n * @author someone\n */\n"
+          + "@SuppressWarnings(\"unchecked\")\npublic class Example<T> extends Base implements Runnable {\n\n"
+          + "    private static final String TEXT = \"a \\\"quoted\\\" <text> & more\";\n"
+          + "    private final char c = '\\'';\n\n"
+          + "    @Override\n    public synchronized void run() {\n"
+          + "        // TODO remove the loop\n"
+          + "        for (int i = 0; i < 10; i++) {\n"
+          + "            if (i % 2 == 0 && TEXT != null) { continue; } else { System.out.println(i); }\n"
+          + "        }\n    }\n}\n";
+
+    private static final String XML_SOURCE
+        = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE beans>\n"
+          + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi='http://www.w3.org/2001/XMLSchema'>\n"
+          + "    <!-- Dependencies &amp; plugins -->\n"
+          + "    <dependency scope=\"test\">\n"
+          + "        <groupId>org.springframework</groupId>\n"
+          + "        <version>${spring.version}</version>\n"
+          + "        <description><![CDATA[Web <b>MVC</b> framework]]></description>\n"
+          + "    </dependency>\n    <empty/>\n</project>\n";
+
+    private final AtomicBoolean  started = new AtomicBoolean();
+    private final CountDownLatch done    = new CountDownLatch(1);
+
+    /** First and best passes durations in nanoseconds by source type, profile and markup type ordinals. */
+    private final long[][][] firstPassNanos
+        = new long[SourceType.values().length][Profile.values().length][MarkupType.values().length];
+    private final long[][][] bestPassNanos
+        = new long[SourceType.values().length][Profile.values().length][MarkupType.values().length];
+
+    private SyntaxHighlightRenderable renderable;
+    private CommonViewHelper viewHelper;
+    private VelocityEngine velocityEngine;
+
+    @RequestMapping("/ready")
+    public ModelAndView handleReady(HttpServletResponse response) throws IOException {
+        writeState(response);
+        return null;
+    }
+
+    @RequestMapping("/_ah/warmup")
+    public ModelAndView handleWarmUp(HttpServletResponse response) throws IOException {
+        if (started.compareAndSet(false, true)) {
+            warmUp();
+        } else {
+            try {
+                done.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeState(response);
+        return null;
+    }
+
+    /**
+     * @return      <code>true</code> if warm-up is done; <code>false</code> otherwise
+     */
+    public boolean isReady() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * @return      first and best highlighting passes durations per (source type; profile; markup type) combination
+     *              if warm-up is done; <code>null</code> otherwise
+     */
+    public String getReport() {
+        if (!isReady()) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder();
+        for (SourceType sourceType : SourceType.values()) {
+            for (Profile profile : Profile.values()) {
+                for (MarkupType markupType : MarkupType.values()) {
+                    result.append(String.format(Locale.US, "%s/%s/%s: first pass %.2f ms, best pass %.2f ms%n",
+                        toParameterValue(sourceType), toParameterValue(profile), toParameterValue(markupType),
+                        firstPassNanos[sourceType.ordinal()][profile.ordinal()][markupType.ordinal()] / 1000000.0,
+                        bestPassNanos[sourceType.ordinal()][profile.ordinal()][markupType.ordinal()] / 1000000.0));
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Performs the warm-up at the calling thread. It's expected to be called only once.
+     */
+    void warmUp() {
+        long start = System.nanoTime();
+        try {
+            for (SourceType sourceType : SourceType.values()) {
+                for (Profile profile : Profile.values()) {
+                    for (MarkupType markupType : MarkupType.values()) {
+                        byte[] body = createRequestBody(sourceType, profile, markupType);
+                        long first = highlight(body);
+                        long best = Long.MAX_VALUE;
+                        for (int i = 1; i < PASSES_NUMBER; i++) {
+                            best = Math.min(best, highlight(body));
+                        }
+                        firstPassNanos[sourceType.ordinal()][profile.ordinal()][markupType.ordinal()] = first;
+                        bestPassNanos[sourceType.ordinal()][profile.ordinal()][markupType.ordinal()] = best;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Unexpected exception during the warm-up", e);
+        } finally {
+            done.countDown();
+        }
+        LOG.info(String.format(Locale.US, "Warm-up is done in %.1f ms:%n%s",
+                               (System.nanoTime() - start) / 1000000.0, getReport()));
+    }
+
+    /**
+     * Processes given request body in the same way as the {@link SyntaxController} does. Request attributes of the
+     * calling thread (if any), i.e. of the warm-up request, are restored after the processing.
+     *
+     * @param body      form-encoded request body
+     * @return          processing time in nanoseconds
+     * @throws Exception    in case of unexpected exception during the processing
+     */
+    private long highlight(byte[] body) throws Exception {
+        long start = System.nanoTime();
+        WarmUpRequestAttributes attributes = new WarmUpRequestAttributes();
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        RequestContextHolder.setRequestAttributes(attributes);
+        try {
+            renderable.prepare(new ByteArrayInputStream(body));
+            ModelAndView modelAndView = viewHelper.map(
+                SyntaxController.HIGHLIGHT_VIEW_NAME, ViewType.SYNTAX,
+                Collections.singletonMap(SyntaxController.HIGHLIGHTED_VAR_NAME, renderable)
+            );
+            Writer writer = new StringWriter();
+            if (velocityEngine == null) {
+                renderable.render(null, writer);
+            } else {
+                Template template = velocityEngine.getTemplate(modelAndView.getViewName() + TEMPLATE_SUFFIX);
+                template.merge(new VelocityContext(new HashMap<String, Object>(modelAndView.getModel())), writer);
+            }
+        } finally {
+            RequestContextHolder.setRequestAttributes(requestAttributes);
+            attributes.requestCompleted();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static byte[] createRequestBody(SourceType sourceType, Profile profile, MarkupType markupType)
+        throws IOException
+    {
+        String source;
+        switch (sourceType) {
+            case JAVA: source = JAVA_SOURCE; break;
+            case XML: source = XML_SOURCE; break;
+            default: source = "";
+        }
+        String body = String.format("%s=%s&%s=%s&%s=%s&source=%s",
+                                    Settings.Key.LANGUAGE.getParameterName(), toParameterValue(sourceType),
+                                    Settings.Key.PROFILE.getParameterName(), toParameterValue(profile),
+                                    Settings.Key.MARKUP.getParameterName(), toParameterValue(markupType),
+                                    URLEncoder.encode(source, UTF_8));
+        return body.getBytes(UTF_8);
+    }
+
+    /**
+     * @param value     setting value
+     * @return          representation of the given value at the request parameters, e.g. <code>'class-based'</code>
+     */
+    private static String toParameterValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.US).replace('_', '-');
+    }
+
+    private void writeState(HttpServletResponse response) throws IOException {
+        String report = getReport();
+        if (report == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Warm-up is in progress");
+            return;
+        }
+        response.setContentType(REPORT_CONTENT_TYPE);
+        Writer writer = response.getWriter();
+        writer.write(report);
+        writer.flush();
+    }
+
+    @Autowired
+    public void setRenderable(SyntaxHighlightRenderable renderable) {
+        this.renderable = renderable;
+    }
+
+    @Autowired
+    public void setViewHelper(CommonViewHelper viewHelper) {
+        this.viewHelper = viewHelper;
+    }
+
+    @Autowired(required = false)
+    public void setVelocityConfig(VelocityConfig velocityConfig) {
+        velocityEngine = velocityConfig == null ? null : velocityConfig.getVelocityEngine();
+    }
+
+    /**
+     * Request attributes that back request-scoped beans during the warm-up as there is no real request then.
+     */
+    private static class WarmUpRequestAttributes extends AbstractRequestAttributes {
+
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        @Override
+        public Object getAttribute(String name, int scope) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value, int scope) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name, int scope) {
+            attributes.remove(name);
+            removeRequestDestructionCallback(name);
+        }
+
+        @Override
+        public String[] getAttributeNames(int scope) {
+            return attributes.keySet().toArray(new String[attributes.size()]);
+        }
+
+        @Override
+        public void registerDestructionCallback(String name, Runnable callback, int scope) {
+            registerRequestDestructionCallback(name, callback);
+        }
+
+        @Override
+        public Object resolveReference(String key) {
+            return null;
+        }
+
+        @Override
+        public String getSessionId() {
+            return "";
+        }
+
+        @Override
+        public Object getSessionMutex() {
+            return this;
+        }
+
+        @Override
+        protected void updateAccessedSessionAttributes() {
+        }
+    }
+}
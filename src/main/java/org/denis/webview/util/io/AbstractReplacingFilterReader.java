@@ -3,6 +3,7 @@ package org.denis.webview.util.io;
 import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
 
 /**
  * Provides basic infrastructure for {@link Reader input symbol stream} decorators.
@@ -10,6 +11,10 @@ import java.io.Reader;
  * Stream data reading methods are designed as <code>GoF Template Methods</code>, consult method-level
  * documentation for more information about that.
  * <p/>
+ * Implementations that define the symbols that may start replacement (e.g. <code>'%'</code> for url encoding) are
+ * encouraged to use {@link #copyPlainSymbols(DataContext, int)} in order to copy the data between such symbols
+ * in bulk.
+ * <p/>
  * Not thread-safe.
  * <p/>
  * <b>Memory overhead</b>
@@ -25,6 +30,9 @@ public abstract class AbstractReplacingFilterReader extends FilterReader {
     /** Default internal buffer size. */
     public static final int DEFAULT_INTERNAL_BUFFER_SIZE = 1024;
 
+    /** Minimal length of plain symbols run that is copied via {@link System#arraycopy(Object, int, Object, int, int)}. */
+    private static final int BULK_COPY_THRESHOLD = 16;
+
     private final DataContext dataContext = new DataContext();
 
     /** Char array used during {@link #read() single char reading}. */
@@ -32,6 +40,12 @@ public abstract class AbstractReplacingFilterReader extends FilterReader {
 
     private final int maxReplacementSize;
 
+    /**
+     * Holds <code>true</code> for the ascii symbols that may start replacement. Non-ascii symbols are considered
+     * to be never replaced.
+     */
+    private final boolean[] replacementStartSymbols = new boolean[128];
+
     /**
      * Internal buffer large enough to perform single symbol decoding if necessary.
      * <p/>
@@ -62,7 +76,33 @@ public abstract class AbstractReplacingFilterReader extends FilterReader {
      *                                          buffer size is not positive
      */
     public AbstractReplacingFilterReader(Reader in, int maxReplacementSize) throws IllegalArgumentException {
+        this(in, maxReplacementSize, new char[0]);
+    }
+
+    /**
+     * Constructs new <code>AbstractReplacingFilterReader</code> object that decorates given symbol input stream
+     * and knows what symbols may start replacement.
+     *
+     * @param in                                input stream to decorate
+     * @param maxReplacementSize                maximum number of symbols that may be replaced by the actual
+     *                                          implementation class
+     * @param replacementStartSymbols           ascii symbols that may start replacement, all other symbols are
+     *                                          copied as-is by {@link #copyPlainSymbols(DataContext, int)}
+     * @throws IllegalArgumentException         if given symbol stream argument is <code>null</code>, initial
+     *                                          buffer size is not positive or any of the given replacement start
+     *                                          symbols is not ascii
+     */
+    public AbstractReplacingFilterReader(Reader in, int maxReplacementSize, char ... replacementStartSymbols)
+        throws IllegalArgumentException
+    {
         super(checkReaderOnConstruction(in));
+        for (char c : replacementStartSymbols) {
+            if (c >= this.replacementStartSymbols.length) {
+                throw new IllegalArgumentException(String.format("Can't create decorator for symbol stream '%s'. "
+                    + "Reason: given replacement start symbol is not ascii (%c)", in, c));
+            }
+            this.replacementStartSymbols[c] = true;
+        }
         if (maxReplacementSize <= 0) {
             throw new IllegalArgumentException(String.format("Can't create decorator for symbol stream '%s'. Reason: "
                 + "given max replacement size is not positive (%d)", in, maxReplacementSize));
@@ -93,6 +133,14 @@ public abstract class AbstractReplacingFilterReader extends FilterReader {
         return singleCharReadBuffer[0];
     }
 
+    @Override
+    public int read(CharBuffer target) throws IOException {
+        if (!target.hasArray()) {
+            return super.read(target);
+        }
+        return ReaderUtil.readToArray(this, target);
+    }
+
     /**
      * Reads characters from the wrapped stream into a portion of a given array performing
      * <a href="http://www.w3schools.com/TAGS/ref_urlencode.asp">url decoding</a> if necessary.
@@ -114,25 +162,26 @@ public abstract class AbstractReplacingFilterReader extends FilterReader {
             return len;
         }
 
-        int lengthToUse = len - copiedCharactersNumber;
-        initInternalBuffer(Math.max(len, maxReplacementSize));
-        int read = super.read(
-            internalBuffer, internalBufferEndOffset, internalBuffer.length - internalBufferEndOffset
-        );
-        if (read < 0) {
-            if (copiedCharactersNumber > 0) {
-                return copiedCharactersNumber;
-            }
-            if (getCachedSymbolsNumber() > 0) {
-                throw new IllegalStateException(String.format("Detected situation that target symbol stream ends "
-                        + "with the data that is inconsistent with url encoding rules - '%s'",
-                        new String(internalBuffer, internalBufferStartOffset, getCachedSymbolsNumber())));
+        // Keep reading while cached data contains only a part of the replacement, i.e. nothing can be returned yet.
+        do {
+            initInternalBuffer(Math.max(len, maxReplacementSize));
+            int read = super.read(
+                internalBuffer, internalBufferEndOffset, internalBuffer.length - internalBufferEndOffset
+            );
+            if (read < 0) {
+                if (copiedCharactersNumber > 0) {
+                    return copiedCharactersNumber;
+                }
+                if (getCachedSymbolsNumber() > 0) {
+                    return copyTail(buf, off, len);
+                }
+                return read;
             }
-            return read;
-        }
 
-        internalBufferEndOffset += read;
-        return copiedCharactersNumber + copy(buf, off + copiedCharactersNumber, lengthToUse);
+            internalBufferEndOffset += read;
+            copiedCharactersNumber += copy(buf, off + copiedCharactersNumber, len - copiedCharactersNumber);
+        } while (copiedCharactersNumber <= 0);
+        return copiedCharactersNumber;
     }
 
     /**
@@ -161,26 +210,99 @@ public abstract class AbstractReplacingFilterReader extends FilterReader {
      */
     protected abstract int copy(DataContext dataContext) throws IllegalStateException;
 
+    /**
+     * Asks to copy the data that remains at the given <code>'internal'</code> buffer when the decorated stream
+     * is exhausted, i.e. the data that {@link #copy(DataContext)} considers to be an incomplete replacement.
+     * <p/>
+     * Default implementation considers such data to be invalid. Implementations that pass invalid data as-is are
+     * expected to copy at least one symbol to the external buffer.
+     *
+     * @param dataContext        holds target data to copy
+     * @return                   number of characters actually written to the given external buffer
+     * @throws IllegalStateException    if decorated symbol stream is not allowed to end with the given data
+     */
+    protected int copyTail(DataContext dataContext) throws IllegalStateException {
+        throw new IllegalStateException(String.format("Detected situation that target symbol stream ends with "
+            + "the data that is inconsistent with url encoding rules - '%s'", new String(
+            dataContext.internalBuffer, dataContext.internalStart, dataContext.internalEnd - dataContext.internalStart
+        )));
+    }
+
     private int copy(char[] externalBuffer, int externalOffset, int externalLength) {
-        if (internalBufferEndOffset <= internalBufferStartOffset) {
-            resetInternalBufferIfPossible();
-            // Nothing to copy.
-            return 0;
-        }
+        // Implementations may hold decoded symbols that didn't fit to the client buffer, so, they are asked to copy
+        // the data even if the internal buffer is empty.
+        resetInternalBufferIfPossible();
+        initDataContext(externalBuffer, externalOffset, externalLength);
+        int result = copy(dataContext);
+        applyDataContext();
+        return result;
+    }
+
+    private int copyTail(char[] externalBuffer, int externalOffset, int externalLength) {
+        initDataContext(externalBuffer, externalOffset, externalLength);
+        int result = copyTail(dataContext);
+        applyDataContext();
+        return result;
+    }
+
+    private void initDataContext(char[] externalBuffer, int externalOffset, int externalLength) {
         dataContext.externalBuffer = externalBuffer;
         dataContext.externalOffset = externalOffset;
         dataContext.externalLength = externalLength;
         dataContext.internalBuffer = internalBuffer;
         dataContext.internalStart = internalBufferStartOffset;
         dataContext.internalEnd = internalBufferEndOffset;
+    }
 
-        int result = copy(dataContext);
-
+    private void applyDataContext() {
         internalBufferStartOffset = dataContext.internalStart;
         internalBufferEndOffset = dataContext.internalEnd;
-
         resetInternalBufferIfPossible();
+    }
+
+    /**
+     * Copies symbols from the {@link DataContext#internalBuffer internal buffer} to the
+     * {@link DataContext#externalBuffer external buffer} as-is until the first
+     * {@link #AbstractReplacingFilterReader(Reader, int, char...) replacement start symbol} is found, internal
+     * data is exhausted or external buffer is full. The data is copied in bulk, i.e. implementations are expected
+     * to call this method and process the replacement (if any) after that.
+     * <p/>
+     * Given data context's {@link DataContext#internalStart} and {@link DataContext#externalOffset} are shifted
+     * by the number of copied symbols.
+     *
+     * @param dataContext       holds target data to copy
+     * @param externalEnd       offset within the external buffer that points just after the last symbol that may
+     *                          be written
+     * @return                  number of copied symbols
+     */
+    protected final int copyPlainSymbols(DataContext dataContext, int externalEnd) {
+        char[] data = dataContext.internalBuffer;
+        boolean[] replacementStart = replacementStartSymbols;
+        int start = dataContext.internalStart;
+        int max = Math.min(dataContext.internalEnd, start + externalEnd - dataContext.externalOffset);
+        int i = start;
+        for (; i < max; ++i) {
+            char c = data[i];
+            if (c < replacementStart.length && replacementStart[c]) {
+                break;
+            }
+        }
 
+        int result = i - start;
+        if (result <= 0) {
+            return 0;
+        }
+        if (result < BULK_COPY_THRESHOLD) {
+            // Short runs are copied faster symbol-by-symbol than via System.arraycopy() call.
+            char[] externalBuffer = dataContext.externalBuffer;
+            for (int j = start, k = dataContext.externalOffset; j < i; ++j, ++k) {
+                externalBuffer[k] = data[j];
+            }
+        } else {
+            System.arraycopy(data, start, dataContext.externalBuffer, dataContext.externalOffset, result);
+        }
+        dataContext.internalStart = i;
+        dataContext.externalOffset += result;
         return result;
     }
 
@@ -34,6 +34,14 @@ public class CharBufferReader extends Reader {
         return -1;
     }
 
+    @Override
+    public int read(CharBuffer target) throws IOException {
+        if (!target.hasArray()) {
+            return super.read(target);
+        }
+        return ReaderUtil.readToArray(this, target);
+    }
+
     @Override
     public int read(char[] buf, int off, int len) throws IOException {
         if (!buffer.hasRemaining()) {
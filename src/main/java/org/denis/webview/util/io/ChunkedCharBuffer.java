@@ -0,0 +1,217 @@
+package org.denis.webview.util.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable symbols buffer that stores the data at the fixed-size chunks, i.e. the data is never copied during
+ * the buffer expansion.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ChunkedCharBuffer {
+
+    /** Default chunk size. */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final List<char[]> chunks = new ArrayList<char[]>();
+    private final int chunkSize;
+
+    /** Number of symbols stored at the last chunk. */
+    private int lastChunkLength;
+
+    public ChunkedCharBuffer() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedCharBuffer(int chunkSize) throws IllegalArgumentException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(String.format("Can't create chunked char buffer. Reason: given chunk "
+                + "size is not positive (%d)", chunkSize));
+        }
+        this.chunkSize = chunkSize;
+        lastChunkLength = chunkSize;
+    }
+
+    /**
+     * Reads all data from the given stream to the current buffer.
+     *
+     * @param reader    target symbol stream
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    public void append(Reader reader) throws IOException {
+        append(reader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads all data from the given stream to the current buffer unless the buffer reaches the given limit.
+     * <p/>
+     * Symbols beyond the limit are not consumed, i.e. the rest of the stream may be processed by the caller then.
+     *
+     * @param reader        target symbol stream
+     * @param maxLength     max number of symbols to store at the current buffer
+     * @return              <code>true</code> if the whole stream is read; <code>false</code> if the limit is
+     *                      reached, the buffer holds the first <code>'max length'</code> symbols and the stream
+     *                      may contain more symbols then
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    public boolean append(Reader reader, int maxLength) throws IOException {
+        while (true) {
+            if (length() >= maxLength) {
+                return false;
+            }
+            if (lastChunkLength >= chunkSize) {
+                chunks.add(new char[chunkSize]);
+                lastChunkLength = 0;
+            }
+            int toRead = (int) Math.min(chunkSize - lastChunkLength, (long) maxLength - length());
+            int read = reader.read(chunks.get(chunks.size() - 1), lastChunkLength, toRead);
+            if (read < 0) {
+                return true;
+            }
+            lastChunkLength += read;
+        }
+    }
+
+    /**
+     * @return      number of symbols stored at the current buffer
+     */
+    public int length() {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+        return (chunks.size() - 1) * chunkSize + lastChunkLength;
+    }
+
+    /**
+     * @param index     target symbol index
+     * @return          symbol at the given index
+     * @throws IndexOutOfBoundsException    if given index is out of the current buffer's data bounds
+     */
+    public char charAt(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException(String.format("Can't get symbol at index %d from the chunked char "
+                + "buffer. Reason: the index is out of bounds [0; %d)", index, length()));
+        }
+        return chunks.get(index / chunkSize)[index % chunkSize];
+    }
+
+    /**
+     * Copies symbols of the given region of the current buffer to the given array.
+     *
+     * @param start         region start offset (inclusive)
+     * @param end           region end offset (exclusive)
+     * @param dst           target array
+     * @param dstOffset     offset within the target array to copy the symbols to
+     */
+    public void getChars(int start, int end, char[] dst, int dstOffset) {
+        for (int i = start; i < end;) {
+            int chunk = i / chunkSize;
+            int offset = i % chunkSize;
+            int length = Math.min(end - i, chunkSize - offset);
+            System.arraycopy(chunks.get(chunk), offset, dst, dstOffset + i - start, length);
+            i += length;
+        }
+    }
+
+    /**
+     * @return      size of the chunks that hold the current buffer's data
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Allows to access the data without copying, i.e. symbol with index <code>i</code> is stored at the chunk
+     * <code>i / {@link #getChunkSize() chunk size}</code> at offset <code>i % chunk size</code>.
+     * <p/>
+     * The chunk is not copied, so, it should not be modified.
+     *
+     * @param index     target chunk index
+     * @return          chunk with the given index
+     */
+    public char[] getChunk(int index) {
+        return chunks.get(index);
+    }
+
+    /**
+     * @return      symbol stream over the current buffer's data
+     */
+    public Reader getReader() {
+        return new ChunksReader(0, length(), null);
+    }
+
+    /**
+     * @param tail      symbol stream to read after the current buffer's data
+     * @return          symbol stream over the current buffer's data followed by the given stream's data
+     */
+    public Reader getReader(Reader tail) {
+        return new ChunksReader(0, length(), tail);
+    }
+
+    /**
+     * @param start     region start offset (inclusive)
+     * @param end       region end offset (exclusive)
+     * @return          symbol stream over the given region of the current buffer's data
+     */
+    public Reader getReader(int start, int end) {
+        return new ChunksReader(start, end, null);
+    }
+
+    private class ChunksReader extends Reader {
+
+        private final Reader tail;
+
+        private int chunk;
+        private int offset;
+        private int remaining;
+
+        ChunksReader(int start, int end, Reader tail) {
+            this.tail = tail;
+            chunk = start / chunkSize;
+            offset = start % chunkSize;
+            remaining = end - start;
+        }
+
+        @Override
+        public int read(CharBuffer target) throws IOException {
+            if (!target.hasArray()) {
+                return super.read(target);
+            }
+            return ReaderUtil.readToArray(this, target);
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            if (remaining <= 0 && tail != null) {
+                return tail.read(buf, off, len);
+            }
+            int result = 0;
+            while (result < len && remaining > 0) {
+                if (offset >= chunkSize) {
+                    chunk++;
+                    offset = 0;
+                }
+                int length = Math.min(Math.min(len - result, chunkSize - offset), remaining);
+                System.arraycopy(chunks.get(chunk), offset, buf, off + result, length);
+                offset += length;
+                result += length;
+                remaining -= length;
+            }
+            return result > 0 || len <= 0 ? result : -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (tail != null) {
+                tail.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.denis.webview.util.io;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Enumerates supported values of the <code>'Content-Encoding'</code> http header.
+ * <p/>
+ * Encoded data is decoded incrementally, i.e. only a fixed-size window of the compressed and decompressed data
+ * is kept in memory regardless of the data size.
+ * <p/>
+ * Malformed, truncated or empty compressed data is reported by {@link IllegalArgumentException} (either on
+ * {@link #decode(InputStream) decoding start} or during reading the decoded data) the same way as the other
+ * invalid client data, e.g. invalid url-encoded symbols.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public enum ContentEncoding {
+
+    IDENTITY {
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+    },
+
+    GZIP {
+        @Override
+        public InputStream decode(InputStream in) throws IllegalArgumentException, IOException {
+            try {
+                return new MalformedDataReportingStream(new GZIPInputStream(in, BUFFER_SIZE), this);
+            } catch (ZipException e) {
+                throw malformedData(this, e);
+            } catch (EOFException e) {
+                throw malformedData(this, e);
+            }
+        }
+    },
+
+    /**
+     * <code>'zlib'</code> format as defined by the <code>HTTP</code> specification. Raw <code>'deflate'</code> data
+     * without <code>'zlib'</code> header is accepted as well because a number of clients send it.
+     */
+    DEFLATE {
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            PushbackInputStream stream = new PushbackInputStream(in, 2);
+            int b1 = stream.read();
+            int b2 = b1 < 0 ? -1 : stream.read();
+            if (b2 >= 0) {
+                stream.unread(b2);
+            }
+            if (b1 >= 0) {
+                stream.unread(b1);
+            }
+            boolean zlibHeader = b2 >= 0 && (b1 & 0x0F) == 8 && ((b1 << 8) | b2) % 31 == 0;
+            return new MalformedDataReportingStream(
+                new InflaterInputStream(stream, new Inflater(!zlibHeader), BUFFER_SIZE), this
+            );
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Wraps given stream of the data encoded using the current encoding into the stream of the decoded data.
+     *
+     * @param in    encoded data
+     * @return      decoded data
+     * @throws IllegalArgumentException     if given data is detected to be malformed
+     * @throws IOException                  in case of unexpected exception during I/O processing
+     */
+    public abstract InputStream decode(InputStream in) throws IllegalArgumentException, IOException;
+
+    /**
+     * Parses given <code>'Content-Encoding'</code> header value.
+     *
+     * @param value     header value (if any)
+     * @return          content encoding identified by the given value; {@link #IDENTITY} if the value is
+     *                  <code>null</code> or empty
+     * @throws IllegalArgumentException     if given value denotes unsupported encoding
+     */
+    public static ContentEncoding parse(String value) throws IllegalArgumentException {
+        if (value == null) {
+            return IDENTITY;
+        }
+        String name = value.trim();
+        if (name.length() == 0 || "identity".equalsIgnoreCase(name)) {
+            return IDENTITY;
+        }
+        if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+            return GZIP;
+        }
+        if ("deflate".equalsIgnoreCase(name)) {
+            return DEFLATE;
+        }
+        throw new IllegalArgumentException(String.format("Can't parse content encoding. Reason: encoding '%s' is "
+            + "not supported. Supported encodings: %s", value, Arrays.toString(values())));
+    }
+
+    private static IllegalArgumentException malformedData(ContentEncoding encoding, IOException e) {
+        return new IllegalArgumentException(String.format("Can't decode request data. Reason: the data is not valid "
+            + "'%s' data (%s)", encoding.name().toLowerCase(), e.getMessage()), e);
+    }
+
+    /**
+     * Reports malformed compressed data detected by the wrapped stream by {@link IllegalArgumentException}.
+     */
+    private static class MalformedDataReportingStream extends FilterInputStream {
+
+        private final ContentEncoding encoding;
+
+        MalformedDataReportingStream(InputStream in, ContentEncoding encoding) {
+            super(in);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public int read() throws IllegalArgumentException, IOException {
+            try {
+                return super.read();
+            } catch (ZipException e) {
+                throw malformedData(encoding, e);
+            } catch (EOFException e) {
+                throw malformedData(encoding, e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IllegalArgumentException, IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (ZipException e) {
+                throw malformedData(encoding, e);
+            } catch (EOFException e) {
+                throw malformedData(encoding, e);
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.denis.webview.util.io;
 import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
 
 /**
  * Prints all read content to the stdout.
@@ -25,6 +26,14 @@ public class DebugReader extends FilterReader {
         return result;
     }
 
+    @Override
+    public int read(CharBuffer target) throws IOException {
+        if (!target.hasArray()) {
+            return super.read(target);
+        }
+        return ReaderUtil.readToArray(this, target);
+    }
+
     @Override
     public int read(char[] buf, int off, int len) throws IOException {
         final int result = super.read(buf, off, len);
@@ -0,0 +1,222 @@
+package org.denis.webview.util.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <code>'gzip'</code> output stream that may be flushed in the middle of the data, i.e. all data written before
+ * the {@link #flush() flush} may be decompressed by the client before the rest of the stream is received. That
+ * allows to compress the content that is rendered progressively.
+ * <p/>
+ * Every flush finishes current deflate block, so, too frequent flushes degrade compression. Hence, flush requests
+ * are applied only if at least <code>'min flush bytes'</code> of the uncompressed data are written since the
+ * previous flush. Also the stream flushes itself after every <code>'auto flush bytes'</code> of the uncompressed
+ * data, so, the data is delivered to the client progressively even if it's not flushed explicitly.
+ * <p/>
+ * The data is flushed by switching compression level because the jdk deflater doesn't expose the sync flush
+ * at the java 6 api - deflater finishes current block with byte alignment on compression level change.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class FlushableGzipOutputStream extends FilterOutputStream {
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, // Magic number.
+        Deflater.DEFLATED, // Compression method.
+        0,                 // Flags.
+        0, 0, 0, 0,        // Modification time.
+        0,                 // Extra flags.
+        (byte) 0xff        // Operating system - unknown.
+    };
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[]   buffer     = new byte[BUFFER_SIZE];
+    private final byte[]   singleByte = new byte[1];
+    private final CRC32    crc        = new CRC32();
+    private final Deflater deflater;
+    private final int      level;
+    private final int      minFlushBytes;
+    private final int      autoFlushBytes;
+
+    /** Number of the uncompressed bytes written since the last flush. */
+    private int  pendingBytesNumber;
+    private long inputBytesNumber;
+    private long outputBytesNumber;
+    private boolean headerWritten;
+    private boolean finished;
+
+    /**
+     * Creates new <code>FlushableGzipOutputStream</code> object.
+     *
+     * @param out               target stream for the compressed data
+     * @param level             compression level (<code>0-9</code> or {@link Deflater#DEFAULT_COMPRESSION})
+     * @param minFlushBytes     min number of the uncompressed bytes written since the previous flush that makes
+     *                          {@link #flush()} effective
+     * @param autoFlushBytes    number of the uncompressed bytes written since the previous flush that triggers
+     *                          the flush automatically; non-positive value means that the stream is flushed
+     *                          explicitly only
+     * @throws IllegalArgumentException     if given compression level is invalid or min flush bytes number
+     *                                      is negative
+     */
+    public FlushableGzipOutputStream(OutputStream out, int level, int minFlushBytes, int autoFlushBytes)
+        throws IllegalArgumentException
+    {
+        super(out);
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION
+                                                      || level > Deflater.BEST_COMPRESSION))
+        {
+            throw new IllegalArgumentException(String.format(
+                "Can't create gzip stream. Reason: invalid compression level %d is given", level
+            ));
+        }
+        if (minFlushBytes < 0) {
+            throw new IllegalArgumentException(String.format(
+                "Can't create gzip stream. Reason: negative min flush bytes number (%d) is given", minFlushBytes
+            ));
+        }
+        this.level = level;
+        this.minFlushBytes = minFlushBytes;
+        this.autoFlushBytes = autoFlushBytes;
+        deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Can't write to the gzip stream. Reason: it's already finished");
+        }
+        if (len <= 0) {
+            return;
+        }
+        writeHeader();
+        crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+        inputBytesNumber += len;
+        pendingBytesNumber += len;
+        if (autoFlushBytes > 0 && pendingBytesNumber >= autoFlushBytes) {
+            syncFlush();
+            out.flush();
+        }
+    }
+
+    /**
+     * Makes all data written so far available to the client if at least <code>'min flush bytes'</code> are
+     * written since the previous flush; does nothing otherwise.
+     *
+     * @throws IOException      in case of unexpected I/O problem during writing to the target stream
+     */
+    @Override
+    public void flush() throws IOException {
+        if (finished || pendingBytesNumber <= 0 || pendingBytesNumber < minFlushBytes) {
+            return;
+        }
+        syncFlush();
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining compressed data and the <code>'gzip'</code> trailer to the target stream without
+     * closing it. The compressor is {@link #end() released} even if writing fails.
+     *
+     * @throws IOException      in case of unexpected I/O problem during writing to the target stream
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            writeHeader();
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            long crcValue = crc.getValue();
+            long size = inputBytesNumber;
+            byte[] trailer = {
+                (byte) crcValue, (byte) (crcValue >> 8), (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+                (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+            };
+            out.write(trailer);
+            outputBytesNumber += trailer.length;
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Releases the native compressor resources without writing the remaining data, i.e. the stream can't be
+     * written after that. It's expected to be called when the stream is abandoned without being
+     * {@link #finish() finished}, e.g. on failure; does nothing if the stream is already finished.
+     */
+    public void end() {
+        finished = true;
+        deflater.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return      number of the uncompressed bytes written to the current stream
+     */
+    public long getInputBytesNumber() {
+        return inputBytesNumber;
+    }
+
+    /**
+     * @return      number of the compressed bytes written to the target stream (including <code>'gzip'</code>
+     *              header and trailer)
+     */
+    public long getOutputBytesNumber() {
+        return outputBytesNumber;
+    }
+
+    private void writeHeader() throws IOException {
+        if (!headerWritten) {
+            headerWritten = true;
+            out.write(HEADER);
+            outputBytesNumber += HEADER.length;
+        }
+    }
+
+    private void syncFlush() throws IOException {
+        deflater.setInput(EMPTY);
+        deflater.setLevel(level == Deflater.NO_COMPRESSION ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION);
+        while (deflate() > 0) ;
+        deflater.setLevel(level);
+        while (deflate() > 0) ;
+        pendingBytesNumber = 0;
+    }
+
+    private int deflate() throws IOException {
+        int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            outputBytesNumber += length;
+        }
+        return length;
+    }
+}
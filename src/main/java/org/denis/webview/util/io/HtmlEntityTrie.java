@@ -0,0 +1,203 @@
+package org.denis.webview.util.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Trie over the <a href="http://www.w3.org/TR/html5/syntax.html#named-character-references">HTML5 named character
+ * references</a> that allows to match entity name incrementally, i.e. symbol by symbol as they arrive.
+ * <p/>
+ * Trie nodes are identified by non-negative <code>'state'</code> numbers. Matching starts from {@link #ROOT} state
+ * and every name symbol moves it via {@link #next(int, char)}. Entity is matched if the state reached after
+ * the last name symbol {@link #isTerminal(int) is terminal}.
+ * <p/>
+ * The data is loaded from the <code>'html-entities.txt'</code> resource during class initialization and is stored
+ * at primitive arrays, i.e. matching doesn't allocate.
+ * <p/>
+ * Thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+class HtmlEntityTrie {
+
+    /** Initial matching state. */
+    public static final int ROOT = 0;
+
+    /** Max length of the entity name (excluding <code>'&amp;'</code> and <code>';'</code> signs). */
+    public static final int MAX_NAME_LENGTH;
+
+    /** Max number of symbols produced by the single entity. */
+    public static final int MAX_SYMBOLS_NUMBER = 2;
+
+    private static final String RESOURCE_NAME = "html-entities.txt";
+
+    /** Number of bits used for the transition symbol within the transition key. */
+    private static final int SYMBOL_BITS = 7;
+
+    /**
+     * Transitions open-addressing hash table, keys are <code>'(state &lt;&lt; SYMBOL_BITS) | symbol'</code>.
+     * Zero is used as an empty slot marker (there are no transitions from {@link #ROOT} by <code>'\0'</code>).
+     */
+    private static int[] transitionKeys;
+
+    /** Target states of the transitions stored at the {@link #transitionKeys}. */
+    private static int[] transitionTargets;
+
+    /** Symbols produced by the entity which name ends at the state with particular index. */
+    private static char[][] symbols;
+
+    private static int statesNumber;
+
+    static {
+        int maxNameLength = 0;
+        transitionKeys = new int[1 << 14];
+        transitionTargets = new int[transitionKeys.length];
+        symbols = new char[1 << 12][];
+        statesNumber = 1;
+        InputStream in = HtmlEntityTrie.class.getResourceAsStream(RESOURCE_NAME);
+        if (in == null) {
+            throw new IllegalStateException(String.format("Can't initialize HTML entities table. Reason: resource "
+                + "'%s' is not found", RESOURCE_NAME));
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "ASCII"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0 || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    String[] parts = line.split(" ");
+                    char[] value = new char[MAX_SYMBOLS_NUMBER * 2];
+                    int length = 0;
+                    for (int i = 1; i < parts.length; i++) {
+                        length += Character.toChars(Integer.parseInt(parts[i], 16), value, length);
+                    }
+                    if (length > MAX_SYMBOLS_NUMBER) {
+                        throw new IllegalStateException(String.format("Can't register HTML entity '%s'. Reason: it "
+                            + "produces %d symbols but max allowed number is %d", parts[0], length,
+                            MAX_SYMBOLS_NUMBER));
+                    }
+                    char[] valueToUse = new char[length];
+                    System.arraycopy(value, 0, valueToUse, 0, length);
+                    register(parts[0], valueToUse);
+                    maxNameLength = Math.max(maxNameLength, parts[0].length());
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Can't initialize HTML entities table. Reason: unexpected "
+                + "I/O exception occurred during reading resource '%s'", RESOURCE_NAME), e);
+        }
+        MAX_NAME_LENGTH = maxNameLength;
+    }
+
+    private HtmlEntityTrie() {
+    }
+
+    /**
+     * Allows to get state reached from the given state by the given entity name symbol.
+     *
+     * @param state     current matching state
+     * @param c         next entity name symbol
+     * @return          next matching state if any; negative value if there is no entity which name continues
+     *                  by the given symbol at the given state
+     */
+    public static int next(int state, char c) {
+        if (c == 0 || c >= 1 << SYMBOL_BITS) {
+            return -1;
+        }
+        int key = (state << SYMBOL_BITS) | c;
+        int mask = transitionKeys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int storedKey = transitionKeys[i];
+            if (storedKey == key) {
+                return transitionTargets[i];
+            }
+            if (storedKey == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @param state     target matching state
+     * @return          <code>true</code> if there is an entity which name ends at the given state;
+     *                  <code>false</code> otherwise
+     */
+    public static boolean isTerminal(int state) {
+        return state >= 0 && state < statesNumber && symbols[state] != null;
+    }
+
+    /**
+     * Writes symbols of the entity which name ends at the given {@link #isTerminal(int) terminal} state
+     * to the given buffer.
+     *
+     * @param state     target terminal state
+     * @param buffer    target buffer that has at least {@link #MAX_SYMBOLS_NUMBER} free symbols starting from
+     *                  the given offset
+     * @param offset    offset to use within the given buffer
+     * @return          number of written symbols
+     */
+    public static int write(int state, char[] buffer, int offset) {
+        char[] value = symbols[state];
+        for (int i = 0; i < value.length; i++) {
+            buffer[offset + i] = value[i];
+        }
+        return value.length;
+    }
+
+    private static void register(String name, char[] value) {
+        int state = ROOT;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            int nextState = next(state, c);
+            if (nextState < 0) {
+                nextState = statesNumber++;
+                if (statesNumber >= symbols.length) {
+                    char[][] newSymbols = new char[symbols.length << 1][];
+                    System.arraycopy(symbols, 0, newSymbols, 0, symbols.length);
+                    symbols = newSymbols;
+                }
+                addTransition(state, c, nextState);
+            }
+            state = nextState;
+        }
+        symbols[state] = value;
+    }
+
+    private static void addTransition(int state, char c, int target) {
+        // Keep load factor not more than 0.5.
+        if (statesNumber * 2 > transitionKeys.length) {
+            int[] oldKeys = transitionKeys;
+            int[] oldTargets = transitionTargets;
+            transitionKeys = new int[oldKeys.length << 1];
+            transitionTargets = new int[transitionKeys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldTargets[i]);
+                }
+            }
+        }
+        put((state << SYMBOL_BITS) | c, target);
+    }
+
+    private static void put(int key, int target) {
+        int mask = transitionKeys.length - 1;
+        int i = hash(key) & mask;
+        while (transitionKeys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        transitionKeys[i] = key;
+        transitionTargets[i] = target;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
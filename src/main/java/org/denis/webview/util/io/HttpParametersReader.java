@@ -1,100 +1,254 @@
 package org.denis.webview.util.io;
 
-import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.nio.CharBuffer;
 
 /**
- * Reader that stops reading iteration every time it detects that underlying symbol stream contains '&' characters
- * and notifies target callback about that.
+ * Streaming tokenizer of the <code>'application/x-www-form-urlencoded'</code> data.
+ * <p/>
+ * Parameters are identified by the constants of the given enum, parameter name is a constant name in lower case
+ * where <code>'_'</code> is replaced by <code>'-'</code>, e.g. <code>'LINE_NUMBERS'</code> corresponds to
+ * the <code>'line-numbers'</code> parameter. Parameters which names don't correspond to any constant are skipped.
+ * <p/>
+ * Values of the parameters are delivered to the {@link Listener} in one of the following ways:
+ * <ul>
+ *     <li>
+ *          <b>small parameters</b> - whole value is decoded to the internal buffer that is given to the
+ *          listener, no objects are allocated during that;
+ *     </li>
+ *     <li>
+ *          <b>streaming parameter</b> - symbol stream that is positioned to the value start is given to the listener,
+ *          i.e. the value of any size is processed in a streaming fashion wherever it appears at the data;
+ *     </li>
+ * </ul>
+ * The data is decoded in a single pass via {@link UrlDecodingInputStreamReader}. HTML entities are not decoded
+ * by default, i.e. source code like <code>'s.replace("&amp;amp;", "&amp;")'</code> is delivered as-is.
  * <p/>
  * Not thread-safe.
  *
+ * @param <K>   parameter keys type
  * @author Denis Zhdanov
  * @since 6/2/11
  */
-public class HttpParametersReader extends FilterReader {
+public class HttpParametersReader<K extends Enum<K>> {
+
+    /** Max length of the small parameter value. Values of greater length are skipped. */
+    public static final int MAX_VALUE_LENGTH = 64;
+
+    private static final char KEY_VALUE_SEPARATOR = '=';
 
-    private static final char SEPARATOR = '&';
+    private final UrlDecodingInputStreamReader reader;
+    private final K[]                          keys;
+    private final char[][]                     keyNames;
+    private final K                            streamingKey;
+    private final char[]                       keyBuffer;
+    private final char[]                       valueBuffer = new char[MAX_VALUE_LENGTH];
 
-    private final Runnable listener;
-    private CharBuffer buffer = CharBuffer.allocate(16);
+    /** Flag that indicates if the processing is stopped at the streaming parameter value. */
+    private boolean streamingValueStarted;
 
-    public HttpParametersReader(Reader in, Runnable listener) {
-        super(in);
-        this.listener = listener;
-        buffer.limit(0);
+    /**
+     * Creates new <code>HttpParametersReader</code> object.
+     *
+     * @param in                target url-encoded form data
+     * @param keyType           type of the parameter keys
+     * @param streamingKey      key of the parameter which value should be delivered as a
+     *                          {@link Listener#onStreamingParameter(Enum, Reader) stream} (if any)
+     * @throws IllegalArgumentException     if given stream or keys type is <code>null</code>
+     */
+    public HttpParametersReader(InputStream in, Class<K> keyType, K streamingKey) throws IllegalArgumentException {
+        this(in, keyType, streamingKey, false);
     }
 
-    @Override
-    public int read() throws IOException {
-        while (buffer.hasRemaining()) {
-            char c = buffer.get();
-            if (c != SEPARATOR) {
-                if (!buffer.hasRemaining()) {
-                    buffer.clear();
-                }
-                return c;
-            }
+    /**
+     * Creates new <code>HttpParametersReader</code> object.
+     *
+     * @param in                target url-encoded form data
+     * @param keyType           type of the parameter keys
+     * @param streamingKey      key of the parameter which value should be delivered as a
+     *                          {@link Listener#onStreamingParameter(Enum, Reader) stream} (if any)
+     * @param decodeEntities    flag that indicates if HTML entities should be decoded from all parameter values
+     * @throws IllegalArgumentException     if given stream or keys type is <code>null</code>
+     */
+    public HttpParametersReader(InputStream in, Class<K> keyType, K streamingKey, boolean decodeEntities)
+        throws IllegalArgumentException
+    {
+        if (keyType == null) {
+            throw new IllegalArgumentException("Can't create http parameters reader. Reason: given keys type is null");
         }
-        int result = super.read();
-        while (result == SEPARATOR) {
-            listener.run();
-            result = super.read();
+        reader = new UrlDecodingInputStreamReader(in, true, decodeEntities);
+        this.streamingKey = streamingKey;
+        keys = keyType.getEnumConstants();
+        keyNames = new char[keys.length][];
+        int maxKeyLength = 0;
+        for (int i = 0; i < keys.length; i++) {
+            keyNames[i] = keys[i].name().toLowerCase().replace('_', '-').toCharArray();
+            maxKeyLength = Math.max(maxKeyLength, keyNames[i].length);
         }
-        return result;
+        keyBuffer = new char[maxKeyLength + 1 /* for detecting longer keys */];
     }
 
-    @Override
-    public int read(char[] buf, int off, int len) throws IOException {
-        // Read from buffer.
-        if (buffer.hasRemaining()) {
-            char[] data = buffer.array();
-            for (int i = buffer.position(), max = buffer.limit(); i < max; ++i) {
-                if (data[i] == SEPARATOR) {
-                    listener.run();
-                    int read = i - buffer.position();
-                    copyFromBuffer(buf, off, Math.min(len, read));
-                    return read;
-                }
+    /**
+     * Tokenizes the whole data (or the rest of it if {@link #parseToStreamingParameter(Listener)} is called before)
+     * and notifies given listener about all known parameters.
+     *
+     * @param listener      callback to notify
+     * @throws IllegalArgumentException     if target data contains invalid hex symbol after <code>'%'</code>
+     * @throws IllegalStateException        if target data ends in the middle of <code>'%XX'</code> sequence
+     * @throws IOException                  in case of unexpected exception during I/O processing
+     */
+    public void parse(Listener<K> listener) throws IllegalArgumentException, IllegalStateException, IOException {
+        parse(listener, false);
+    }
+
+    /**
+     * Tokenizes the data up to the value of the streaming parameter and notifies given listener about all known
+     * parameters before it.
+     * <p/>
+     * That allows to process the value in a streaming fashion after the method returns, e.g. when it's known
+     * that no parameters of interest follow it. The rest of the data may be processed by {@link #parse(Listener)}
+     * then (the rest of the value is skipped by it).
+     *
+     * @param listener      callback to notify
+     * @return              symbol stream that is positioned to the value start and ends at the value end if
+     *                      the streaming parameter is found; <code>null</code> if the whole data is processed
+     * @throws IllegalArgumentException     if target data contains invalid hex symbol after <code>'%'</code>
+     * @throws IllegalStateException        if target data ends in the middle of <code>'%XX'</code> sequence
+     * @throws IOException                  in case of unexpected exception during I/O processing
+     */
+    public Reader parseToStreamingParameter(Listener<K> listener)
+        throws IllegalArgumentException, IllegalStateException, IOException
+    {
+        return parse(listener, true) ? reader : null;
+    }
+
+    /**
+     * Tokenizes the data starting from the current parameter.
+     *
+     * @param listener          callback to notify
+     * @param stopAtStreaming   flag that indicates if the processing should stop at the streaming parameter value
+     * @return                  <code>true</code> if the processing is stopped at the streaming parameter value;
+     *                          <code>false</code> if the whole data is processed
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private boolean parse(Listener<K> listener, boolean stopAtStreaming) throws IOException {
+        if (streamingValueStarted) {
+            streamingValueStarted = false;
+            if (!reader.nextParameter()) {
+                return false;
             }
-            int read = Math.min(len, buffer.remaining());
-            copyFromBuffer(buf, off, read);
-            return read;
         }
-
-        // Read from underlying stream.
-        int read = super.read(buf, off, len);
-        for (int i = 0; i < read; ++i) {
-            if (buf[off + i] != SEPARATOR) {
+        do {
+            K key = readKey();
+            if (key == null) {
+                continue;
+            }
+            if (key == streamingKey) {
+                if (stopAtStreaming) {
+                    streamingValueStarted = true;
+                    return true;
+                }
+                listener.onStreamingParameter(key, reader);
                 continue;
             }
+            int length = readValue();
+            if (length >= 0) {
+                listener.onParameter(key, valueBuffer, 0, length);
+            }
+        } while (reader.nextParameter());
+        return false;
+    }
 
-            listener.run();
-            int symbolsToStore = read - i - 1;
-            if (symbolsToStore <= 0) {
-                return i;
+    /**
+     * Reads name of the current parameter up to the {@link #KEY_VALUE_SEPARATOR}.
+     *
+     * @return      key of the current parameter if it's known; <code>null</code> otherwise
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private K readKey() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = reader.read()) >= 0 && c != KEY_VALUE_SEPARATOR) {
+            if (length >= keyBuffer.length) {
+                // Unknown key, no need to process it further.
+                return null;
             }
+            keyBuffer[length++] = (char) c;
+        }
+        if (length <= 0) {
+            return null;
+        }
 
-            if (symbolsToStore > buffer.capacity()) {
-                buffer = CharBuffer.allocate(symbolsToStore);
+        for (int i = 0; i < keys.length; i++) {
+            if (equals(keyNames[i], keyBuffer, length)) {
+                return keys[i];
             }
-            buffer.clear();
-            buffer.put(buf, off + i + 1, symbolsToStore);
-            buffer.flip();
-            return i;
         }
-        return read;
+        return null;
+    }
+
+    /**
+     * Reads value of the current parameter to the {@link #valueBuffer}.
+     *
+     * @return      value length if it's not greater than {@link #MAX_VALUE_LENGTH}; negative value otherwise
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private int readValue() throws IOException {
+        int length = 0;
+        int read;
+        while (length < valueBuffer.length
+               && (read = reader.read(valueBuffer, length, valueBuffer.length - length)) >= 0)
+        {
+            length += read;
+        }
+        if (length >= valueBuffer.length && reader.read() >= 0) {
+            return -1;
+        }
+        return length;
     }
 
-    private void copyFromBuffer(char[] buf, int off, int len) {
-        System.arraycopy(buffer.array(), buffer.position(), buf, off, len);
-        if (buffer.position() + len < buffer.limit() - 1) {
-            buffer.position(buffer.position() + len + 1);
-        } else {
-            buffer.clear();
-            buffer.limit(0);
+    private static boolean equals(char[] name, char[] buffer, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != buffer[i]) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Callback for the parameters tokenized by {@link HttpParametersReader}.
+     *
+     * @param <K>   parameter keys type
+     */
+    public interface Listener<K extends Enum<K>> {
+
+        /**
+         * Notifies about small parameter.
+         * <p/>
+         * Given buffer is reused for all parameters, i.e. its content is valid only during the current method call.
+         *
+         * @param key       parameter key
+         * @param buffer    buffer that holds decoded parameter value
+         * @param start     value start offset within the given buffer (inclusive)
+         * @param end       value end offset within the given buffer (exclusive)
+         */
+        void onParameter(K key, char[] buffer, int start, int end);
+
+        /**
+         * Notifies about streaming parameter.
+         * <p/>
+         * Given stream is positioned to the value start and ends at the value end. It's not necessary to read
+         * the whole value, the rest of it is skipped when the method returns.
+         *
+         * @param key       parameter key
+         * @param value     symbol stream of the decoded parameter value
+         * @throws IOException      in case of unexpected exception during I/O processing
+         */
+        void onStreamingParameter(K key, Reader value) throws IOException;
     }
 }
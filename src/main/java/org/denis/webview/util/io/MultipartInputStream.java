@@ -0,0 +1,403 @@
+package org.denis.webview.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Streaming parser of the <code>'multipart/form-data'</code> data.
+ * <p/>
+ * Parts are iterated via {@link #nextPart()} and the body of the current part is read via the current stream, i.e.
+ * the body of any size is processed in a streaming fashion. Fixed-size buffer is used for looking up the boundary
+ * delimiter, so, the memory consumption doesn't depend on the data size.
+ * <p/>
+ * Only <code>'Content-Disposition'</code> and <code>'Content-Type'</code> part headers are processed.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class MultipartInputStream extends InputStream {
+
+    /** Default size of the internal buffer. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Max length of the part header line. Symbols after it are ignored. */
+    public static final int MAX_HEADER_LENGTH = 1024;
+
+    private static final String CONTENT_DISPOSITION_HEADER = "content-disposition";
+    private static final String CONTENT_TYPE_HEADER        = "content-type";
+    private static final String HEADER_CHARSET             = "UTF-8";
+
+    private enum State { BODY, DELIMITER, END }
+
+    private final InputStream in;
+
+    /** <code>CRLF '--' boundary</code> */
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private final byte[] headerBuffer = new byte[MAX_HEADER_LENGTH];
+
+    private int     position;
+    private int     limit;
+    private boolean eof;
+
+    /** Offset of the delimiter at the buffer if it's found; negative value otherwise. */
+    private int delimiterIndex = -1;
+
+    /** Offset of the buffer before which the delimiter doesn't start. */
+    private int scanned;
+
+    private State  state = State.BODY;
+    private String disposition;
+    private String contentType;
+
+    /**
+     * Creates new <code>MultipartInputStream</code> object.
+     *
+     * @param in        target multipart data
+     * @param boundary  boundary of the parts
+     * @throws IllegalArgumentException     if given stream is <code>null</code> or boundary is <code>null</code>
+     *                                      or empty
+     */
+    public MultipartInputStream(InputStream in, String boundary) throws IllegalArgumentException {
+        this(in, boundary, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates new <code>MultipartInputStream</code> object.
+     *
+     * @param in            target multipart data
+     * @param boundary      boundary of the parts
+     * @param bufferSize    size of the internal buffer to use (it's expanded if it's not enough for delimiter lookup)
+     * @throws IllegalArgumentException     if given stream is <code>null</code> or boundary is <code>null</code>
+     *                                      or empty
+     */
+    public MultipartInputStream(InputStream in, String boundary, int bufferSize) throws IllegalArgumentException {
+        if (in == null) {
+            throw new IllegalArgumentException("Can't create multipart input stream. Reason: given stream is null");
+        }
+        if (boundary == null || boundary.length() == 0) {
+            throw new IllegalArgumentException(String.format("Can't create multipart input stream. Reason: given "
+                + "boundary is undefined ('%s')", boundary));
+        }
+        this.in = in;
+        delimiter = new byte[boundary.length() + 4];
+        delimiter[0] = '\r';
+        delimiter[1] = '\n';
+        delimiter[2] = '-';
+        delimiter[3] = '-';
+        for (int i = 0; i < boundary.length(); i++) {
+            delimiter[i + 4] = (byte) boundary.charAt(i);
+        }
+        buffer = new byte[Math.max(bufferSize, delimiter.length * 2)];
+
+        // The first delimiter is not preceded by CRLF if there is no preamble.
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Skips the rest of the current part and moves to the next one.
+     *
+     * @return      <code>true</code> if the stream is positioned to the body of the next part;
+     *              <code>false</code> if there are no more parts
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    public boolean nextPart() throws IOException {
+        while (state == State.BODY) {
+            skipBody();
+        }
+        if (state == State.END) {
+            return false;
+        }
+
+        position += delimiter.length;
+        if (!ensure(2)) {
+            state = State.END;
+            return false;
+        }
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            state = State.END;
+            return false;
+        }
+
+        disposition = null;
+        contentType = null;
+        // Skip transport padding and CRLF after the delimiter.
+        readHeaderLine();
+        int length;
+        while ((length = readHeaderLine()) > 0) {
+            processHeader(length);
+        }
+        if (length < 0) {
+            state = State.END;
+            return false;
+        }
+        state = State.BODY;
+        scanned = position;
+        delimiterIndex = -1;
+        return true;
+    }
+
+    /**
+     * @return      name of the current part (if any)
+     */
+    public String getName() {
+        return getHeaderParameter(disposition, "name");
+    }
+
+    /**
+     * @return      file name of the current part if it's defined; <code>null</code> otherwise
+     */
+    public String getFileName() {
+        return getHeaderParameter(disposition, "filename");
+    }
+
+    /**
+     * @return      value of the <code>'Content-Type'</code> header of the current part (if any)
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!hasBody()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return 0;
+        }
+        if (!hasBody()) {
+            return -1;
+        }
+        int result = Math.min(len, bodyEnd() - position);
+        System.arraycopy(buffer, position, b, off, result);
+        position += result;
+        return result;
+    }
+
+    @Override
+    public int available() {
+        if (state != State.BODY) {
+            return 0;
+        }
+        return Math.max(0, bodyEnd() - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Extracts value of the given parameter from the given header value, e.g. <code>'boundary'</code>
+     * parameter value from <code>'multipart/form-data; boundary=xxx'</code>.
+     *
+     * @param header    header value (if any)
+     * @param name      target parameter name
+     * @return          target parameter value if it's defined; <code>null</code> otherwise
+     */
+    public static String getHeaderParameter(String header, String name) {
+        if (header == null) {
+            return null;
+        }
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            i = skipWhiteSpaces(header, i + 1);
+            int nameStart = i;
+            while (i < header.length() && header.charAt(i) != '=' && header.charAt(i) != ';') {
+                i++;
+            }
+            boolean matches = header.substring(nameStart, i).trim().equalsIgnoreCase(name);
+            if (i >= header.length() || header.charAt(i) == ';') {
+                continue;
+            }
+            i = skipWhiteSpaces(header, i + 1);
+            StringBuilder value = new StringBuilder();
+            if (i < header.length() && header.charAt(i) == '"') {
+                for (i++; i < header.length() && header.charAt(i) != '"'; i++) {
+                    char c = header.charAt(i);
+                    if (c == '\\' && i + 1 < header.length()) {
+                        c = header.charAt(++i);
+                    }
+                    value.append(c);
+                }
+                i = header.indexOf(';', i);
+            } else {
+                int end = header.indexOf(';', i);
+                value.append(header.substring(i, end < 0 ? header.length() : end).trim());
+                i = end;
+            }
+            if (matches) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+
+    private static int skipWhiteSpaces(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Makes at least one byte of the current part body available at the buffer if possible.
+     *
+     * @return      <code>true</code> if there is an available body byte; <code>false</code> if current part
+     *              body is read
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private boolean hasBody() throws IOException {
+        while (state == State.BODY) {
+            if (bodyEnd() > position) {
+                return true;
+            }
+            if (delimiterIndex >= 0) {
+                state = State.DELIMITER;
+                return false;
+            }
+            if (eof) {
+                state = State.END;
+                return false;
+            }
+            fill();
+        }
+        return false;
+    }
+
+    private void skipBody() throws IOException {
+        if (hasBody()) {
+            position = bodyEnd();
+        }
+    }
+
+    /**
+     * @return      offset of the buffer before which the data definitely belongs to the current part body
+     */
+    private int bodyEnd() {
+        if (delimiterIndex < 0) {
+            findDelimiter();
+        }
+        if (delimiterIndex >= 0) {
+            return delimiterIndex;
+        }
+        return eof ? limit : Math.max(position, scanned);
+    }
+
+    private void findDelimiter() {
+        int last = limit - delimiter.length;
+        for (int i = Math.max(position, scanned); i <= last; i++) {
+            if (buffer[i] != '\r') {
+                continue;
+            }
+            int j = 1;
+            while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                j++;
+            }
+            if (j >= delimiter.length) {
+                delimiterIndex = i;
+                scanned = i;
+                return;
+            }
+        }
+        scanned = Math.max(scanned, last + 1);
+    }
+
+    /**
+     * Ensures that given number of bytes is available at the buffer starting from the current position.
+     *
+     * @param length    target number of bytes
+     * @return          <code>true</code> if requested number of bytes is available; <code>false</code> if the
+     *                  stream ends before that
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private boolean ensure(int length) throws IOException {
+        while (limit - position < length) {
+            if (eof) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    /**
+     * Moves unprocessed data to the buffer start and reads more data from the underlying stream.
+     *
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            scanned = Math.max(0, scanned - position);
+            if (delimiterIndex >= 0) {
+                delimiterIndex -= position;
+            }
+            position = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Reads header line to the {@link #headerBuffer}.
+     *
+     * @return      header line length (excluding line feed); negative value if the stream is over
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    private int readHeaderLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (position >= limit) {
+                if (eof) {
+                    return -1;
+                }
+                fill();
+                continue;
+            }
+            byte b = buffer[position++];
+            if (b == '\n') {
+                if (length > 0 && length <= headerBuffer.length && headerBuffer[length - 1] == '\r') {
+                    length--;
+                }
+                return Math.min(length, headerBuffer.length);
+            }
+            if (length < headerBuffer.length) {
+                headerBuffer[length] = b;
+            }
+            length++;
+        }
+    }
+
+    private void processHeader(int length) throws UnsupportedEncodingException {
+        int separator = 0;
+        while (separator < length && headerBuffer[separator] != ':') {
+            separator++;
+        }
+        if (separator >= length) {
+            return;
+        }
+        String name = new String(headerBuffer, 0, separator, HEADER_CHARSET).trim();
+        if (CONTENT_DISPOSITION_HEADER.equalsIgnoreCase(name)) {
+            disposition = new String(headerBuffer, separator + 1, length - separator - 1, HEADER_CHARSET).trim();
+        } else if (CONTENT_TYPE_HEADER.equalsIgnoreCase(name)) {
+            contentType = new String(headerBuffer, separator + 1, length - separator - 1, HEADER_CHARSET).trim();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.denis.webview.util.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Utility methods for {@link Reader symbol streams} implementations.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ReaderUtil {
+
+    private ReaderUtil() {
+    }
+
+    /**
+     * Reads symbols from the given stream directly to the {@link CharBuffer#array() array} that backs given buffer.
+     * <p/>
+     * Default {@link Reader#read(CharBuffer)} implementation allocates temporary array on every call and copies
+     * the data from it to the target buffer, so, readers are expected to override that method and delegate
+     * to the current one if target buffer {@link CharBuffer#hasArray() has accessible array}.
+     *
+     * @param reader    target symbol stream
+     * @param target    target buffer that has accessible array
+     * @return          the number of characters added to the buffer, or <code>-1</code> if the end of the stream
+     *                  has been reached
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    public static int readToArray(Reader reader, CharBuffer target) throws IOException {
+        int length = target.remaining();
+        if (length <= 0) {
+            return 0;
+        }
+        int position = target.position();
+        int result = reader.read(target.array(), target.arrayOffset() + position, length);
+        if (result > 0) {
+            target.position(position + result);
+        }
+        return result;
+    }
+}
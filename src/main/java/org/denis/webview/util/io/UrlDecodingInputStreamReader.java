@@ -0,0 +1,657 @@
+package org.denis.webview.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Symbol stream that reads <a href="http://www.w3schools.com/TAGS/ref_urlencode.asp">url encoded</a> data
+ * directly from the given {@link InputStream byte stream} and performs the following conversions during
+ * a single pass over the raw bytes:
+ * <ul>
+ *     <li>
+ *          <code>'&amp;'</code> is treated as form parameters separator (optional, see
+ *          {@link #nextParameter()});
+ *     </li>
+ *     <li><code>'+'</code> is converted to white space (optional);</li>
+ *     <li><code>'%XX'</code> sequences are converted to the bytes they encode (optional);</li>
+ *     <li>resulting bytes are decoded from <code>UTF-8</code>;</li>
+ *     <li>
+ *          <a href="http://www.w3.org/TR/html5/syntax.html#named-character-references">HTML character entities</a>
+ *          and numeric
+ *          character references are decoded from the resulting symbols (optional);
+ *     </li>
+ * </ul>
+ * I.e. it's a faster alternative to the {@link HtmlEntityDecodingReader} and {@link UrlDecodingReader} chain
+ * that is layered over the symbol stream that has already been decoded from bytes by the container. Decoded
+ * symbols are written directly to the buffer given by the client, no intermediate symbol buffers are used.
+ * <p/>
+ * Malformed <code>UTF-8</code> sequences are replaced by {@link #REPLACEMENT_CHAR}. Unknown or malformed HTML
+ * entities are left as-is, i.e. source code like <code>'a &amp;&amp; b'</code> is not corrupted.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author Denis Zhdanov
+ * @since 6/14/11
+ */
+public class UrlDecodingInputStreamReader extends Reader {
+
+    /** Default size of the buffer used for holding raw bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /** Symbol used instead of malformed <code>UTF-8</code> sequences. */
+    public static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    /** Url decoding state - not inside <code>'%XX'</code> sequence. */
+    private static final int STATE_RAW = 0;
+
+    /** Url decoding state - <code>'%'</code> is read. */
+    private static final int STATE_PERCENT = 1;
+
+    /** Url decoding state - <code>'%'</code> and the first hex digit are read. */
+    private static final int STATE_PERCENT_HEX = 2;
+
+    /** Minimal code points that may be encoded by <code>UTF-8</code> sequences of particular length. */
+    private static final int[] MIN_CODE_POINTS = {0, 0x80, 0x800, 0x10000};
+
+    /** {@link #entityState} value used for numeric character references. */
+    private static final int NUMERIC_ENTITY_STATE = -1;
+
+    /** Max number of symbols between <code>'&amp;'</code> and <code>';'</code> at the numeric character reference. */
+    private static final int MAX_NUMERIC_ENTITY_LENGTH = "#x10FFFF".length();
+
+    /** Char array used during {@link #read() single char reading}. */
+    private final char[] singleCharReadBuffer = new char[1];
+
+    /** Symbols of the HTML entity that is being decoded at the moment (starting from <code>'&amp;'</code>). */
+    private final char[] entity = new char[1 /* '&' */
+        + Math.max(HtmlEntityTrie.MAX_NAME_LENGTH, MAX_NUMERIC_ENTITY_LENGTH)];
+
+    /** Buffer for the symbols of the decoded named HTML entity. */
+    private final char[] entitySymbols = new char[HtmlEntityTrie.MAX_SYMBOLS_NUMBER];
+
+    /**
+     * Decoded symbols that didn't fit to the client buffer (if any), e.g. low surrogate of the supplementary
+     * code point or symbols of the unknown HTML entity.
+     */
+    private final char[] pending = new char[entity.length + 4];
+
+    private final InputStream in;
+    private final byte[]      buffer;
+    private final boolean     decodeUrl;
+    private final boolean     splitParameters;
+    private final boolean     decodeEntities;
+
+    /** Holds <code>true</code> for the ascii bytes that can't be processed via the plain symbols fast path. */
+    private final boolean[]   specialBytes = new boolean[128];
+
+    /** Index within {@link #buffer} that points to position of the first unprocessed byte. */
+    private int bufferStart;
+
+    /** Index within {@link #buffer} that points to position just after the last stored byte. */
+    private int bufferEnd;
+
+    /** One of the <code>'STATE_XXX'</code> constants. */
+    private int urlState = STATE_RAW;
+
+    /** Value of the first hex digit if {@link #urlState} is {@link #STATE_PERCENT_HEX}. */
+    private int highNibble;
+
+    /** Bits of the code point decoded from the current multi-byte <code>UTF-8</code> sequence so far. */
+    private int codePoint;
+
+    /** Number of continuation bytes that are still expected for the current <code>UTF-8</code> sequence. */
+    private int expectedContinuationBytes;
+
+    /** Total number of continuation bytes at the current <code>UTF-8</code> sequence. */
+    private int continuationBytes;
+
+    /** Number of symbols stored at the {@link #entity} buffer. */
+    private int entityLength;
+
+    /**
+     * {@link HtmlEntityTrie} state reached by the current named entity symbols or {@link #NUMERIC_ENTITY_STATE}
+     * for numeric character reference.
+     */
+    private int entityState;
+
+    /** Index of the first symbol to return from the {@link #pending} buffer. */
+    private int pendingStart;
+
+    /** Index just after the last symbol stored at the {@link #pending} buffer. */
+    private int pendingEnd;
+
+    /** Buffer used for skipping the rest of the current form parameter. Lazily initialized. */
+    private char[] skipBuffer;
+
+    /** Flag that indicates if parameters separator is reached. */
+    private boolean parameterEnd;
+    private boolean eof;
+
+    public UrlDecodingInputStreamReader(InputStream in) throws IllegalArgumentException {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public UrlDecodingInputStreamReader(InputStream in, int bufferSize) throws IllegalArgumentException {
+        this(in, bufferSize, false, false);
+    }
+
+    public UrlDecodingInputStreamReader(InputStream in, boolean splitParameters, boolean decodeEntities)
+        throws IllegalArgumentException
+    {
+        this(in, DEFAULT_BUFFER_SIZE, splitParameters, decodeEntities);
+    }
+
+    /**
+     * Creates new <code>UrlDecodingInputStreamReader</code> object.
+     *
+     * @param in                    target byte stream
+     * @param bufferSize            size of the buffer to use for holding raw bytes
+     * @param splitParameters       flag that indicates if raw <code>'&amp;'</code> should be treated as
+     *                              form parameters separator, i.e. the stream ends at it until
+     *                              {@link #nextParameter()} is called
+     * @param decodeEntities        flag that indicates if HTML entities should be decoded
+     * @throws IllegalArgumentException     if given byte stream is <code>null</code> or buffer size is not positive
+     */
+    public UrlDecodingInputStreamReader(InputStream in, int bufferSize, boolean splitParameters,
+                                        boolean decodeEntities)
+        throws IllegalArgumentException
+    {
+        this(in, bufferSize, true, splitParameters, decodeEntities);
+    }
+
+    /**
+     * Creates new <code>UrlDecodingInputStreamReader</code> object.
+     *
+     * @param in                    target byte stream
+     * @param bufferSize            size of the buffer to use for holding raw bytes
+     * @param decodeUrl             flag that indicates if url decoding should be performed, i.e. if it's
+     *                              <code>false</code> the data is just decoded from <code>UTF-8</code>
+     * @param splitParameters       flag that indicates if raw <code>'&amp;'</code> should be treated as
+     *                              form parameters separator, i.e. the stream ends at it until
+     *                              {@link #nextParameter()} is called
+     * @param decodeEntities        flag that indicates if HTML entities should be decoded
+     * @throws IllegalArgumentException     if given byte stream is <code>null</code> or buffer size is not positive
+     */
+    public UrlDecodingInputStreamReader(InputStream in, int bufferSize, boolean decodeUrl, boolean splitParameters,
+                                        boolean decodeEntities)
+        throws IllegalArgumentException
+    {
+        if (in == null) {
+            throw new IllegalArgumentException("Can't create url decoding symbol stream. Reason: given byte stream "
+                + "is null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(String.format("Can't create url decoding symbol stream. Reason: "
+                + "given buffer size is not positive (%d)", bufferSize));
+        }
+        this.in = in;
+        this.decodeUrl = decodeUrl;
+        this.splitParameters = splitParameters;
+        this.decodeEntities = decodeEntities;
+        buffer = new byte[bufferSize];
+        specialBytes['%'] = specialBytes['+'] = decodeUrl;
+        specialBytes['&'] = splitParameters || decodeEntities;
+    }
+
+    /**
+     * Skips the rest of the current form parameter (if any) and moves to the next one, i.e. subsequent reads
+     * return symbols of the next parameter.
+     * <p/>
+     * Makes sense only for the readers that are configured to split parameters.
+     *
+     * @return      <code>true</code> if there is the next form parameter; <code>false</code> if the end of
+     *              the wrapped stream is reached
+     * @throws IOException      in case of unexpected exception during I/O processing
+     */
+    public boolean nextParameter() throws IOException {
+        if (!parameterEnd) {
+            if (skipBuffer == null) {
+                skipBuffer = new char[64];
+            }
+            while (read(skipBuffer, 0, skipBuffer.length) >= 0) {
+                // Skip the data.
+            }
+        }
+        if (!parameterEnd) {
+            return false;
+        }
+        parameterEnd = false;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(singleCharReadBuffer, 0, 1);
+        if (read < 0) {
+            return read;
+        }
+        return singleCharReadBuffer[0];
+    }
+
+    @Override
+    public int read(CharBuffer target) throws IOException {
+        if (!target.hasArray()) {
+            return super.read(target);
+        }
+        return ReaderUtil.readToArray(this, target);
+    }
+
+    /**
+     * Decodes data from the wrapped byte stream into a portion of a given array.
+     *
+     * @param buf       destination buffer
+     * @param off       offset at which to start storing characters
+     * @param len       maximum number of characters to read
+     * @return          the number of characters read, or <code>-1</code> if the end of the stream or the end
+     *                  of the current form parameter has been reached
+     * @throws IllegalArgumentException     if any of the given arguments is invalid or if wrapped stream contains
+     *                                      invalid hex symbol after <code>'%'</code>
+     * @throws IllegalStateException        if wrapped byte stream ends in the middle of <code>'%XX'</code> sequence
+     * @throws IOException                  in case of unexpected exception during I/O processing
+     */
+    @Override
+    public int read(char[] buf, int off, int len) throws IllegalArgumentException, IllegalStateException, IOException {
+        checkReadArguments(buf, off, len);
+        int offset = off;
+        int end = off + len;
+        while (offset < end) {
+            if (pendingStart < pendingEnd) {
+                offset = drainPending(buf, offset, end);
+                continue;
+            }
+            if (parameterEnd) {
+                break;
+            }
+            if (bufferStart >= bufferEnd) {
+                // Don't block if we already have something to return.
+                if (offset > off) {
+                    break;
+                }
+                if (!fill()) {
+                    offset = finishSequences(buf, offset, end);
+                    break;
+                }
+            }
+            offset = decode(buf, offset, end);
+        }
+
+        if (offset > off) {
+            return offset - off;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decodes raw bytes from the {@link #buffer internal buffer} to the given symbols buffer.
+     *
+     * @param buf      target symbols buffer
+     * @param offset   start offset to use within the given symbols buffer
+     * @param end      end offset to use within the given symbols buffer
+     * @return         offset within the given symbols buffer just after the last written symbol
+     * @throws IllegalArgumentException     if invalid hex symbol is encountered after <code>'%'</code>
+     */
+    private int decode(char[] buf, int offset, int end) throws IllegalArgumentException {
+        byte[] bytes = buffer;
+        int i = bufferStart;
+        int max = bufferEnd;
+        while (i < max && offset < end) {
+            int b = bytes[i++];
+            if (urlState == STATE_RAW) {
+                // Fast path for plain ascii symbols.
+                if (b >= 0 && !specialBytes[b] && (expectedContinuationBytes | entityLength) == 0) {
+                    buf[offset++] = (char) b;
+                    continue;
+                }
+                if (b == '%' && decodeUrl) {
+                    urlState = STATE_PERCENT;
+                    continue;
+                }
+                if (b == '+' && decodeUrl) {
+                    b = ' ';
+                } else if (b == '&' && splitParameters) {
+                    offset = finishSequences(buf, offset, end);
+                    parameterEnd = true;
+                    break;
+                }
+            } else if (urlState == STATE_PERCENT) {
+                highNibble = toNumber(b);
+                urlState = STATE_PERCENT_HEX;
+                continue;
+            } else {
+                b = (highNibble << 4) | toNumber(b);
+                urlState = STATE_RAW;
+            }
+            offset = decodeUtf8(b & 0xFF, buf, offset, end);
+        }
+        bufferStart = i;
+        return offset;
+    }
+
+    /**
+     * Processes given byte of <code>UTF-8</code> data.
+     *
+     * @param b         byte to process
+     * @param buf       target symbols buffer
+     * @param offset    start offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int decodeUtf8(int b, char[] buf, int offset, int end) {
+        if (expectedContinuationBytes > 0) {
+            if ((b & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (b & 0x3F);
+                if (--expectedContinuationBytes > 0) {
+                    return offset;
+                }
+                if (codePoint < MIN_CODE_POINTS[continuationBytes]) {
+                    return emit(REPLACEMENT_CHAR, buf, offset, end);
+                }
+                return emitCodePoint(codePoint, buf, offset, end);
+            }
+
+            // Unexpected non-continuation byte, process it as a new sequence start.
+            expectedContinuationBytes = 0;
+            offset = emit(REPLACEMENT_CHAR, buf, offset, end);
+        }
+
+        if (b < 0x80) {
+            return emit((char) b, buf, offset, end);
+        }
+        if ((b & 0xE0) == 0xC0) {
+            startSequence(b & 0x1F, 1);
+        } else if ((b & 0xF0) == 0xE0) {
+            startSequence(b & 0x0F, 2);
+        } else if ((b & 0xF8) == 0xF0) {
+            startSequence(b & 0x07, 3);
+        } else {
+            return emit(REPLACEMENT_CHAR, buf, offset, end);
+        }
+        return offset;
+    }
+
+    private void startSequence(int bits, int continuationBytesNumber) {
+        codePoint = bits;
+        expectedContinuationBytes = continuationBytes = continuationBytesNumber;
+    }
+
+    /**
+     * Passes given code point decoded from <code>UTF-8</code> to the HTML entities decoding.
+     *
+     * @param c         code point to process
+     * @param buf       target symbols buffer
+     * @param offset    start offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int emitCodePoint(int c, char[] buf, int offset, int end) {
+        if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return emit((char) c, buf, offset, end);
+        }
+        // Supplementary symbols are never a part of HTML entity, so, it's enough to pass only the high surrogate.
+        c -= Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        offset = emit((char) ((c >>> 10) + Character.MIN_HIGH_SURROGATE), buf, offset, end);
+        return write((char) ((c & 0x3FF) + Character.MIN_LOW_SURROGATE), buf, offset, end);
+    }
+
+    /**
+     * Processes given symbol decoded from <code>UTF-8</code>, i.e. writes it to the given buffer or uses it during
+     * HTML entity decoding.
+     *
+     * @param c         symbol to process
+     * @param buf       target symbols buffer
+     * @param offset    start offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int emit(char c, char[] buf, int offset, int end) {
+        if (entityLength > 0) {
+            if (c == ';') {
+                return decodeEntity(buf, offset, end);
+            }
+            if (entityLength < entity.length && acceptEntitySymbol(c)) {
+                entity[entityLength++] = c;
+                return offset;
+            }
+            offset = flushEntity(buf, offset, end);
+        }
+        if (c == '&' && decodeEntities) {
+            entity[0] = c;
+            entityLength = 1;
+            entityState = HtmlEntityTrie.ROOT;
+            return offset;
+        }
+        return write(c, buf, offset, end);
+    }
+
+    /**
+     * Decodes HTML entity stored at the {@link #entity} buffer assuming that its closing <code>';'</code>
+     * has just been read.
+     *
+     * @param buf       target symbols buffer
+     * @param offset    start offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int decodeEntity(char[] buf, int offset, int end) {
+        if (entityState != NUMERIC_ENTITY_STATE) {
+            if (!HtmlEntityTrie.isTerminal(entityState)) {
+                offset = flushEntity(buf, offset, end);
+                return write(';', buf, offset, end);
+            }
+            entityLength = 0;
+            int length = HtmlEntityTrie.write(entityState, entitySymbols, 0);
+            for (int i = 0; i < length; i++) {
+                offset = write(entitySymbols[i], buf, offset, end);
+            }
+            return offset;
+        }
+
+        int c = decodeNumericEntity(entity, entityLength);
+        if (c < 0) {
+            offset = flushEntity(buf, offset, end);
+            return write(';', buf, offset, end);
+        }
+        entityLength = 0;
+        if (c == 0 || c > Character.MAX_CODE_POINT || (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+            return write(REPLACEMENT_CHAR, buf, offset, end);
+        }
+        if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return write((char) c, buf, offset, end);
+        }
+        c -= Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        offset = write((char) ((c >>> 10) + Character.MIN_HIGH_SURROGATE), buf, offset, end);
+        return write((char) ((c & 0x3FF) + Character.MIN_LOW_SURROGATE), buf, offset, end);
+    }
+
+    /**
+     * Writes symbols of the HTML entity that can't be decoded as-is.
+     *
+     * @param buf       target symbols buffer
+     * @param offset    start offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int flushEntity(char[] buf, int offset, int end) {
+        for (int i = 0; i < entityLength; i++) {
+            offset = write(entity[i], buf, offset, end);
+        }
+        entityLength = 0;
+        return offset;
+    }
+
+    /**
+     * Completes all started but not finished sequences, i.e. writes {@link #REPLACEMENT_CHAR} for incomplete
+     * <code>UTF-8</code> sequence and writes symbols of incomplete HTML entity as-is.
+     *
+     * @param buf       target symbols buffer
+     * @param offset    start offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int finishSequences(char[] buf, int offset, int end) {
+        if (expectedContinuationBytes > 0) {
+            expectedContinuationBytes = 0;
+            offset = emit(REPLACEMENT_CHAR, buf, offset, end);
+        }
+        if (entityLength > 0) {
+            offset = flushEntity(buf, offset, end);
+        }
+        return offset;
+    }
+
+    /**
+     * Writes given symbol to the given buffer if it has free space; stores it at the {@link #pending} buffer
+     * otherwise.
+     * <p/>
+     * It's assumed that the buffer may become full only during processing the last byte, i.e. the number of
+     * pending symbols is limited by the number of symbols produced by the single byte.
+     *
+     * @param c         symbol to write
+     * @param buf       target symbols buffer
+     * @param offset    offset to use within the given symbols buffer
+     * @param end       end offset to use within the given symbols buffer
+     * @return          offset within the given symbols buffer just after the last written symbol
+     */
+    private int write(char c, char[] buf, int offset, int end) {
+        if (offset < end) {
+            buf[offset++] = c;
+        } else {
+            pending[pendingEnd++] = c;
+        }
+        return offset;
+    }
+
+    private int drainPending(char[] buf, int offset, int end) {
+        int length = Math.min(end - offset, pendingEnd - pendingStart);
+        System.arraycopy(pending, pendingStart, buf, offset, length);
+        pendingStart += length;
+        if (pendingStart >= pendingEnd) {
+            pendingStart = pendingEnd = 0;
+        }
+        return offset + length;
+    }
+
+    /**
+     * Reads more data from the wrapped byte stream to the {@link #buffer internal buffer}.
+     *
+     * @return      <code>true</code> if there is more data to process; <code>false</code> if the end of
+     *              the wrapped stream is reached
+     * @throws IllegalStateException    if wrapped byte stream ends in the middle of <code>'%XX'</code> sequence
+     * @throws IOException              in case of unexpected exception during I/O processing
+     */
+    private boolean fill() throws IllegalStateException, IOException {
+        if (eof) {
+            return false;
+        }
+        bufferStart = bufferEnd = 0;
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read > 0) {
+            bufferEnd = read;
+            return true;
+        }
+
+        eof = true;
+        if (urlState != STATE_RAW) {
+            throw new IllegalStateException("Detected situation that target byte stream ends with the data that is "
+                + "inconsistent with url encoding rules - incomplete '%XX' sequence");
+        }
+        return false;
+    }
+
+    /**
+     * Checks if given symbol may continue the current HTML entity and updates {@link #entityState} if necessary.
+     *
+     * @param c     symbol to check
+     * @return      <code>true</code> if given symbol may continue the current entity; <code>false</code> otherwise
+     */
+    private boolean acceptEntitySymbol(char c) {
+        if (entityState == NUMERIC_ENTITY_STATE) {
+            return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == 'x' || c == 'X';
+        }
+        if (c == '#' && entityLength == 1) {
+            entityState = NUMERIC_ENTITY_STATE;
+            return true;
+        }
+        int state = HtmlEntityTrie.next(entityState, c);
+        if (state < 0) {
+            return false;
+        }
+        entityState = state;
+        return true;
+    }
+
+    /**
+     * Decodes numeric character reference stored at the given buffer.
+     *
+     * @param entity    buffer that contains <code>'&amp;#NNN'</code> or <code>'&amp;#xHHH'</code> symbols
+     * @param length    number of symbols stored at the given buffer
+     * @return          decoded code point (may be beyond the unicode range); negative value if given data
+     *                  is not a valid numeric character reference
+     */
+    private static int decodeNumericEntity(char[] entity, int length) {
+        int start = 2;
+        int radix = 10;
+        if (length > start && (entity[start] == 'x' || entity[start] == 'X')) {
+            start++;
+            radix = 16;
+        }
+        if (start >= length) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < length; i++) {
+            int digit = Character.digit(entity[i], radix);
+            if (digit < 0) {
+                return -1;
+            }
+            if (result <= Character.MAX_CODE_POINT) {
+                result = result * radix + digit;
+            }
+        }
+        return result;
+    }
+
+    private static int toNumber(int b) throws IllegalArgumentException {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        throw new IllegalArgumentException(String.format("Can't convert given symbol (%c) to byte. Reason: the "
+            + "symbol is expected to be valid hex symbol, i.e. belong to one of the following intervals: "
+            + "[0; 9], [A; F], [a; f]", (char) (b & 0xFF)));
+    }
+
+    private static void checkReadArguments(char[] buf, int off, int len) throws IllegalArgumentException {
+        if (buf == null) {
+            throw new IllegalArgumentException(String.format("Can't read data to the given char buffer. "
+                + "Reason: it is null. Offset: %d, length: %d", off, len));
+        }
+
+        if (off < 0 || off >= buf.length) {
+            throw new IllegalArgumentException(String.format("Can't read data to the given char buffer (size %d). "
+                + "Reason: given offset is invalid (%d). Length: %d", buf.length, off, len));
+        }
+
+        if (len <= 0 || off + len > buf.length) {
+            throw new IllegalArgumentException(String.format("Can't read data to the given char buffer "
+                + "(size %d, offset %d). Reason: given length is invalid (%d). It's expected to belong "
+                + "to [1; %d] range", buf.length, off, len, buf.length - off));
+        }
+    }
+}
@@ -30,40 +30,38 @@ public class UrlDecodingReader extends AbstractReplacingFilterReader {
     }
 
     public UrlDecodingReader(Reader in, String encoding) {
-        super(in, 3/* '3' is a length of percent symbol followed by two hex symbols */);
+        super(in, 3/* '3' is a length of percent symbol followed by two hex symbols */, '%', '+');
         decoder = Charset.forName(encoding).newDecoder();
     }
 
     @Override
     protected int copy(DataContext dataContext) throws IllegalStateException {
         int result = 0;
-        for (
-            int externalBufferOffset = dataContext.externalOffset,
-                externalBufferMaxOffset = dataContext.externalOffset + dataContext.externalLength;
-            dataContext.internalStart < dataContext.internalEnd && externalBufferOffset < externalBufferMaxOffset;
-            ++dataContext.internalStart, ++result)
-        {
-            switch (dataContext.internalBuffer[dataContext.internalStart]) {
-                case '+':
-                    dataContext.externalBuffer[externalBufferOffset++] = ' ';
-                    break;
-                case '%':
-                    if (dataContext.internalEnd - dataContext.internalStart < 3) {
-                        // Internal buffer doesn't contain enough data to decode the symbol.
-                        return  result;
-                    }
-                    if (decode(dataContext.internalBuffer, dataContext.internalStart + 1)) {
-                        dataContext.externalBuffer[externalBufferOffset++] = charBuffer.get();
-                        charBuffer.clear();
-                    } else {
-                        --result; // Assuming that result is incremented at 'for'.
-                    }
-                    dataContext.internalStart += 2;
-                    break;
-                default:
-                    dataContext.externalBuffer[externalBufferOffset++]
-                        = dataContext.internalBuffer[dataContext.internalStart];
+        int externalEnd = dataContext.externalOffset + dataContext.externalLength;
+        while (dataContext.internalStart < dataContext.internalEnd && dataContext.externalOffset < externalEnd) {
+            result += copyPlainSymbols(dataContext, externalEnd);
+            if (dataContext.internalStart >= dataContext.internalEnd || dataContext.externalOffset >= externalEnd) {
+                break;
             }
+
+            // Current internal buffer offset points to the replacement start.
+            if (dataContext.internalBuffer[dataContext.internalStart] == '+') {
+                dataContext.externalBuffer[dataContext.externalOffset++] = ' ';
+                ++dataContext.internalStart;
+                ++result;
+                continue;
+            }
+
+            if (dataContext.internalEnd - dataContext.internalStart < 3) {
+                // Internal buffer doesn't contain enough data to decode the symbol.
+                break;
+            }
+            if (decode(dataContext.internalBuffer, dataContext.internalStart + 1)) {
+                dataContext.externalBuffer[dataContext.externalOffset++] = charBuffer.get();
+                charBuffer.clear();
+                ++result;
+            }
+            dataContext.internalStart += 3;
         }
         return result;
     }
@@ -34,4 +34,65 @@ function prepareClipboardProcessing() {
     clip = new ZeroClipboard.Client();
     clip.glue(COPY_BUTTON_ID);
     clip.setHandCursor(true);
-}
\ No newline at end of file
+}
+
+/** Min length of the source which is compressed before submission. */
+var COMPRESSION_THRESHOLD = 64 * 1024;
+var SOURCE_PARAMETER_NAME = "source";
+var FILE_PARAMETER_NAME = "file";
+
+var FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+var MULTIPART_CONTENT_TYPE = "multipart/form-data";
+
+/**
+ * Submits large source gzip-compressed as a raw request body (settings go to the query string) if the browser
+ * supports that. Falls back to the regular form submission otherwise.
+ * <p/>
+ * The form is sent as multipart data only if a file is chosen, i.e. the source typed by the user is always sent
+ * as url-encoded form data.
+ */
+function submitSource(form) {
+    var source = form.elements[SOURCE_PARAMETER_NAME];
+    var file = form.elements[FILE_PARAMETER_NAME];
+    var contentType = file && file.value ? MULTIPART_CONTENT_TYPE : FORM_CONTENT_TYPE;
+    form.enctype = contentType;
+    form.encoding = contentType; // Old IE versions.
+    if (file && file.value) {
+        // Uploaded file is streamed by the server as-is.
+        return true;
+    }
+    if (!source || source.value.length < COMPRESSION_THRESHOLD
+        || typeof CompressionStream == "undefined" || typeof fetch == "undefined")
+    {
+        return true;
+    }
+
+    var query = [];
+    for (var i = 0; i < form.elements.length; i++) {
+        var element = form.elements[i];
+        if (element.type == "hidden" && element.name && element.name != SOURCE_PARAMETER_NAME) {
+            query.push(encodeURIComponent(element.name) + "=" + encodeURIComponent(element.value));
+        }
+    }
+
+    var compressed = new Blob([source.value]).stream().pipeThrough(new CompressionStream("gzip"));
+    new Response(compressed).blob().then(function(body) {
+        return fetch(form.action + "?" + query.join("&"), {
+            method: "POST",
+            headers: { "Content-Type": "text/plain; charset=UTF-8", "Content-Encoding": "gzip" },
+            body: body
+        });
+    }).then(function(response) {
+        if (!response.ok) {
+            throw new Error(response.statusText);
+        }
+        return response.text();
+    }).then(function(html) {
+        document.open();
+        document.write(html);
+        document.close();
+    }, function() {
+        form.submit();
+    });
+    return false;
+}
@@ -0,0 +1,132 @@
+package org.denis.webview.syntax.logic;
+
+import org.apache.log4j.Logger;
+import org.denis.webview.config.SourceType;
+import org.denis.webview.util.MicroBenchmark;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.util.Locale;
+
+/**
+ * Compares lexers provision via naming convention-based class loading and reflective instantiation that was used
+ * by {@link HighlighterProvider} before {@link LexerFactory} had been introduced with the current implementation.
+ * <p/>
+ * Following is measured:
+ * <ul>
+ *     <li>
+ *          <b>startup</b> - time of the lexers lookup during the initialization (single-shot cold measurement,
+ *          so, it makes sense only at the fresh VM);
+ *     </li>
+ *     <li>
+ *          <b>first request</b> - time of getting a lexer and lexing small source by it for the first time
+ *          (lazily loaded lexers are loaded here);
+ *     </li>
+ *     <li>
+ *          <b>per-request</b> - time of getting a lexer and lexing small source by it;
+ *     </li>
+ * </ul>
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class HighlighterProviderBenchmark {
+
+    private static final String SOURCE = "public class A {\n    private int i; // comment\n}\n";
+
+    /**
+     * @param args      <code>'legacy'</code> or <code>'factory'</code> to measure only particular implementation
+     *                  (it's recommended to measure them at separate VMs, startup time makes sense only
+     *                  for the first measured implementation); both are measured if no argument is given
+     * @throws Exception    in case of unexpected exception during the processing
+     */
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : null;
+
+        // Exclude logging initialization from the startup measurement.
+        Logger.getRootLogger();
+        if (mode == null || "legacy".equals(mode)) {
+            measureLegacy();
+        }
+        if (mode == null || "factory".equals(mode)) {
+            measureFactory();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void measureLegacy() throws Exception {
+        long start = System.nanoTime();
+        final Class<? extends Lexer>[] lexerClasses = new Class[SourceType.values().length];
+        for (SourceType sourceType : SourceType.values()) {
+            String name = sourceType.name();
+            String className = String.format("org.denis.webview.syntax.logic.%s.%sLexer",
+                    name.toLowerCase(), Character.toUpperCase(name.charAt(0)) + name.substring(1).toLowerCase());
+            try {
+                lexerClasses[sourceType.ordinal()]
+                    = (Class<? extends Lexer>) HighlighterProviderBenchmark.class.getClassLoader().loadClass(className);
+            } catch (ClassNotFoundException e) {
+                // Ignore
+            }
+        }
+        report("startup, class name-based lookup", System.nanoTime() - start);
+
+        MicroBenchmark.Task task = new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                Constructor<? extends Lexer> constructor
+                    = lexerClasses[SourceType.JAVA.ordinal()].getConstructor(Reader.class);
+                return lex(constructor.newInstance(new StringReader(SOURCE)));
+            }
+        };
+        start = System.nanoTime();
+        task.run();
+        report("first request, reflective lexer", System.nanoTime() - start);
+        MicroBenchmark.measure("reflective lexer per request", 20000, SOURCE.length(), task);
+    }
+
+    private static void measureFactory() throws Exception {
+        long start = System.nanoTime();
+        HighlighterProvider provider = new HighlighterProvider();
+        provider.init();
+        report("startup, lexer factories lookup", System.nanoTime() - start);
+
+        final LexerPool pool = provider.getLexerPool(SourceType.JAVA);
+        MicroBenchmark.Task task = new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                Lexer lexer = pool.acquire(new StringReader(SOURCE));
+                try {
+                    return lex(lexer);
+                } finally {
+                    pool.release(lexer);
+                }
+            }
+        };
+        start = System.nanoTime();
+        task.run();
+        report("first request, pooled lexer", System.nanoTime() - start);
+        MicroBenchmark.measure("pooled lexer per request", 20000, SOURCE.length(), task);
+        System.out.println(pool);
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.println(String.format(Locale.US, "%-50s %12.1f us", name, nanos / 1000.0));
+    }
+
+    private static long lex(Lexer lexer) throws Exception {
+        TokenCounter counter = new TokenCounter();
+        lexer.lex(counter, null);
+        return counter.tokensNumber;
+    }
+
+    private static class TokenCounter implements TokenSink {
+
+        public long tokensNumber;
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            tokensNumber++;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.apache.log4j.Logger;
 import org.denis.webview.config.SourceType;
 import org.denis.webview.settings.Settings;
 import org.denis.webview.syntax.logic.java.JavaTokenType;
+import org.denis.webview.syntax.logic.xml.XmlTokenType;
+import org.denis.webview.util.io.ChunkedCharBuffer;
 import org.denis.webview.util.io.SymbolCountingReader;
 import org.junit.Test;
 
@@ -13,6 +15,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -35,6 +38,7 @@ public class HighlighterTest {
         register(TokenType.END_TOKEN);
         register(TokenType.END_LOOK_AHEAD_TOKEN);
         register(JavaTokenType.values());
+        register(XmlTokenType.values());
     }
     
     
@@ -59,6 +63,125 @@ public class HighlighterTest {
         }
     }
 
+    @Test
+    public void batchedDelivery() throws IOException {
+        HighlighterProvider highlighterProvider = new HighlighterProvider();
+        highlighterProvider.init();
+        Settings settings = new Settings();
+        settings.setSourceType(SourceType.JAVA);
+        highlighterProvider.setSettings(settings);
+        Highlighter highlighter = highlighterProvider.getHighlighter();
+
+        final List<TokenInfo> tokens = new ArrayList<TokenInfo>();
+        final List<TokenInfo> batchedTokens = new ArrayList<TokenInfo>();
+        Highlighter.Listener listener = new Highlighter.Listener() {
+            @Override
+            public void onToken(TokenInfo info) {
+                tokens.add(info);
+            }
+        };
+        TokenBatchSink batchSink = new TokenBatchSink() {
+            @Override
+            public void onTokens(int[] packed, int count) {
+                for (int i = 0; i < count * TOKEN_SIZE; i += TOKEN_SIZE) {
+                    onToken(packed[i], packed[i + 1], packed[i + 2]);
+                }
+            }
+
+            @Override
+            public void onToken(int typeId, int start, int end) {
+                batchedTokens.add(new TokenInfo(TokenTypeRegistry.get(typeId), start, end));
+            }
+        };
+        assertTrue(highlighter.addListener(listener));
+        assertFalse(highlighter.addListener(listener));
+        assertTrue(highlighter.addSink(batchSink));
+        assertFalse(highlighter.addSink(batchSink));
+
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 100000) {
+            text.append("/** doc */\npublic class A { // comment\n    String s = \"a\"; char c = 'c'; }\n");
+        }
+        text.append("// unfinished");
+
+        // Check that all tokens discovered at the already read data are delivered to the batch sink before
+        // the next read.
+        final Reader reader = new StringReader(text.toString());
+        highlighter.process(new SymbolCountingReader(new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                assertEquals(tokens, batchedTokens);
+                return reader.read(cbuf, off, Math.min(len, 1000));
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        }));
+        assertTrue(tokens.size() > 10000);
+        assertEquals(tokens, batchedTokens);
+
+        assertTrue(highlighter.removeListener(listener));
+        assertFalse(highlighter.removeListener(listener));
+        assertTrue(highlighter.removeSink(batchSink));
+        assertFalse(highlighter.removeSink(batchSink));
+    }
+
+    @Test
+    public void parallelProcessing() throws IOException {
+        HighlighterProvider highlighterProvider = new HighlighterProvider(4);
+        highlighterProvider.init();
+        Settings settings = new Settings();
+        settings.setSourceType(SourceType.JAVA);
+        highlighterProvider.setSettings(settings);
+
+        // Long comments and strings make chunks start at non-initial lexical state.
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < HighlighterProvider.PARALLEL_THRESHOLD * 2; i++) {
+            text.append("/** doc\n * @see A\n */\npublic class A { // comment\n    String s = \"a\"; }\n");
+            if (i % 300 == 0) {
+                text.append(i % 600 == 0 ? "/*\n" : "\"\\\n");
+                for (int j = 0; j < 5000; j++) {
+                    text.append("  text class\n");
+                }
+                text.append(i % 600 == 0 ? "*/\n" : "\"\n");
+            }
+        }
+        text.append("/* unfinished");
+
+        ChunkedCharBuffer buffer = new ChunkedCharBuffer();
+        buffer.append(new StringReader(text.toString()));
+        List<TokenInfo> expected = collect(highlighterProvider.getHighlighter(), null, text.toString());
+        List<TokenInfo> actual = collect(highlighterProvider.getHighlighter(), buffer, null);
+        assertTrue(expected.size() > 10000);
+        assertEquals(expected, actual);
+        highlighterProvider.dispose();
+
+        // Chunk-parallel lexing is off by default.
+        HighlighterProvider sequentialProvider = new HighlighterProvider();
+        sequentialProvider.init();
+        sequentialProvider.setSettings(settings);
+        assertEquals(expected, collect(sequentialProvider.getHighlighter(), buffer, null));
+    }
+
+    private static List<TokenInfo> collect(Highlighter highlighter, ChunkedCharBuffer text, String source)
+        throws IOException
+    {
+        final List<TokenInfo> result = new ArrayList<TokenInfo>();
+        highlighter.addListener(new Highlighter.Listener() {
+            @Override
+            public void onToken(TokenInfo info) {
+                result.add(info);
+            }
+        });
+        if (text == null) {
+            highlighter.process(new SymbolCountingReader(new StringReader(source)));
+        } else {
+            highlighter.process(text);
+        }
+        return result;
+    }
+
     @SuppressWarnings({"unchecked", "ConstantConditions"})
     private void doTest(SourceType sourceType, Highlighter highlighter) throws IOException {
         
@@ -78,7 +201,9 @@ public class HighlighterTest {
         for (File file : testDataDir.listFiles()) {
 //            String interestedName = "todo";
             String interestedName = null;
-            if (interestedName != null && !file.getName().contains(interestedName)) {
+            if (!file.getName().endsWith(".txt")
+                || (interestedName != null && !file.getName().contains(interestedName)))
+            {
                 continue;
             }
             final String message = String.format("'%s'", file.getName());
@@ -0,0 +1,179 @@
+package org.denis.webview.syntax.logic;
+
+import org.denis.webview.syntax.logic.java.JavaLexerFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class HighlightingSessionTest {
+
+    private static final String TEXT = "/** doc\n"
+                                       + " * @see B\n"
+                                       + " */\n"
+                                       + "class A { // comment\n"
+                                       + "  /* multi\n"
+                                       + "     line */\n"
+                                       + "  String s = \"a\\\n"
+                                       + "b\";\n"
+                                       + "  @Deprecated\n"
+                                       + "  void f() { return; }\n"
+                                       + "}\n";
+
+    private LexerPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new LexerPool(new JavaLexerFactory(), 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidEdit() throws Exception {
+        HighlightingSession session = new HighlightingSession(pool);
+        session.load(new StringReader("abc"));
+        session.edit(2, 2, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLongDocument() throws Exception {
+        HighlightingSession session = new HighlightingSession(pool);
+        session.load(new StringReader("abc"));
+        session.edit(3, 0, new StringBuilder().append(new char[HighlightingSession.MAX_LENGTH - 2]));
+    }
+
+    @Test
+    public void load() throws Exception {
+        HighlightingSession session = new HighlightingSession(pool);
+        HighlightingSession.Change change = session.load(new StringReader(TEXT));
+        assertEquals(0, change.getStartOffset());
+        assertEquals(TEXT.length(), change.getEndOffset());
+        assertEquals(0, change.getStartLine());
+        assertEquals(1, change.getOldEndLine());
+        assertEquals(12, change.getNewEndLine());
+        assertEquals(12, session.getLinesNumber());
+        assertEquals(lex(TEXT), replay(session, 0, TEXT.length()));
+    }
+
+    @Test
+    public void localEdit() throws Exception {
+        HighlightingSession session = new HighlightingSession(pool);
+        session.load(new StringReader(TEXT));
+
+        // Edit inside the line doesn't change lexer state at the next line start.
+        int offset = TEXT.indexOf("return");
+        HighlightingSession.Change change = session.edit(offset, "return".length(), "throw null");
+        String text = TEXT.replace("return", "throw null");
+        assertEquals(text.indexOf("  void"), change.getStartOffset());
+        assertEquals(text.indexOf('\n', offset) + 1, change.getEndOffset());
+        assertEquals(9, change.getStartLine());
+        assertEquals(10, change.getOldEndLine());
+        assertEquals(10, change.getNewEndLine());
+        assertEquals(lex(text), replay(session, 0, text.length()));
+
+        // Comment start changes lexer state up to the comment end.
+        change = session.edit(0, 0, "/*\n");
+        text = "/*\n" + text;
+        assertEquals(0, change.getStartOffset());
+        assertEquals(text.indexOf(" */\n") + 4, change.getEndOffset());
+        assertEquals(0, change.getStartLine());
+        assertEquals(3, change.getOldEndLine());
+        assertEquals(4, change.getNewEndLine());
+        assertEquals(lex(text), replay(session, 0, text.length()));
+    }
+
+    @Test
+    public void replayRegion() throws Exception {
+        HighlightingSession session = new HighlightingSession(pool);
+        session.load(new StringReader(TEXT));
+        int start = TEXT.indexOf("     line */");
+        int end = TEXT.indexOf("  String");
+        List<TokenInfo> tokens = replay(session, start, end);
+        assertEquals(2, tokens.size());
+        assertEquals(new TokenInfo(TokenType.END_TOKEN, end - 3, end - 1), tokens.get(1));
+        assertEquals(start, tokens.get(0).getStartOffset());
+        assertEquals(start, tokens.get(0).getEndOffset());
+
+        // Unfinished tokens are closed at the region end.
+        tokens = replay(session, 0, TEXT.indexOf(" */"));
+        assertEquals(TokenType.END_TOKEN, tokens.get(tokens.size() - 1).getTokenType());
+    }
+
+    @Test
+    public void randomEdits() throws Exception {
+        HighlightingSession session = new HighlightingSession(pool);
+        session.load(new StringReader(TEXT));
+        StringBuilder text = new StringBuilder(TEXT);
+        String[] fragments = { "\n", "\r\n", "/*", "*/", "/**", "\"", "\\", "//", "@", "@see ", " ", "class", "TODO" };
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(Math.min(5, text.length() - offset) + 1);
+            String inserted = random.nextBoolean() ? fragments[random.nextInt(fragments.length)] : "";
+            session.edit(offset, removed, inserted);
+            text.replace(offset, offset + removed, inserted);
+            String message = String.format("edit #%d: '%s'", i, text);
+            assertEquals(message, lex(text.toString()), replay(session, 0, text.length()));
+            assertEquals(message, text.toString(), new String(session.getChars(), 0, session.getLength()));
+
+            HighlightingSession reference = new HighlightingSession(pool);
+            reference.load(new StringReader(text.toString()));
+            assertEquals(message, reference.getLinesNumber(), session.getLinesNumber());
+            if (text.length() < TEXT.length() / 2) {
+                session.edit(text.length(), 0, TEXT);
+                text.append(TEXT);
+            }
+        }
+        assertTrue(session.getTokensNumber() > 0);
+    }
+
+    private List<TokenInfo> lex(String text) throws Exception {
+        List<TokenInfo> result = new ArrayList<TokenInfo>();
+        Lexer lexer = pool.acquire(new StringReader(text));
+        try {
+            lexer.lex(new Collector(result), null);
+        } finally {
+            pool.release(lexer);
+        }
+        return result;
+    }
+
+    private static List<TokenInfo> replay(HighlightingSession session, int start, int end) {
+        List<TokenInfo> result = new ArrayList<TokenInfo>();
+        session.replay(start, end, new Collector(result));
+
+        // Skip artificial end tokens.
+        if (start == 0 && end == session.getLength()) {
+            while (!result.isEmpty() && result.get(result.size() - 1).getStartOffset() == end
+                   && result.get(result.size() - 1).getTokenType() == TokenType.END_TOKEN
+                   && result.get(result.size() - 1).getEndOffset() == end)
+            {
+                result.remove(result.size() - 1);
+            }
+        }
+        return result;
+    }
+
+    private static class Collector implements TokenSink {
+
+        private final List<TokenInfo> tokens;
+
+        Collector(List<TokenInfo> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            tokens.add(new TokenInfo(TokenTypeRegistry.get(typeId), start, end));
+        }
+    }
+}
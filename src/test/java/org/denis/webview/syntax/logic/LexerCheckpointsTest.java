@@ -0,0 +1,90 @@
+package org.denis.webview.syntax.logic;
+
+import org.denis.webview.config.SourceType;
+import org.denis.webview.settings.Settings;
+import org.denis.webview.syntax.logic.java.JavaLexer;
+import org.denis.webview.util.io.SymbolCountingReader;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class LexerCheckpointsTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveInterval() {
+        new LexerCheckpoints(0);
+    }
+
+    @Test
+    public void container() {
+        LexerCheckpoints checkpoints = new LexerCheckpoints(10);
+        for (int i = 1; i <= 100; i++) {
+            checkpoints.add(i * 100, i % 3);
+        }
+        assertEquals(100, checkpoints.size());
+        assertEquals(500, checkpoints.getOffset(4));
+        assertEquals(2, checkpoints.getState(4));
+        assertEquals(50, checkpoints.getLine(4));
+
+        assertEquals(-1, checkpoints.find(99));
+        assertEquals(0, checkpoints.find(100));
+        assertEquals(0, checkpoints.find(199));
+        assertEquals(4, checkpoints.find(500));
+        assertEquals(99, checkpoints.find(Integer.MAX_VALUE));
+
+        checkpoints.truncate(550);
+        assertEquals(5, checkpoints.size());
+        checkpoints.clear();
+        assertEquals(0, checkpoints.size());
+        assertEquals(-1, checkpoints.find(100));
+    }
+
+    @Test
+    public void highlighting() throws Exception {
+        HighlighterProvider provider = new HighlighterProvider();
+        provider.init();
+        Settings settings = new Settings();
+        settings.setSourceType(SourceType.JAVA);
+        provider.setSettings(settings);
+
+        String text = "class A {\n"
+                      + "  /*\n"
+                      + "  */\n"
+                      + "  String s = \"a\\\n"
+                      + "b\"; // c\n"
+                      + "  /** doc\n"
+                      + "   * @see B\n"
+                      + "   */\n"
+                      + "  @Deprecated\n"
+                      + "  void f() {}\n"
+                      + "}\n";
+        int[] expectedStates = {
+            JavaLexer.YYINITIAL, JavaLexer.MULTI_LINE_COMMENT, JavaLexer.YYINITIAL, JavaLexer.STRING,
+            JavaLexer.YYINITIAL, JavaLexer.DOC_TAG_AWARE_COMMENT, JavaLexer.DOC_TAG_AWARE_COMMENT,
+            JavaLexer.YYINITIAL, JavaLexer.YYINITIAL, JavaLexer.YYINITIAL, JavaLexer.YYINITIAL
+        };
+        LexerCheckpoints checkpoints = new LexerCheckpoints(1);
+        provider.getHighlighter().process(new SymbolCountingReader(new StringReader(text)), checkpoints);
+        assertEquals(expectedStates.length, checkpoints.size());
+        for (int i = 0; i < checkpoints.size(); i++) {
+            assertEquals('\n', text.charAt(checkpoints.getOffset(i) - 1));
+            assertEquals(String.valueOf(i), expectedStates[i], checkpoints.getState(i));
+        }
+
+        // Checkpoints are recorded only every N lines.
+        LexerCheckpoints sparse = new LexerCheckpoints(3);
+        provider.getHighlighter().process(new SymbolCountingReader(new StringReader(text)), sparse);
+        assertEquals(3, sparse.size());
+        for (int i = 0; i < sparse.size(); i++) {
+            assertEquals(checkpoints.getOffset(i * 3 + 2), sparse.getOffset(i));
+            assertEquals(checkpoints.getState(i * 3 + 2), sparse.getState(i));
+            assertEquals(i * 3 + 3, sparse.getLine(i));
+        }
+    }
+}
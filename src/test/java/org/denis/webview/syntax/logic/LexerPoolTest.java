@@ -0,0 +1,107 @@
+package org.denis.webview.syntax.logic;
+
+import org.denis.webview.syntax.logic.java.JavaLexerFactory;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class LexerPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveCapacity() {
+        new LexerPool(new JavaLexerFactory(), 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullFactory() {
+        new LexerPool(null, 1, 0);
+    }
+
+    @Test
+    public void reuse() throws Exception {
+        LexerPool pool = new LexerPool(new JavaLexerFactory(), 2, 0);
+        String text = "/* a */ class A { String s = \"a\"; }";
+
+        Lexer lexer = pool.acquire(new StringReader(text));
+        List<TokenInfo> expected = lexAll(lexer);
+        pool.release(lexer);
+        assertEquals(0, pool.getHitsNumber());
+        assertEquals(1, pool.getMissesNumber());
+
+        // Lexer finishes in the middle of the multi-line comment.
+        Lexer reused = pool.acquire(new StringReader("/* unfinished"));
+        assertSame(lexer, reused);
+        lexAll(reused);
+        pool.release(reused);
+
+        reused = pool.acquire(new StringReader(text));
+        assertSame(lexer, reused);
+        assertEquals(expected, lexAll(reused));
+        pool.release(reused);
+
+        assertEquals(2, pool.getHitsNumber());
+        assertEquals(1, pool.getMissesNumber());
+        assertEquals(2.0 / 3, pool.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void exhaustedPool() throws Exception {
+        LexerPool pool = new LexerPool(new JavaLexerFactory(), 1, 10);
+        Lexer lexer1 = pool.acquire(new StringReader(""));
+        Lexer lexer2 = pool.acquire(new StringReader(""));
+        assertNotSame(lexer1, lexer2);
+        assertEquals(1, pool.getWaitsNumber());
+        assertTrue(pool.getWaitTimeNanos() > 0);
+        assertEquals(2, pool.getMissesNumber());
+
+        // Only one lexer is kept.
+        pool.release(lexer1);
+        pool.release(lexer2);
+        assertSame(lexer1, pool.acquire(new StringReader("")));
+        assertEquals(1, pool.getHitsNumber());
+    }
+
+    @Test
+    public void waitForReleasedLexer() throws Exception {
+        final LexerPool pool = new LexerPool(new JavaLexerFactory(), 1, 10000);
+        final Lexer lexer = pool.acquire(new StringReader(""));
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                pool.release(lexer);
+            }
+        };
+        thread.start();
+        assertSame(lexer, pool.acquire(new StringReader("")));
+        thread.join();
+        assertEquals(1, pool.getWaitsNumber());
+        assertEquals(1, pool.getHitsNumber());
+    }
+
+    private static List<TokenInfo> lexAll(Lexer lexer) throws Exception {
+        final List<TokenInfo> result = new ArrayList<TokenInfo>();
+        lexer.lex(new TokenSink() {
+            @Override
+            public void onToken(int typeId, int start, int end) {
+                result.add(new TokenInfo(TokenTypeRegistry.get(typeId), start, end));
+            }
+        }, null);
+        return result;
+    }
+}
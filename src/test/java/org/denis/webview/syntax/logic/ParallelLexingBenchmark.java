@@ -0,0 +1,68 @@
+package org.denis.webview.syntax.logic;
+
+import org.denis.webview.config.SourceType;
+import org.denis.webview.settings.Settings;
+import org.denis.webview.util.MicroBenchmark;
+import org.denis.webview.util.io.ChunkedCharBuffer;
+import org.denis.webview.util.io.SymbolCountingReader;
+
+import java.io.StringReader;
+
+/**
+ * Compares sequential and chunk-parallel {@link Highlighter#process(char[], int) processing} of the large
+ * in-memory text.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ParallelLexingBenchmark {
+
+    private static final int TEXT_LENGTH = 5 * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        HighlighterProvider provider = new HighlighterProvider(parallelism);
+        provider.init();
+        Settings settings = new Settings();
+        settings.setSourceType(SourceType.JAVA);
+        provider.setSettings(settings);
+
+        StringBuilder buffer = new StringBuilder();
+        while (buffer.length() < TEXT_LENGTH) {
+            buffer.append("/**\n * Javadoc with {@link A tag}.\n */\npublic class A extends B { // comment\n")
+                  .append("    private final String s = \"a\\\"b\"; /* multi\n line */ int i = 0; }\n");
+        }
+        final ChunkedCharBuffer text = new ChunkedCharBuffer();
+        text.append(new StringReader(buffer.toString()));
+        final Highlighter highlighter = provider.getHighlighter();
+        final TokenCounter counter = new TokenCounter();
+        highlighter.addSink(counter);
+
+        System.out.println(String.format("%d symbols, %d processors", text.length(), parallelism));
+        MicroBenchmark.measure("sequential", 1, text.length(), new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                highlighter.process(new SymbolCountingReader(text.getReader()));
+                return counter.tokensNumber;
+            }
+        });
+        MicroBenchmark.measure("chunk-parallel", 1, text.length(), new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                highlighter.process(text);
+                return counter.tokensNumber;
+            }
+        });
+        provider.dispose();
+    }
+
+    private static class TokenCounter implements TokenSink {
+
+        public long tokensNumber;
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            tokensNumber++;
+        }
+    }
+}
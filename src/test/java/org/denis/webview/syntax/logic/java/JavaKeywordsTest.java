@@ -0,0 +1,42 @@
+package org.denis.webview.syntax.logic.java;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class JavaKeywordsTest {
+
+    @Test
+    public void keywords() {
+        String[] keywords = {
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+            "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+            "implements", "import", "instanceof", "int", "interface", "long", "native", "new", "null", "package",
+            "private", "protected", "public", "return", "short", "static", "strictfp", "super", "switch",
+            "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while"
+        };
+        for (String keyword : keywords) {
+            assertTrue(keyword, JavaKeywords.isKeyword(keyword));
+        }
+    }
+
+    @Test
+    public void nonKeywords() {
+        String[] identifiers = { "x", "Int", "classes", "nul", "true", "false", "String", "synchronize", "_do", "$if" };
+        for (String identifier : identifiers) {
+            assertFalse(identifier, JavaKeywords.isKeyword(identifier));
+        }
+    }
+
+    @Test
+    public void bufferRegion() {
+        char[] buffer = "a.class;".toCharArray();
+        assertTrue(JavaKeywords.isKeyword(buffer, 2, 5));
+        assertFalse(JavaKeywords.isKeyword(buffer, 2, 4));
+    }
+}
@@ -0,0 +1,80 @@
+package org.denis.webview.syntax.logic.java;
+
+import org.denis.webview.syntax.logic.TokenSink;
+import org.denis.webview.util.MicroBenchmark;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Measures {@link JavaLexer} class initialization time (its DFA tables are unpacked there) and lexing throughput.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class JavaLexerBenchmark {
+
+    private static final int TEXT_LENGTH = 1024 * 1024;
+
+    /**
+     * @param args      <code>'init'</code> to measure only class initialization time (makes sense only at the
+     *                  fresh VM); both class initialization and throughput are measured otherwise
+     * @throws Exception    in case of unexpected exception during the processing
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        Class.forName(JavaLexer.class.getName(), true, JavaLexerBenchmark.class.getClassLoader());
+        System.out.println(String.format(Locale.US, "%-50s %12.1f us", "class init", (System.nanoTime() - start) / 1000.0));
+        if (args.length > 0 && "init".equals(args[0])) {
+            return;
+        }
+
+        StringBuilder buffer = new StringBuilder();
+        while (buffer.length() < TEXT_LENGTH) {
+            buffer.append("/**\n * Javadoc with {@link A tag}.\n */\npublic class A extends B implements C {\n")
+                  .append("    private static final String s = \"a\\\"b\"; // comment\n")
+                  .append("    public synchronized void doSomething(int i, final long value) throws Exception {\n")
+                  .append("        if (value instanceof Number && i > 0) { return; } else { count = this.i + 1; }\n")
+                  .append("        for (int j = 0; j < i; j++) { list.add(new ArrayList<String>(j)); }\n")
+                  .append("    }\n}\n");
+        }
+        measure("lexing, code", buffer.toString().toCharArray());
+
+        // License headers, big javadocs and string constants.
+        buffer.setLength(0);
+        while (buffer.length() < TEXT_LENGTH) {
+            buffer.append("/*\n * Licensed under the Apache License, Version 2.0 (the \"License\"); you may not use\n")
+                  .append(" * this file except in compliance with the License. You may obtain a copy of the License\n")
+                  .append(" * at http://www.apache.org/licenses/LICENSE-2.0\n */\n")
+                  .append("/**\n * Processes given data and returns the result of the processing. Note that\n")
+                  .append(" * the data is expected to be sorted by the <code>key</code> property.\n */\n")
+                  .append("String MESSAGE = \"Can't process the data. Reason: the data is not sorted by the key\";\n")
+                  .append("// Single line comment which describes the code below in some details.\n");
+        }
+        measure("lexing, comments and strings", buffer.toString().toCharArray());
+    }
+
+    private static void measure(String name, final char[] text) throws Exception {
+        final JavaLexer lexer = new JavaLexer((Reader) null);
+        final TokenCounter counter = new TokenCounter();
+        MicroBenchmark.measure(name, 5, text.length, new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                lexer.yyreset(new CharArrayReader(text));
+                lexer.lex(counter, null);
+                return counter.tokensNumber;
+            }
+        });
+    }
+
+    private static class TokenCounter implements TokenSink {
+
+        public long tokensNumber;
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            tokensNumber++;
+        }
+    }
+}
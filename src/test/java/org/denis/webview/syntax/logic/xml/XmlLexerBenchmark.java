@@ -0,0 +1,71 @@
+package org.denis.webview.syntax.logic.xml;
+
+import org.denis.webview.syntax.logic.Lexer;
+import org.denis.webview.syntax.logic.TokenSink;
+import org.denis.webview.syntax.logic.java.JavaLexer;
+import org.denis.webview.util.MicroBenchmark;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+
+/**
+ * Compares {@link XmlLexer} throughput on a maven pom-like text with {@link JavaLexer} throughput on the java text
+ * of the same length.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class XmlLexerBenchmark {
+
+    private static final int TEXT_LENGTH = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder buffer = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\"\n")
+            .append("         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+        while (buffer.length() < TEXT_LENGTH) {
+            buffer.append("    <!-- Dependency that is used by the module &amp; its tests. -->\n")
+                  .append("    <dependency scope=\"test\" optional='false'>\n")
+                  .append("        <groupId>org.springframework</groupId>\n")
+                  .append("        <artifactId>spring-webmvc</artifactId>\n")
+                  .append("        <version>${spring.version}</version>\n")
+                  .append("        <description><![CDATA[Web <b>MVC</b> framework]]></description>\n")
+                  .append("    </dependency>\n");
+        }
+        buffer.append("</project>\n");
+        measure("xml lexer", new XmlLexer((Reader) null), buffer.toString().toCharArray());
+
+        buffer.setLength(0);
+        while (buffer.length() < TEXT_LENGTH) {
+            buffer.append("/**\n * Javadoc with {@link A tag}.\n */\npublic class A extends B implements C {\n")
+                  .append("    private static final String s = \"a\\\"b\"; // comment\n")
+                  .append("    public synchronized void doSomething(int i, final long value) throws Exception {\n")
+                  .append("        if (value instanceof Number && i > 0) { return; } else { count = this.i + 1; }\n")
+                  .append("        for (int j = 0; j < i; j++) { list.add(new ArrayList<String>(j)); }\n")
+                  .append("    }\n}\n");
+        }
+        measure("java lexer", new JavaLexer((Reader) null), buffer.toString().toCharArray());
+    }
+
+    private static void measure(String name, final Lexer lexer, final char[] text) throws Exception {
+        final TokenCounter counter = new TokenCounter();
+        MicroBenchmark.measure(name, 5, text.length, new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                lexer.yyreset(new CharArrayReader(text));
+                lexer.lex(counter, null);
+                return counter.tokensNumber;
+            }
+        });
+    }
+
+    private static class TokenCounter implements TokenSink {
+
+        public long tokensNumber;
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            tokensNumber++;
+        }
+    }
+}
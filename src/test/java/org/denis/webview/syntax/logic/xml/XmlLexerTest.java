@@ -0,0 +1,118 @@
+package org.denis.webview.syntax.logic.xml;
+
+import org.denis.webview.syntax.logic.TokenInfo;
+import org.denis.webview.syntax.logic.TokenSink;
+import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.logic.TokenTypeRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class XmlLexerTest {
+
+    private static final int SECTION_LENGTH = 8 * 1024 * 1024;
+
+    @Test
+    public void longComment() throws Exception {
+        doTestBoundedMemory("<!--", '-', "-->", XmlTokenType.COMMENT_START, 0, 3);
+    }
+
+    @Test
+    public void longCdata() throws Exception {
+        doTestBoundedMemory("<![CDATA[", ']', "]]>", XmlTokenType.CDATA_START, 0, 3);
+    }
+
+    @Test
+    public void longAttributeValue() throws Exception {
+        doTestBoundedMemory("<a b=\"", 'x', "\"/>", XmlTokenType.ATTRIBUTE_VALUE_START, 5, 1);
+    }
+
+    /**
+     * Lexes a section with the long body that consists of the given symbol and checks that the section is recognized
+     * and the lexer buffer is not grown.
+     *
+     * @param sectionStart      expected offset of the section start token (it ends at the body start)
+     * @param sectionEndLength  expected length of the section end token (it starts at the body end)
+     */
+    private static void doTestBoundedMemory(String prefix, char bodySymbol, String suffix, TokenType sectionType,
+                                            int sectionStart, int sectionEndLength)
+        throws Exception
+    {
+        XmlLexer lexer = new XmlLexer((Reader) null);
+        int initialBufferLength = getBufferLength(lexer);
+        lexer.yyreset(new SectionReader(prefix, bodySymbol, suffix));
+        final List<TokenInfo> tokens = new ArrayList<TokenInfo>();
+        lexer.lex(new TokenSink() {
+            @Override
+            public void onToken(int typeId, int start, int end) {
+                tokens.add(new TokenInfo(TokenTypeRegistry.get(typeId), start, end));
+            }
+        }, null);
+
+        int bodyEnd = prefix.length() + SECTION_LENGTH;
+        assertTrue(tokens.contains(new TokenInfo(sectionType, sectionStart, prefix.length())));
+        assertTrue(tokens.contains(new TokenInfo(TokenType.END_TOKEN, bodyEnd, bodyEnd + sectionEndLength)));
+        assertEquals(initialBufferLength, getBufferLength(lexer));
+    }
+
+    private static int getBufferLength(XmlLexer lexer) throws Exception {
+        Field field = XmlLexer.class.getDeclaredField("zzBuffer");
+        field.setAccessible(true);
+        return ((char[]) field.get(lexer)).length;
+    }
+
+    /** Streams the text like 'prefix + body + suffix' without keeping it in memory. */
+    private static class SectionReader extends Reader {
+
+        private final String prefix;
+        private final char   bodySymbol;
+        private final String suffix;
+        private final int    length;
+
+        private int position;
+
+        SectionReader(String prefix, char bodySymbol, String suffix) {
+            this.prefix = prefix;
+            this.bodySymbol = bodySymbol;
+            this.suffix = suffix;
+            length = prefix.length() + SECTION_LENGTH + suffix.length();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (position >= this.length) {
+                return -1;
+            }
+            int result = Math.min(length, this.length - position);
+            int bodyStart = prefix.length();
+            int bodyEnd = bodyStart + SECTION_LENGTH;
+            Arrays.fill(buffer, offset, offset + result, bodySymbol);
+            for (int i = 0; i < result; i++) {
+                int j = position + i;
+                if (j < bodyStart) {
+                    buffer[offset + i] = prefix.charAt(j);
+                } else if (j >= bodyEnd) {
+                    buffer[offset + i] = suffix.charAt(j - bodyEnd);
+                }
+            }
+            position += result;
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.denis.webview.syntax.output;
+
+import org.apache.velocity.io.VelocityWriter;
+import org.denis.webview.syntax.logic.TokenSink;
+import org.denis.webview.syntax.logic.java.JavaLexer;
+import org.denis.webview.syntax.output.markup.MarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.InlineStyleMarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaJavaStyleScheme;
+import org.denis.webview.util.MicroBenchmark;
+
+import java.io.CharArrayReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Compares {@link OutputProcessor} throughput when it writes to the <code>UTF-8</code> writer and when it writes
+ * <code>UTF-8</code> bytes to the stream directly. Tokens are discovered once before the measurement, i.e. only the
+ * output is measured.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class OutputProcessorBenchmark {
+
+    private static final int TEXT_LENGTH = 1024 * 1024;
+
+    private static final MarkupScheme MARKUP_SCHEME = new InlineStyleMarkupScheme(new IdeaJavaStyleScheme());
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder buffer = new StringBuilder();
+        while (buffer.length() < TEXT_LENGTH) {
+            buffer.append("/**\n * Javadoc with {@link A tag} and <code>html</code>.\n */\n")
+                  .append("public class A extends B implements C {\n")
+                  .append("    private static final String s = \"a\\\"b\"; // comment\n")
+                  .append("    public void doSomething(int i, final long value) throws Exception {\n")
+                  .append("        if (value < 10 && i > 0) { return; } else { count = this.i + 1; }\n")
+                  .append("    }\n}\n");
+        }
+        final char[] text = buffer.toString().toCharArray();
+        final TokenRecorder tokens = new TokenRecorder();
+        JavaLexer lexer = new JavaLexer((Reader) null);
+        lexer.yyreset(new CharArrayReader(text));
+        lexer.lex(tokens, null);
+
+        final CountingOutputStream out = new CountingOutputStream();
+        MicroBenchmark.measure("writer", 5, text.length, new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                Writer writer = new OutputStreamWriter(out, "UTF-8");
+                OutputProcessor outputProcessor = new OutputProcessor(writer, MARKUP_SCHEME);
+                tokens.replay(text, outputProcessor);
+                outputProcessor.flush();
+                return out.bytesNumber;
+            }
+        });
+        MicroBenchmark.measure("velocity writer", 5, text.length, new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                Writer writer = new VelocityWriter(new OutputStreamWriter(out, "UTF-8"));
+                OutputProcessor outputProcessor = new OutputProcessor(writer, MARKUP_SCHEME);
+                tokens.replay(text, outputProcessor);
+                outputProcessor.flush();
+                return out.bytesNumber;
+            }
+        });
+        MicroBenchmark.measure("stream", 5, text.length, new MicroBenchmark.Task() {
+            @Override
+            public long run() throws Exception {
+                OutputProcessor outputProcessor = new OutputProcessor(out, MARKUP_SCHEME);
+                tokens.replay(text, outputProcessor);
+                outputProcessor.flush();
+                return out.bytesNumber;
+            }
+        });
+    }
+
+    private static class TokenRecorder implements TokenSink {
+
+        private int[] tokens = new int[1024];
+        private int   size;
+
+        @Override
+        public void onToken(int typeId, int start, int end) {
+            if (size + 3 > tokens.length) {
+                int[] newTokens = new int[tokens.length * 2];
+                System.arraycopy(tokens, 0, newTokens, 0, size);
+                tokens = newTokens;
+            }
+            tokens[size++] = typeId;
+            tokens[size++] = start;
+            tokens[size++] = end;
+        }
+
+        public void replay(char[] text, OutputProcessor outputProcessor) {
+            TextOutputSink sink = new TextOutputSink(text, 0, outputProcessor);
+            for (int i = 0; i < size; i += 3) {
+                sink.onToken(tokens[i], tokens[i + 1], tokens[i + 2]);
+            }
+            sink.finish(text.length);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        public long bytesNumber;
+
+        @Override
+        public void write(int b) {
+            bytesNumber++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytesNumber += len;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.denis.webview.syntax.output;
+
+import org.denis.webview.config.Profile;
+import org.denis.webview.syntax.logic.TokenType;
+import org.denis.webview.syntax.logic.java.JavaTokenType;
+import org.denis.webview.syntax.output.markup.MarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.InlineStyleMarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.StyleRule;
+import org.denis.webview.syntax.output.markup.inline.StyleSchemeImpl;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaJavaStyleScheme;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class OutputProcessorTest {
+
+    private static final MarkupScheme MARKUP_SCHEME = new InlineStyleMarkupScheme(new IdeaJavaStyleScheme());
+
+    @Test
+    public void ascii() throws Exception {
+        doTest("if (a < b && c > d) {}", (TokenType) null);
+        doTest("class", JavaTokenType.KEYWORD);
+        doTest("\"<>\"", JavaTokenType.STRING_LITERAL_START, TokenType.END_TOKEN);
+    }
+
+    @Test
+    public void escaping() throws Exception {
+        StringBuilder text = new StringBuilder("<");
+        StringBuilder expected = new StringBuilder("&lt;");
+        for (int i = 0; i < 20000; i++) {
+            text.append(i % 1000 == 0 ? '&' : 'a');
+            expected.append(i % 1000 == 0 ? "&amp;" : "a");
+        }
+        text.append(">");
+        expected.append("&gt;");
+
+        StringWriter writer = new StringWriter();
+        OutputProcessor outputProcessor = new OutputProcessor(writer, MARKUP_SCHEME);
+        outputProcessor.write(text.toString().toCharArray(), 0, text.length(), null);
+        outputProcessor.flush();
+        assertEquals(expected.toString(), writer.toString());
+    }
+
+    @Test
+    public void nonAscii() throws Exception {
+        doTest("\u00e9t\u00e9 \u043f\u0440\u0438\u0432\u0435\u0442 \u4e2d\u6587 <\u20ac>", null,
+               JavaTokenType.STRING_LITERAL_START, TokenType.END_LOOK_AHEAD_TOKEN);
+    }
+
+    @Test
+    public void surrogatePairs() throws Exception {
+        // Every fragment boundary splits a surrogate pair.
+        doTest("a\ud83d\ude00b", null, null);
+        doTest("<\ud83d\ude00>", JavaTokenType.STRING_LITERAL_START, TokenType.END_TOKEN);
+    }
+
+    @Test
+    public void malformedSurrogates() throws Exception {
+        doTest("a\ude00b\ud83dc\ud83d&\ud83d", null, null, JavaTokenType.KEYWORD);
+    }
+
+    @Test
+    public void trailingHighSurrogate() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write("a\ud83d", new OutputProcessor(out, MARKUP_SCHEME), (TokenType) null);
+        assertEquals("a?", new String(out.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void longText() throws Exception {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            buffer.append(i % 7 == 0 ? "\u043f<" : "text & more ");
+        }
+        doTest(buffer.toString(), null, JavaTokenType.KEYWORD);
+    }
+
+    @Test
+    public void mergeSpans() throws Exception {
+        assertEquals("<span style=\"font-weight:bold;\">public static final</span> int",
+                     doTestMerge(true, "public", JavaTokenType.KEYWORD, " ", null, "static", JavaTokenType.KEYWORD,
+                                 " ", null, "final", JavaTokenType.KEYWORD, " int", null));
+        // Different token types with the same markup.
+        assertEquals("<span style=\"font-weight:bold;\">a'b'</span>",
+                     doTestMerge(true, "a", JavaTokenType.KEYWORD, "'b'", JavaTokenType.CHAR_LITERAL));
+        assertEquals("<span style=\"font-weight:bold;\">a</span>\n<span style=\"font-weight:bold;\">b</span>",
+                     doTestMerge(true, "a", JavaTokenType.KEYWORD, "\n", null, "b", JavaTokenType.KEYWORD));
+        assertEquals("<span style=\"font-weight:bold;\">a</span> <span style=\"font-weight:bold;\">b</span>",
+                     doTestMerge(false, "a", JavaTokenType.KEYWORD, " ", null, "b", JavaTokenType.KEYWORD));
+    }
+
+    @Test
+    public void mergeWhiteSpaceVisibleSpans() throws Exception {
+        assertEquals("<span style=\"text-decoration:underline;\">@a@b</span>",
+                     doTestMerge(true, "@a", JavaTokenType.JAVADOC_TAG_START, "", TokenType.END_LOOK_AHEAD_TOKEN,
+                                 "@b", JavaTokenType.JAVADOC_TAG_START, "", TokenType.END_LOOK_AHEAD_TOKEN));
+        assertEquals("<span style=\"text-decoration:underline;\">@a</span> "
+                     + "<span style=\"text-decoration:underline;\">@b</span>",
+                     doTestMerge(true, "@a", JavaTokenType.JAVADOC_TAG_START, "", TokenType.END_LOOK_AHEAD_TOKEN,
+                                 " ", null, "@b", JavaTokenType.JAVADOC_TAG_START, "", TokenType.END_LOOK_AHEAD_TOKEN));
+    }
+
+    @Test
+    public void mergeNestedSpans() throws Exception {
+        // Inner span is merged with the next one, outer span is closed after them.
+        assertEquals("<span style=\"font-style:italic;\">/* <span style=\"font-weight:bold;\">a b</span> */</span>",
+                     doTestMerge(true, "/*", JavaTokenType.MULTI_LINE_COMMENT_START, " ", null,
+                                 "a", JavaTokenType.KEYWORD, " ", null, "b", JavaTokenType.KEYWORD,
+                                 " ", null, "*/", TokenType.END_TOKEN));
+    }
+
+    /**
+     * Writes given fragments (pairs of text and token type) by the {@link OutputProcessor}.
+     *
+     * @return      written text
+     */
+    private static String doTestMerge(boolean mergeSpans, Object... fragments) throws IOException {
+        StyleSchemeImpl styleScheme = new StyleSchemeImpl(Profile.IDEA);
+        styleScheme.register(JavaTokenType.KEYWORD, StyleRule.BOLD);
+        styleScheme.register(JavaTokenType.CHAR_LITERAL, StyleRule.BOLD);
+        styleScheme.register(JavaTokenType.JAVADOC_TAG_START, StyleRule.UNDERLINE);
+        styleScheme.register(JavaTokenType.MULTI_LINE_COMMENT_START, StyleRule.ITALIC);
+
+        StringWriter writer = new StringWriter();
+        OutputProcessor outputProcessor = new OutputProcessor(writer, new InlineStyleMarkupScheme(styleScheme));
+        outputProcessor.setMergeSpans(mergeSpans);
+        for (int i = 0; i < fragments.length; i += 2) {
+            char[] text = ((String) fragments[i]).toCharArray();
+            outputProcessor.write(text, 0, text.length, (TokenType) fragments[i + 1]);
+        }
+        outputProcessor.flush();
+        return writer.toString();
+    }
+
+    /**
+     * Splits given text to the fragments of the given types (of equal length) and checks that the bytes written
+     * by the {@link OutputProcessor} to the stream are the same as the <code>UTF-8</code> bytes written by it to the
+     * writer.
+     */
+    private static void doTest(String text, TokenType... tokenTypes) throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(expected, "UTF-8");
+        write(text, new OutputProcessor(writer, MARKUP_SCHEME), tokenTypes);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        write(text, new OutputProcessor(actual, MARKUP_SCHEME), tokenTypes);
+
+        assertEquals(new String(expected.toByteArray(), "UTF-8"), new String(actual.toByteArray(), "UTF-8"));
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    private static void write(String text, OutputProcessor outputProcessor, TokenType... tokenTypes)
+        throws IOException
+    {
+        char[] data = text.toCharArray();
+        int length = (data.length + tokenTypes.length - 1) / tokenTypes.length;
+        for (int i = 0; i < tokenTypes.length; i++) {
+            int start = Math.min(data.length, i * length);
+            outputProcessor.write(data, start, Math.min(data.length, start + length), tokenTypes[i]);
+        }
+        outputProcessor.flush();
+    }
+}
@@ -0,0 +1,109 @@
+package org.denis.webview.syntax.output;
+
+import org.denis.webview.syntax.logic.Lexer;
+import org.denis.webview.syntax.logic.java.JavaLexer;
+import org.denis.webview.syntax.logic.xml.XmlLexer;
+import org.denis.webview.syntax.output.markup.MarkupScheme;
+import org.denis.webview.syntax.output.markup.css.ClassBasedMarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.InlineStyleMarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.StyleScheme;
+import org.denis.webview.syntax.output.markup.inline.eclipse.EclipseJavaStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.eclipse.EclipseXmlStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaJavaStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaXmlStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.netbeans.NetbeansJavaStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.netbeans.NetbeansXmlStyleScheme;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Reports how much output is saved by merging adjacent spans with the same markup (see
+ * {@link OutputProcessor#setMergeSpans(boolean)}) for every style scheme and markup type.
+ * <p/>
+ * The reference corpus is the current project sources, i.e. the report is expected to be started from the project
+ * root directory (another root may be given as the program argument).
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class SpanMergingReport {
+
+    public static void main(String[] args) throws Exception {
+        File root = new File(args.length > 0 ? args[0] : ".");
+        StringBuilder java = new StringBuilder();
+        StringBuilder xml = new StringBuilder();
+        collect(new File(root, "src"), java, xml);
+        collect(new File(root, "pom.xml"), java, xml);
+        System.out.println(String.format(Locale.US, "corpus: %d java symbols, %d xml symbols",
+                                         java.length(), xml.length()));
+
+        char[] javaText = java.toString().toCharArray();
+        char[] xmlText = xml.toString().toCharArray();
+        report(new IdeaJavaStyleScheme(), new JavaLexer((Reader) null), javaText);
+        report(new EclipseJavaStyleScheme(), new JavaLexer((Reader) null), javaText);
+        report(new NetbeansJavaStyleScheme(), new JavaLexer((Reader) null), javaText);
+        report(new IdeaXmlStyleScheme(), new XmlLexer((Reader) null), xmlText);
+        report(new EclipseXmlStyleScheme(), new XmlLexer((Reader) null), xmlText);
+        report(new NetbeansXmlStyleScheme(), new XmlLexer((Reader) null), xmlText);
+    }
+
+    private static void collect(File file, StringBuilder java, StringBuilder xml) throws Exception {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                collect(child, java, xml);
+            }
+            return;
+        }
+        StringBuilder buffer;
+        if (file.getName().endsWith(".java")) {
+            buffer = java;
+        } else if (file.getName().endsWith(".xml")) {
+            buffer = xml;
+        } else {
+            return;
+        }
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] chars = new char[8192];
+            for (int read = reader.read(chars); read >= 0; read = reader.read(chars)) {
+                buffer.append(chars, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void report(StyleScheme styleScheme, Lexer lexer, char[] text) throws Exception {
+        String name = styleScheme.getClass().getSimpleName();
+        report(name + ", inline", new InlineStyleMarkupScheme(styleScheme), lexer, text);
+        report(name + ", class-based", new ClassBasedMarkupScheme(styleScheme), lexer, text);
+    }
+
+    private static void report(String name, MarkupScheme markupScheme, Lexer lexer, char[] text) throws Exception {
+        long separate = render(markupScheme, lexer, text, false);
+        long merged = render(markupScheme, lexer, text, true);
+        System.out.println(String.format(Locale.US, "%-45s %10d -> %10d bytes (-%.1f%%)",
+                                         name, separate, merged, (separate - merged) * 100.0 / separate));
+    }
+
+    private static long render(MarkupScheme markupScheme, Lexer lexer, char[] text, boolean mergeSpans)
+        throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputProcessor outputProcessor = new OutputProcessor(out, markupScheme);
+        outputProcessor.setMergeSpans(mergeSpans);
+        TextOutputSink sink = new TextOutputSink(text, 0, outputProcessor);
+        lexer.yyreset(new CharArrayReader(text));
+        lexer.lex(sink, null);
+        sink.finish(text.length);
+        outputProcessor.flush();
+        return out.size();
+    }
+}
@@ -0,0 +1,58 @@
+package org.denis.webview.syntax.output.markup.css;
+
+import org.denis.webview.syntax.logic.java.JavaTokenType;
+import org.denis.webview.syntax.logic.xml.XmlTokenType;
+import org.denis.webview.syntax.output.markup.MarkupScheme;
+import org.denis.webview.syntax.output.markup.inline.eclipse.EclipseJavaStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaJavaStyleScheme;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ClassBasedMarkupSchemeTest {
+
+    @Test
+    public void markup() throws Exception {
+        ClassBasedMarkupScheme scheme = new ClassBasedMarkupScheme(new IdeaJavaStyleScheme());
+        String className = ClassBasedMarkupScheme.getClassName(JavaTokenType.KEYWORD);
+        assertArrayEquals(String.format("class=\"%s\"", className).toCharArray(),
+                          scheme.getMarkup(JavaTokenType.KEYWORD));
+        assertArrayEquals(String.format("class=\"%s\"", className).getBytes("UTF-8"),
+                          scheme.getEncodedMarkup(JavaTokenType.KEYWORD));
+
+        // Not styled at the Eclipse scheme.
+        assertSame(MarkupScheme.EMPTY_MARKUP, new ClassBasedMarkupScheme(new EclipseJavaStyleScheme())
+            .getMarkup(JavaTokenType.TODO_COMMENT_START));
+    }
+
+    @Test
+    public void classNames() {
+        assertEquals("java-keyword", ClassBasedMarkupScheme.getClassName(JavaTokenType.KEYWORD));
+        assertEquals("java-string-literal-start",
+                     ClassBasedMarkupScheme.getClassName(JavaTokenType.STRING_LITERAL_START));
+        assertEquals("xml-tag-start", ClassBasedMarkupScheme.getClassName(XmlTokenType.TAG_START));
+    }
+
+    @Test
+    public void stylesheet() {
+        ClassBasedMarkupScheme scheme = new ClassBasedMarkupScheme(new IdeaJavaStyleScheme());
+        String rule = String.format(".%s{color:#000080;font-weight:bold;}\n",
+                                    ClassBasedMarkupScheme.getClassName(JavaTokenType.KEYWORD));
+        assertTrue(scheme.getStylesheet(), scheme.getStylesheet().contains(rule));
+    }
+
+    @Test
+    public void version() {
+        ClassBasedMarkupScheme idea = new ClassBasedMarkupScheme(new IdeaJavaStyleScheme());
+        assertEquals(idea.getVersion(), new ClassBasedMarkupScheme(new IdeaJavaStyleScheme()).getVersion());
+        assertFalse(idea.getVersion().equals(new ClassBasedMarkupScheme(new EclipseJavaStyleScheme()).getVersion()));
+    }
+}
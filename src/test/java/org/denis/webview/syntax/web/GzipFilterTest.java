@@ -0,0 +1,117 @@
+package org.denis.webview.syntax.web;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class GzipFilterTest {
+
+    private static final String CONTENT = "<span style=\"color:#000080;font-weight:bold;\">класс</span>";
+
+    private Mockery             mockery;
+    private HttpServletRequest  request;
+    private HttpServletResponse response;
+    private GzipFilter          filter;
+
+    @Before
+    public void setUp() {
+        mockery = new JUnit4Mockery();
+        request = mockery.mock(HttpServletRequest.class);
+        response = mockery.mock(HttpServletResponse.class);
+        filter = new GzipFilter();
+    }
+
+    @Test
+    public void acceptsGzip() {
+        assertTrue(GzipFilter.acceptsGzip("gzip"));
+        assertTrue(GzipFilter.acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(GzipFilter.acceptsGzip("X-GZIP"));
+        assertTrue(GzipFilter.acceptsGzip("*"));
+        assertFalse(GzipFilter.acceptsGzip(null));
+        assertFalse(GzipFilter.acceptsGzip("identity, deflate"));
+        assertFalse(GzipFilter.acceptsGzip("gzip;q=0"));
+        assertFalse(GzipFilter.acceptsGzip("gzip; q=0.0, br"));
+    }
+
+    @Test
+    public void compressed() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mockery.checking(new Expectations() {{
+            allowing(request).getHeader("Accept-Encoding"); will(returnValue("gzip, deflate"));
+            allowing(response).getCharacterEncoding(); will(returnValue("UTF-8"));
+            allowing(response).getOutputStream(); will(returnValue(new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                }
+            }));
+            one(response).addHeader("Vary", "Accept-Encoding");
+            one(response).setHeader("Content-Encoding", "gzip");
+            never(response).setContentLength(with(any(int.class)));
+        }});
+
+        filter.doFilter(request, response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                response.setContentLength(CONTENT.length());
+                PrintWriter writer = response.getWriter();
+                writer.write(CONTENT);
+                writer.flush();
+            }
+        });
+
+        mockery.assertIsSatisfied();
+        assertEquals(CONTENT, gunzip(out.toByteArray()));
+        assertEquals((double) CONTENT.getBytes("UTF-8").length / out.size(), filter.getCompressionRatio(), 1e-9);
+    }
+
+    @Test
+    public void notAccepted() throws Exception {
+        mockery.checking(new Expectations() {{
+            allowing(request).getHeader("Accept-Encoding"); will(returnValue("identity"));
+        }});
+        filter.doFilter(request, response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                assertSame(GzipFilterTest.this.response, response);
+            }
+        });
+        mockery.assertIsSatisfied();
+        assertEquals(0, filter.getCompressionRatio(), 0);
+    }
+
+    private static String gunzip(byte[] data) throws Exception {
+        Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(data)), "UTF-8");
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[1024];
+        for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+            result.append(buffer, 0, read);
+        }
+        return result.toString();
+    }
+}
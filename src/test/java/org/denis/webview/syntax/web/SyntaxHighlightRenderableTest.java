@@ -0,0 +1,132 @@
+package org.denis.webview.syntax.web;
+
+import org.denis.webview.settings.Settings;
+import org.denis.webview.syntax.logic.HighlighterProvider;
+import org.denis.webview.syntax.output.markup.MarkupSchemeProvider;
+import org.denis.webview.syntax.output.markup.inline.StyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaJavaStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaXmlStyleScheme;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.net.URLEncoder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class SyntaxHighlightRenderableTest {
+
+    private HighlighterProvider highlighterProvider;
+
+    @Before
+    public void setUp() {
+        highlighterProvider = new HighlighterProvider();
+        highlighterProvider.init();
+    }
+
+    @After
+    public void tearDown() {
+        highlighterProvider.dispose();
+    }
+
+    @Test
+    public void streamedSource() throws Exception {
+        doTest("language=java&profile=idea&markup=inline&source=", 1000, "");
+    }
+
+    @Test
+    public void bufferedSource() throws Exception {
+        doTest("source=", 1000, "&language=java");
+        doTest("language=java&source=", 1000, "");
+    }
+
+    @Test
+    public void tooLongBufferedSource() throws Exception {
+        // The source is not rejected but streamed after the buffered symbols.
+        doTest("language=java&source=", SyntaxHighlightRenderable.MAX_BUFFERED_SOURCE_LENGTH + 1000, "&profile=idea");
+        doTest("language=java&source=", SyntaxHighlightRenderable.MAX_BUFFERED_SOURCE_LENGTH, "");
+    }
+
+    @Test
+    public void spooledRawSource() throws Exception {
+        highlighterProvider.dispose();
+        highlighterProvider = new HighlighterProvider(4);
+        highlighterProvider.init();
+        StringBuilder source = new StringBuilder();
+        while (source.length() < HighlighterProvider.PARALLEL_THRESHOLD * 2) {
+            source.append("/** Doc */\npublic class A {\n    String s = \"a<b\"; // TODO\n}\n");
+        }
+        byte[] body = source.toString().getBytes("UTF-8");
+
+        // Content length is unknown, streamed.
+        SyntaxHighlightRenderable renderable = createRenderable("language=java");
+        renderable.prepareRaw(new ByteArrayInputStream(body), null, -1);
+        String expected = render(renderable);
+
+        // Spooled and lexed concurrently.
+        renderable = createRenderable("language=java");
+        renderable.prepareRaw(new ByteArrayInputStream(body), null, body.length);
+        assertEquals(expected, render(renderable));
+    }
+
+    /**
+     * Renders form data that contains the source of the given length between the given prefix and suffix and checks
+     * that the whole source is rendered.
+     */
+    private void doTest(String prefix, int sourceLength, String suffix) throws Exception {
+        String body = prefix + URLEncoder.encode(createSource(sourceLength), "UTF-8") + suffix;
+        SyntaxHighlightRenderable renderable = createRenderable("");
+        renderable.prepare(new ByteArrayInputStream(body.getBytes("UTF-8")));
+        assertEquals(sourceLength, render(renderable).length());
+    }
+
+    /**
+     * @return      source of the given length that contains lines of identifier symbols
+     */
+    private static String createSource(int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(i % 64 == 63 ? '\n' : 'x');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Creates renderable with the new settings as they are request-scoped.
+     *
+     * @param querySettings     settings to apply at the query string format
+     */
+    private SyntaxHighlightRenderable createRenderable(String querySettings) {
+        Settings settings = new Settings();
+        for (String setting : querySettings.split("&")) {
+            String[] parts = setting.split("=");
+            if (parts.length == 2) {
+                settings.setSetting(parts[0], parts[1]);
+            }
+        }
+        highlighterProvider.setSettings(settings);
+        MarkupSchemeProvider markupSchemeProvider = new MarkupSchemeProvider();
+        markupSchemeProvider.setSettings(settings);
+        markupSchemeProvider.initInlineMarkup(Arrays.<StyleScheme>asList(
+            new IdeaJavaStyleScheme(), new IdeaXmlStyleScheme()
+        ));
+        SyntaxHighlightRenderable renderable = new SyntaxHighlightRenderable();
+        renderable.setSettings(settings);
+        renderable.setHighlighterProvider(highlighterProvider);
+        renderable.setMarkupSchemeProvider(markupSchemeProvider);
+        return renderable;
+    }
+
+    private static String render(SyntaxHighlightRenderable renderable) throws Exception {
+        StringWriter writer = new StringWriter();
+        renderable.render(null, writer);
+        return writer.toString();
+    }
+}
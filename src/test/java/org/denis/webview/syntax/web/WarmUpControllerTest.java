@@ -0,0 +1,78 @@
+package org.denis.webview.syntax.web;
+
+import org.denis.webview.config.MarkupType;
+import org.denis.webview.config.Profile;
+import org.denis.webview.config.SourceType;
+import org.denis.webview.settings.Settings;
+import org.denis.webview.syntax.logic.HighlighterProvider;
+import org.denis.webview.syntax.output.markup.MarkupSchemeProvider;
+import org.denis.webview.syntax.output.markup.inline.StyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaJavaStyleScheme;
+import org.denis.webview.syntax.output.markup.inline.idea.IdeaXmlStyleScheme;
+import org.denis.webview.view.CommonViewHelper;
+import org.denis.webview.view.ViewType;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Test;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class WarmUpControllerTest {
+
+    @Test
+    public void warmUp() throws Exception {
+        Settings settings = new Settings();
+        HighlighterProvider highlighterProvider = new HighlighterProvider();
+        highlighterProvider.setSettings(settings);
+        highlighterProvider.init();
+        MarkupSchemeProvider markupSchemeProvider = new MarkupSchemeProvider();
+        markupSchemeProvider.setSettings(settings);
+        markupSchemeProvider.initInlineMarkup(Arrays.<StyleScheme>asList(
+            new IdeaJavaStyleScheme(), new IdeaXmlStyleScheme()
+        ));
+        SyntaxHighlightRenderable renderable = new SyntaxHighlightRenderable();
+        renderable.setSettings(settings);
+        renderable.setHighlighterProvider(highlighterProvider);
+        renderable.setMarkupSchemeProvider(markupSchemeProvider);
+        CommonViewHelper viewHelper = new CommonViewHelper();
+        viewHelper.setSettings(settings);
+        Map<ViewType, String> templates = new HashMap<ViewType, String>();
+        templates.put(ViewType.SYNTAX, "syntax/%s.vm");
+        viewHelper.setViewTypeTemplates(templates);
+
+        WarmUpController controller = new WarmUpController();
+        controller.setRenderable(renderable);
+        controller.setViewHelper(viewHelper);
+        assertFalse(controller.isReady());
+        assertNull(controller.getReport());
+
+        // Attributes of the warm-up request are kept.
+        RequestAttributes requestAttributes = new JUnit4Mockery().mock(RequestAttributes.class);
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        try {
+            controller.warmUp();
+            assertSame(requestAttributes, RequestContextHolder.getRequestAttributes());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        assertTrue(controller.isReady());
+        String report = controller.getReport();
+        assertEquals(SourceType.values().length * Profile.values().length * MarkupType.values().length,
+                     report.split("\n").length);
+        assertTrue(report, report.contains("xml/eclipse/class-based: first pass "));
+        highlighterProvider.dispose();
+    }
+}
@@ -0,0 +1,73 @@
+package org.denis.webview.util;
+
+import java.util.Locale;
+
+/**
+ * Minimal harness for the micro-benchmarks that are kept at the test sources.
+ * <p/>
+ * Benchmarks are plain classes with <code>main()</code> method (they are not picked by the test runner), they
+ * are expected to be started manually from IDE or via <code>'mvn exec:java'</code>
+ * with <code>'-Dexec.classpathScope=test'</code>.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class MicroBenchmark {
+
+    private static final int WARM_UP_ROUNDS      = 5;
+    private static final int MEASUREMENT_ROUNDS  = 10;
+    
+    /** Used to prevent dead code elimination of the benchmarked code. */
+    public static volatile long blackHole;
+
+    private MicroBenchmark() {
+    }
+
+    /**
+     * Measures given task execution time.
+     * 
+     * @param name          task name to use at the report
+     * @param iterations    number of task executions per measurement round
+     * @param units         number of processed units (e.g. symbols) per single task execution
+     * @param task          task to measure
+     * @return              average nanoseconds per single task execution
+     * @throws Exception    as thrown by the given task
+     */
+    public static double measure(String name, int iterations, long units, Task task) throws Exception {
+        for (int i = 0; i < WARM_UP_ROUNDS; ++i) {
+            runRound(iterations, task);
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < MEASUREMENT_ROUNDS; ++i) {
+            long time = runRound(iterations, task);
+            best = Math.min(best, time);
+            total += time;
+        }
+        double average = (double) total / MEASUREMENT_ROUNDS / iterations;
+        double bestPerIteration = (double) best / iterations;
+        System.out.println(String.format(Locale.US, "%-50s avg %12.1f us/op, best %12.1f us/op, %8.1f M units/s",
+            name, average / 1000, bestPerIteration / 1000, units * 1000 / bestPerIteration));
+        return average;
+    }
+
+    private static long runRound(int iterations, Task task) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            blackHole += task.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Benchmarked task.
+     */
+    public interface Task {
+
+        /**
+         * @return              any value calculated by the task (is used to prevent dead code elimination)
+         * @throws Exception    in case of unexpected problem during task processing
+         */
+        long run() throws Exception;
+    }
+}
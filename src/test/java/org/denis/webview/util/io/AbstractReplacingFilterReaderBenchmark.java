@@ -0,0 +1,153 @@
+package org.denis.webview.util.io;
+
+import org.denis.webview.util.MicroBenchmark;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.Random;
+
+/**
+ * Compares per-symbol copy loop that was used by {@link UrlDecodingReader} before
+ * {@link AbstractReplacingFilterReader#copyPlainSymbols(AbstractReplacingFilterReader.DataContext, int) bulk copy}
+ * had been introduced with the current implementation.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class AbstractReplacingFilterReaderBenchmark {
+
+    private static final int INPUT_SIZE = 256 * 1024;
+
+    /**
+     * @param args      <code>'legacy'</code> or <code>'bulk'</code> to measure only particular copy loop (it's
+     *                  recommended to measure them at separate VMs in order to avoid profile pollution);
+     *                  both loops are measured if no argument is given
+     * @throws Exception    in case of unexpected exception during the processing
+     */
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : null;
+        run("rare escapes (3%)", buildRarelyEscapedText(), mode);
+        run("form-encoded java source", buildFormEncodedSource(), mode);
+    }
+
+    private static void run(String name, final String input, String mode) throws Exception {
+        final char[] buffer = new char[1024];
+        if (mode == null || "legacy".equals(mode)) {
+            MicroBenchmark.measure("per-symbol loop, " + name, 200, input.length(), new MicroBenchmark.Task() {
+                @Override
+                public long run() throws Exception {
+                    return drain(new LegacyUrlDecodingReader(new StringReader(input)), buffer);
+                }
+            });
+        }
+        if (mode == null || "bulk".equals(mode)) {
+            MicroBenchmark.measure("bulk copy, " + name, 200, input.length(), new MicroBenchmark.Task() {
+                @Override
+                public long run() throws Exception {
+                    return drain(new UrlDecodingReader(new StringReader(input)), buffer);
+                }
+            });
+        }
+    }
+
+    private static long drain(Reader reader, char[] buffer) throws Exception {
+        long result = 0;
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            result += read;
+        }
+        return result;
+    }
+
+    private static String buildRarelyEscapedText() {
+        Random random = new Random(1);
+        StringBuilder buffer = new StringBuilder(INPUT_SIZE);
+        while (buffer.length() < INPUT_SIZE) {
+            if (random.nextInt(100) < 3) {
+                buffer.append("%3D");
+            } else {
+                buffer.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return buffer.toString();
+    }
+
+    private static String buildFormEncodedSource() throws Exception {
+        String source = "    /**\n     * Returns the value.\n     */\n    public int getValue() {\n"
+                        + "        return value == null ? 0 : value.intValue();\n    }\n\n";
+        StringBuilder buffer = new StringBuilder(INPUT_SIZE);
+        String encoded = URLEncoder.encode(source, "UTF-8");
+        while (buffer.length() < INPUT_SIZE) {
+            buffer.append(encoded);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Url decoder that uses per-symbol copy loop.
+     */
+    private static class LegacyUrlDecodingReader extends AbstractReplacingFilterReader {
+
+        private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
+        private final ByteBuffer byteBuffer = ByteBuffer.allocate(4);
+        private final CharBuffer charBuffer = CharBuffer.allocate(1);
+
+        LegacyUrlDecodingReader(Reader in) {
+            super(in, 3);
+        }
+
+        @Override
+        protected int copy(DataContext dataContext) throws IllegalStateException {
+            int result = 0;
+            for (
+                int externalBufferOffset = dataContext.externalOffset,
+                    externalBufferMaxOffset = dataContext.externalOffset + dataContext.externalLength;
+                dataContext.internalStart < dataContext.internalEnd && externalBufferOffset < externalBufferMaxOffset;
+                ++dataContext.internalStart, ++result)
+            {
+                switch (dataContext.internalBuffer[dataContext.internalStart]) {
+                    case '+':
+                        dataContext.externalBuffer[externalBufferOffset++] = ' ';
+                        break;
+                    case '%':
+                        if (dataContext.internalEnd - dataContext.internalStart < 3) {
+                            return  result;
+                        }
+                        if (decode(dataContext.internalBuffer, dataContext.internalStart + 1)) {
+                            dataContext.externalBuffer[externalBufferOffset++] = charBuffer.get();
+                            charBuffer.clear();
+                        } else {
+                            --result;
+                        }
+                        dataContext.internalStart += 2;
+                        break;
+                    default:
+                        dataContext.externalBuffer[externalBufferOffset++]
+                            = dataContext.internalBuffer[dataContext.internalStart];
+                }
+            }
+            return result;
+        }
+
+        private boolean decode(char[] buf, int offset) {
+            byteBuffer.put((byte) ((toNumber(buf[offset]) << 4) | toNumber(buf[offset + 1])));
+            int position = byteBuffer.position();
+            byteBuffer.flip();
+            charBuffer.clear();
+            decoder.decode(byteBuffer, charBuffer, true);
+            if (charBuffer.position() > 0) {
+                byteBuffer.clear();
+                charBuffer.flip();
+                return true;
+            }
+            byteBuffer.position(position);
+            byteBuffer.limit(byteBuffer.capacity());
+            return false;
+        }
+    }
+}
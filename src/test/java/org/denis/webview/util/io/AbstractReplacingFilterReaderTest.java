@@ -55,6 +55,16 @@ public abstract class AbstractReplacingFilterReaderTest<T extends AbstractReplac
         };
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void nonAsciiReplacementStartSymbol() throws Exception {
+        new AbstractReplacingFilterReader(new StringReader("test"), 1, '\u0442') {
+            @Override
+            protected int copy(DataContext dataContext) throws IllegalStateException {
+                return 0;
+            }
+        };
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void negativeReadOffset() throws Exception {
         getReader("test").read(new char[0], -1, 1);
@@ -0,0 +1,121 @@
+package org.denis.webview.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ContentEncodingTest {
+
+    private static final String DATA = "source=class+A+%7B%0A++++int+i%3B%0A%7D";
+
+    @Test
+    public void parse() {
+        assertSame(ContentEncoding.IDENTITY, ContentEncoding.parse(null));
+        assertSame(ContentEncoding.IDENTITY, ContentEncoding.parse(""));
+        assertSame(ContentEncoding.IDENTITY, ContentEncoding.parse("identity"));
+        assertSame(ContentEncoding.GZIP, ContentEncoding.parse("gzip"));
+        assertSame(ContentEncoding.GZIP, ContentEncoding.parse(" X-GZIP "));
+        assertSame(ContentEncoding.DEFLATE, ContentEncoding.parse("Deflate"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedEncoding() {
+        ContentEncoding.parse("br");
+    }
+
+    @Test
+    public void identity() throws Exception {
+        assertEquals(DATA, decode(ContentEncoding.IDENTITY, DATA.getBytes("ASCII")));
+    }
+
+    @Test
+    public void gzip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out));
+        assertEquals(DATA, decode(ContentEncoding.GZIP, out.toByteArray()));
+    }
+
+    @Test
+    public void zlibDeflate() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, false)));
+        assertEquals(DATA, decode(ContentEncoding.DEFLATE, out.toByteArray()));
+    }
+
+    @Test
+    public void rawDeflate() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true)));
+        assertEquals(DATA, decode(ContentEncoding.DEFLATE, out.toByteArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyGzip() throws Exception {
+        decode(ContentEncoding.GZIP, new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedGzip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out));
+        decode(ContentEncoding.GZIP, Arrays.copyOf(out.toByteArray(), out.size() / 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notGzip() throws Exception {
+        decode(ContentEncoding.GZIP, DATA.getBytes("ASCII"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDeflate() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, false)));
+        decode(ContentEncoding.DEFLATE, Arrays.copyOf(out.toByteArray(), out.size() / 2));
+    }
+
+    @Test
+    public void compressedFormData() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out));
+        UrlDecodingInputStreamReader reader = new UrlDecodingInputStreamReader(
+            ContentEncoding.GZIP.decode(new ByteArrayInputStream(out.toByteArray())), true, true
+        );
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[3];
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            builder.append(buffer, 0, read);
+        }
+        assertEquals("source=class A {\n    int i;\n}", builder.toString());
+    }
+
+    private static void write(OutputStream out) throws Exception {
+        out.write(DATA.getBytes("ASCII"));
+        out.close();
+    }
+
+    private static String decode(ContentEncoding encoding, byte[] data) throws Exception {
+        InputStream in = encoding.decode(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("ASCII");
+    }
+}
@@ -0,0 +1,152 @@
+package org.denis.webview.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class FlushableGzipOutputStreamTest {
+
+    private static final int HEADER_LENGTH = 10;
+
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] data = createData(100000);
+        for (int level : new int[] { Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FlushableGzipOutputStream stream = new FlushableGzipOutputStream(out, level, 0, 10000);
+            for (int i = 0; i < data.length; i += 777) {
+                stream.write(data, i, Math.min(777, data.length - i));
+                stream.flush();
+            }
+            stream.close();
+
+            assertArrayEquals(data, gunzip(out.toByteArray()));
+            assertEquals(data.length, stream.getInputBytesNumber());
+            assertEquals(out.size(), stream.getOutputBytesNumber());
+        }
+    }
+
+    @Test
+    public void empty() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FlushableGzipOutputStream(out, Deflater.DEFAULT_COMPRESSION, 0, 0).close();
+        assertEquals(0, gunzip(out.toByteArray()).length);
+    }
+
+    @Test
+    public void flushPolicy() throws Exception {
+        byte[] data = createData(10000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FlushableGzipOutputStream stream = new FlushableGzipOutputStream(out, Deflater.DEFAULT_COMPRESSION, 1000,
+                                                                         5000);
+        // Too small to flush.
+        stream.write(data, 0, 500);
+        stream.flush();
+        assertEquals(0, inflatePrefix(out.toByteArray()).length);
+
+        stream.write(data, 500, 500);
+        stream.flush();
+        assertArrayEquals(Arrays.copyOf(data, 1000), inflatePrefix(out.toByteArray()));
+
+        // Automatic flush.
+        stream.write(data, 1000, 6000);
+        assertArrayEquals(Arrays.copyOf(data, 7000), inflatePrefix(out.toByteArray()));
+
+        stream.write(data, 7000, 3000);
+        stream.finish();
+        assertArrayEquals(data, gunzip(out.toByteArray()));
+        assertTrue(stream.getOutputBytesNumber() < data.length / 5);
+    }
+
+    @Test
+    public void singleBytes() throws Exception {
+        byte[] data = createData(1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FlushableGzipOutputStream stream = new FlushableGzipOutputStream(out, Deflater.DEFAULT_COMPRESSION, 0, 100);
+        for (byte b : data) {
+            stream.write(b);
+        }
+        stream.close();
+        assertArrayEquals(data, gunzip(out.toByteArray()));
+    }
+
+    @Test
+    public void failedFinish() throws Exception {
+        FlushableGzipOutputStream stream = new FlushableGzipOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        }, Deflater.DEFAULT_COMPRESSION, 0, 0);
+        try {
+            stream.finish();
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        // The stream is ended, i.e. it doesn't touch the released compressor.
+        stream.finish();
+        stream.end();
+        try {
+            stream.write(1);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevel() {
+        new FlushableGzipOutputStream(new ByteArrayOutputStream(), 10, 0, 0);
+    }
+
+    private static byte[] createData(int length) throws Exception {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; buffer.length() < length; i++) {
+            buffer.append("<span style=\"color:#000080;font-weight:bold;\">public</span> int x").append(i)
+                  .append(";\n");
+        }
+        return buffer.substring(0, length).getBytes("UTF-8");
+    }
+
+    private static byte[] gunzip(byte[] data) throws Exception {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return      all data that may be decompressed from the given beginning of the compressed stream
+     */
+    private static byte[] inflatePrefix(byte[] data) throws Exception {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int inflated = inflater.inflate(buffer); inflated > 0; inflated = inflater.inflate(buffer)) {
+            out.write(buffer, 0, inflated);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+}
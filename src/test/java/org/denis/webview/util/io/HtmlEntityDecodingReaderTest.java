@@ -2,6 +2,12 @@ package org.denis.webview.util.io;
 
 import org.junit.Test;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author Denis Zhdanov
  * @since 07/04/2010
@@ -12,21 +18,35 @@ public class HtmlEntityDecodingReaderTest extends AbstractReplacingFilterReaderT
         super(HtmlEntityDecodingReader.class);
     }
 
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void emptyDecimalEntity() throws Exception {
-        getReader("&#;").read(new char[8]);
+        doTest("&#;", "&#;");
     }
     
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void tooManySymbolsAtDecimalEntity() throws Exception {
-        getReader(String.format("&#%s1;", Integer.toString(Character.MAX_VALUE))).read(new char[16]);
+        String in = String.format("&#%s1;", Integer.toString(Character.MAX_CODE_POINT));
+        doTest(in, in);
+    }
+
+    @Test
+    public void tooBigDecimalEntity() throws Exception {
+        doTest("&#1114112;&#33;", "&#1114112;!");
+    }
+
+    @Test
+    public void supplementaryDecimalEntity() throws Exception {
+        doTest("a&#128512;b", "a\ud83d\ude00b");
     }
 
-    @Test(expected = IllegalStateException.class)
+    @Test
+    public void surrogateEntity() throws Exception {
+        doTest("&#55357;&#xDE00;&#0;", "\ufffd\ufffd\ufffd");
+    }
+
+    @Test
     public void incompleteDecimalEntity() throws Exception {
-        HtmlEntityDecodingReader reader = getReader("&#123");
-        reader.read(new char[16]);
-        reader.read(new char[16]); // Read one more time in order to get EOF.
+        doTest("&#123", "&#123");
     }
 
     @Test
@@ -39,16 +59,15 @@ public class HtmlEntityDecodingReaderTest extends AbstractReplacingFilterReaderT
         doTest("&#33;&#36;&#35;", "!$#");
     }
 
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void tooManySymbolsAtHexEntity() throws Exception {
-        getReader(String.format("&#x%s1;", Integer.toBinaryString(Character.MAX_VALUE) + '1')).read(new char[16]);
+        String in = String.format("&#x%s1;", Integer.toBinaryString(Character.MAX_VALUE) + '1');
+        doTest(in, in);
     }
 
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void incompleteHexEntity() throws Exception {
-        HtmlEntityDecodingReader reader = getReader("&#x123");
-        reader.read(new char[16]);
-        reader.read(new char[16]); // Read one more time in order to get EOF.
+        doTest("&#x123", "&#x123");
     }
     
     @Test
@@ -56,20 +75,78 @@ public class HtmlEntityDecodingReaderTest extends AbstractReplacingFilterReaderT
         doTest("&#x442;&#x0435;&#x441;&#x0442;", "\u0442\u0435\u0441\u0442");
     }
 
+    @Test
+    public void upperCaseHexPrefix() throws Exception {
+        doTest("&#X41;&#X4a;", "AJ");
+    }
+
+    @Test
+    public void supplementaryHexEntity() throws Exception {
+        doTest("a&#x1F600;b", "a\ud83d\ude00b");
+    }
+
+    @Test
+    public void tooBigHexEntity() throws Exception {
+        doTest("&#x110000;&#x21;", "&#x110000;!");
+    }
+
     @Test
     public void characterEntities() throws Exception {
         doTest("&amp;&quot;&lt;", "&\"<");
     }
     
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void invalidCharacterEntity() throws Exception {
-        getReader("&ampp;").read(new char[16]);
+        doTest("&ampp;", "&ampp;");
     }
 
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void incompleteCharacterEntity() throws Exception {
-        HtmlEntityDecodingReader reader = getReader("&amp");
-        reader.read(new char[16]);
-        reader.read(new char[16]); // Read one more time in order to get EOF.
+        doTest("&amp", "&amp");
+        doTest("a&&", "a&&");
+    }
+
+    @Test
+    public void sourceCodeWithAmpersands() throws Exception {
+        doTest("if (a && b & c) x &= &lt;y;", "if (a && b & c) x &= <y;");
+        doTest("&&amp;&;&#x;&foo&#33;", "&&&;&#x;&foo!");
+    }
+
+    @Test
+    public void html5Entities() throws Exception {
+        doTest("&bigstar;&NotEqual;&CounterClockwiseContourIntegral;", "\u2605\u2260\u2233");
+    }
+
+    @Test
+    public void supplementaryEntities() throws Exception {
+        doTest("a&Afr;b&oopf;", "a\uD835\uDD04b\uD835\uDD60");
+    }
+
+    @Test
+    public void twoSymbolEntities() throws Exception {
+        doTest("&NotEqualTilde;&bne;", "\u2242\u0338=\u20E5");
+    }
+
+    @Test
+    public void entitySplitBetweenReads() throws Exception {
+        String in = "x&NotEqualTilde;&#1090;&lt;y";
+        HtmlEntityDecodingReader reader = new HtmlEntityDecodingReader(new FilterReader(new StringReader(in)) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                // Deliver data symbol by symbol.
+                return super.read(cbuf, off, 1);
+            }
+        });
+        StringBuilder builder = new StringBuilder();
+        int read;
+        while ((read = reader.read()) >= 0) {
+            builder.append((char) read);
+        }
+        assertEquals("x\u2242\u0338\u0442<y", builder.toString());
+    }
+
+    @Test
+    public void entityPrefixOnly() throws Exception {
+        doTest("&NotEqua;", "&NotEqua;");
     }
 }
@@ -1,108 +1,165 @@
 package org.denis.webview.util.io;
 
-import static org.junit.Assert.*;
-import org.denis.webview.util.io.HttpParametersReader;
-import org.jmock.Expectations;
 import org.junit.Test;
-import org.junit.Before;
-import org.junit.After;
-import org.junit.runner.RunWith;
-import org.jmock.integration.junit4.JMock;
-import org.jmock.integration.junit4.JUnit4Mockery;
-import org.jmock.Mockery;
-import org.jmock.lib.legacy.ClassImposteriser;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 /**
  * @author Denis Zhdanov
  * @since 06/02/2011
  */
-@RunWith(JMock.class)
 public class HttpParametersReaderTest {
 
-    private Runnable callback;
-    private Mockery mockery;
-    
-    @Before
-    public void setUp() {
-        mockery = new JUnit4Mockery();
-        callback = mockery.mock(Runnable.class);
+    private enum Key { PROFILE, LANGUAGE, LINE_NUMBERS, SOURCE }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullStream() {
+        new HttpParametersReader<Key>(null, Key.class, Key.SOURCE);
     }
-    
-    @After
-    public void checkExpectations() {
-        mockery.assertIsSatisfied();
+
+    @Test
+    public void noParameters() throws IOException {
+        doTest("");
+        doTest("&&");
     }
 
     @Test
-    public void noCallbackCalls() throws IOException {
-        doTest("abc");
+    public void smallParameters() throws IOException {
+        doTest("profile=idea&language=java", "PROFILE=idea", "LANGUAGE=java");
     }
 
     @Test
-    public void oneSeparatorInTheMiddle() throws IOException {
-        doTest("abc&def");
+    public void unknownParameters() throws IOException {
+        doTest("profiles=idea&Profile=eclipse&x=1&profile=netbeans&=2", "PROFILE=netbeans");
     }
 
     @Test
-    public void oneSeparatorAtStart() throws IOException {
-        doTest("&abc");
+    public void parameterNameWithDash() throws IOException {
+        doTest("line-numbers=true&line_numbers=false", "LINE_NUMBERS=true");
     }
 
     @Test
-    public void oneSeparatorAtEnd() throws IOException {
-        doTest("abc&");
+    public void emptyValues() throws IOException {
+        doTest("profile=&language", "PROFILE=", "LANGUAGE=");
     }
 
-    private void doTest(String text) throws IOException {
-        singleCharTest(text);
-        bufferTest(text);
+    @Test
+    public void encodedSeparators() throws IOException {
+        doTest("profile=a%26b%3Dc&language=%26lt%3B", "PROFILE=a&b=c", "LANGUAGE=&lt;");
     }
 
-    private void singleCharTest(String text) throws IOException {
-        HttpParametersReader reader = new HttpParametersReader(new StringReader(text), callback);
-        final int separators = countSeparators(text);
-        if (separators > 0) {
-            mockery.checking(new Expectations() {{
-                exactly(separators).of(callback).run();
-            }});
-        }
-        final String[] expectedChunks = text.split("&");
-        for (String chunk : expectedChunks) {
-            for (char expected : chunk.toCharArray()) {
-                assertEquals(expected, reader.read());
+    @Test
+    public void entitiesAreNotDecodedByDefault() throws IOException {
+        doTest("source=s.replace(%22%26amp%3B%22%2C+%22%26%22)%3B+x+%3D+%22%26lt%3Bb%26gt%3B%22%3B&profile=idea",
+               "SOURCE:s.replace(\"&amp;\", \"&\"); x = \"&lt;b&gt;\";", "PROFILE=idea");
+    }
+
+    @Test
+    public void entitiesDecoding() throws IOException {
+        List<String> events = new ArrayList<String>();
+        HttpParametersReader<Key> reader = new HttpParametersReader<Key>(
+            new ByteArrayInputStream("language=%26lt%3B&source=a+%26amp%3B%26amp%3B+b".getBytes("ASCII")), Key.class,
+            Key.SOURCE, true
+        );
+        reader.parse(new RecordingListener(events));
+        assertEquals(Arrays.asList("LANGUAGE=<", "SOURCE:a && b"), events);
+    }
+
+    @Test
+    public void tooLongValue() throws IOException {
+        char[] value = new char[HttpParametersReader.MAX_VALUE_LENGTH];
+        Arrays.fill(value, 'a');
+        String maxValue = new String(value);
+        doTest("profile=" + maxValue + "&language=" + maxValue + "a", "PROFILE=" + maxValue);
+    }
+
+    @Test
+    public void streamingParameterAtTheEnd() throws IOException {
+        doTest("profile=idea&source=class+A+%7B%7D", "PROFILE=idea", "SOURCE:class A {}");
+    }
+
+    @Test
+    public void streamingParameterInTheMiddle() throws IOException {
+        doTest("profile=idea&source=a+%26%26+b&language=xml", "PROFILE=idea", "SOURCE:a && b", "LANGUAGE=xml");
+    }
+
+    @Test
+    public void partiallyReadStreamingParameter() throws IOException {
+        final List<String> events = new ArrayList<String>();
+        HttpParametersReader<Key> reader = new HttpParametersReader<Key>(
+            new ByteArrayInputStream("source=abc&profile=idea".getBytes("ASCII")), Key.class, Key.SOURCE
+        );
+        reader.parse(new RecordingListener(events) {
+            @Override
+            public void onStreamingParameter(Key key, Reader value) throws IOException {
+                events.add(key + ":" + (char) value.read());
             }
-        }
-        assertTrue(reader.read() < 0);
+        });
+        assertEquals(Arrays.asList("SOURCE:a", "PROFILE=idea"), events);
     }
 
-    private void bufferTest(String text) throws IOException {
-        HttpParametersReader reader = new HttpParametersReader(new StringReader(text), callback);
-        final int separators = countSeparators(text);
-        if (separators > 0) {
-            mockery.checking(new Expectations() {{
-                exactly(separators).of(callback).run();
-            }});
+    @Test
+    public void parseToStreamingParameter() throws IOException {
+        List<String> events = new ArrayList<String>();
+        HttpParametersReader<Key> reader = new HttpParametersReader<Key>(
+            new ByteArrayInputStream("profile=idea&source=ab+c&language=xml&source=d".getBytes("ASCII")), Key.class,
+            Key.SOURCE
+        );
+        Reader value = reader.parseToStreamingParameter(new RecordingListener(events));
+        assertEquals(Arrays.asList("PROFILE=idea"), events);
+        assertEquals('a', value.read());
+        reader.parse(new RecordingListener(events));
+        assertEquals(Arrays.asList("PROFILE=idea", "LANGUAGE=xml", "SOURCE:d"), events);
+    }
+
+    @Test
+    public void parseToMissingStreamingParameter() throws IOException {
+        List<String> events = new ArrayList<String>();
+        HttpParametersReader<Key> reader = new HttpParametersReader<Key>(
+            new ByteArrayInputStream("profile=idea&language=xml".getBytes("ASCII")), Key.class, Key.SOURCE
+        );
+        assertNull(reader.parseToStreamingParameter(new RecordingListener(events)));
+        assertEquals(Arrays.asList("PROFILE=idea", "LANGUAGE=xml"), events);
+    }
+
+    private static void doTest(String data, String ... expected) throws IOException {
+        List<String> events = new ArrayList<String>();
+        HttpParametersReader<Key> reader = new HttpParametersReader<Key>(
+            new ByteArrayInputStream(data.getBytes("ASCII")), Key.class, Key.SOURCE
+        );
+        reader.parse(new RecordingListener(events));
+        assertEquals(Arrays.asList(expected), events);
+    }
+
+    private static class RecordingListener implements HttpParametersReader.Listener<Key> {
+
+        private final List<String> events;
+
+        RecordingListener(List<String> events) {
+            this.events = events;
         }
-        final String[] expectedChunks = text.split("&");
-        char[] buffer = new char[text.length()];
-        for (String chunk : expectedChunks) {
-            int read = reader.read(buffer);
-            assertEquals(chunk, new String(buffer, 0, read));
+
+        @Override
+        public void onParameter(Key key, char[] buffer, int start, int end) {
+            events.add(key + "=" + new String(buffer, start, end - start));
         }
-    }
 
-    private static int countSeparators(String text) {
-        int result = 0;
-        for (char c : text.toCharArray()) {
-            if (c == '&') {
-                ++result;
+        @Override
+        public void onStreamingParameter(Key key, Reader value) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            int c;
+            while ((c = value.read()) >= 0) {
+                builder.append((char) c);
             }
+            events.add(key + ":" + builder);
         }
-        return result;
     }
 }
@@ -0,0 +1,165 @@
+package org.denis.webview.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class MultipartInputStreamTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullStream() {
+        new MultipartInputStream(null, BOUNDARY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBoundary() {
+        new MultipartInputStream(new ByteArrayInputStream(new byte[0]), "");
+    }
+
+    @Test
+    public void headerParameter() {
+        assertEquals("abc", MultipartInputStream.getHeaderParameter("multipart/form-data; boundary=abc", "boundary"));
+        assertEquals("abc", MultipartInputStream.getHeaderParameter("multipart/form-data;boundary=\"abc\"", "boundary"));
+        assertEquals("source", MultipartInputStream.getHeaderParameter("form-data; name=\"source\"", "name"));
+        assertEquals("a \"b\";.java", MultipartInputStream.getHeaderParameter(
+            "form-data; name=\"file\"; filename=\"a \\\"b\\\";.java\"", "filename"
+        ));
+        assertEquals("", MultipartInputStream.getHeaderParameter("form-data; name=\"file\"; filename=\"\"", "filename"));
+        assertNull(MultipartInputStream.getHeaderParameter("form-data; name=\"source\"", "filename"));
+        assertNull(MultipartInputStream.getHeaderParameter("form-data; filename=\"a\"", "name"));
+        assertNull(MultipartInputStream.getHeaderParameter(null, "name"));
+    }
+
+    @Test
+    public void noParts() throws Exception {
+        assertFalse(new MultipartInputStream(new ByteArrayInputStream(new byte[0]), BOUNDARY).nextPart());
+        assertFalse(stream("--" + BOUNDARY + "--\r\n", 64).nextPart());
+    }
+
+    @Test
+    public void parts() throws Exception {
+        String data = "preamble\r\n"
+                      + "--" + BOUNDARY + "\r\n"
+                      + "Content-Disposition: form-data; name=\"language\"\r\n"
+                      + "\r\n"
+                      + "java\r\n"
+                      + "--" + BOUNDARY + "  \r\n"
+                      + "content-disposition: form-data; name=\"file\"; filename=\"A.java\"\r\n"
+                      + "Content-Type: text/x-java; charset=windows-1251\r\n"
+                      + "\r\n"
+                      + "class A {\r\n--" + BOUNDARY.substring(0, 10) + "\r\n\r\n-}\r\n"
+                      + "--" + BOUNDARY + "\r\n"
+                      + "Content-Disposition: form-data; name=\"empty\"\r\n"
+                      + "\r\n"
+                      + "\r\n"
+                      + "--" + BOUNDARY + "--\r\n"
+                      + "epilogue";
+        for (int bufferSize = 1; bufferSize <= data.length(); bufferSize++) {
+            for (int readSize = 1; readSize < 20; readSize += 6) {
+                MultipartInputStream in = stream(data, bufferSize);
+
+                assertTrue(in.nextPart());
+                assertEquals("language", in.getName());
+                assertNull(in.getFileName());
+                assertNull(in.getContentType());
+                assertEquals("java", readAll(in, readSize));
+
+                assertTrue(in.nextPart());
+                assertEquals("file", in.getName());
+                assertEquals("A.java", in.getFileName());
+                assertEquals("text/x-java; charset=windows-1251", in.getContentType());
+                assertEquals("class A {\r\n--" + BOUNDARY.substring(0, 10) + "\r\n\r\n-}", readAll(in, readSize));
+
+                assertTrue(in.nextPart());
+                assertEquals("empty", in.getName());
+                assertEquals("", readAll(in, readSize));
+
+                assertFalse(in.nextPart());
+                assertFalse(in.nextPart());
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void skipPartialBody() throws Exception {
+        String data = "--" + BOUNDARY + "\r\n"
+                      + "Content-Disposition: form-data; name=\"a\"\r\n"
+                      + "\r\n"
+                      + "0123456789\r\n"
+                      + "--" + BOUNDARY + "\r\n"
+                      + "Content-Disposition: form-data; name=\"b\"\r\n"
+                      + "\r\n"
+                      + "b\r\n"
+                      + "--" + BOUNDARY + "--";
+        MultipartInputStream in = stream(data, 16);
+        assertTrue(in.nextPart());
+        assertEquals('0', in.read());
+        assertTrue(in.nextPart());
+        assertEquals("b", in.getName());
+        assertEquals("b", readAll(in, 1));
+        assertFalse(in.nextPart());
+    }
+
+    @Test
+    public void truncatedData() throws Exception {
+        String data = "--" + BOUNDARY + "\r\n"
+                      + "Content-Disposition: form-data; name=\"a\"\r\n"
+                      + "\r\n"
+                      + "abc\r\n--" + BOUNDARY.substring(0, 5);
+        MultipartInputStream in = stream(data, 16);
+        assertTrue(in.nextPart());
+        assertEquals("abc\r\n--" + BOUNDARY.substring(0, 5), readAll(in, 4));
+        assertFalse(in.nextPart());
+    }
+
+    @Test
+    public void largeBody() throws Exception {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 1024 * 1024) {
+            body.append("line\r\n--").append(BOUNDARY, 0, 20).append("\r\n");
+        }
+        String data = "--" + BOUNDARY + "\r\n"
+                      + "Content-Disposition: form-data; name=\"file\"; filename=\"big.txt\"\r\n"
+                      + "\r\n"
+                      + body + "\r\n"
+                      + "--" + BOUNDARY + "--";
+        MultipartInputStream in = stream(data, MultipartInputStream.DEFAULT_BUFFER_SIZE);
+        assertTrue(in.nextPart());
+        assertEquals(body.toString(), readAll(in, 1000));
+        assertFalse(in.nextPart());
+    }
+
+    private static MultipartInputStream stream(String data, int bufferSize) throws Exception {
+        return new MultipartInputStream(new ByteArrayInputStream(data.getBytes("ASCII")), BOUNDARY, bufferSize);
+    }
+
+    private static String readAll(InputStream in, int readSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[readSize];
+        int read;
+        if (readSize == 1) {
+            while ((read = in.read()) >= 0) {
+                out.write(read);
+            }
+        } else {
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toString("ASCII");
+    }
+}
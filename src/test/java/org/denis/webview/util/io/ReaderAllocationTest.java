@@ -0,0 +1,107 @@
+package org.denis.webview.util.io;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reading a large paste through the reader stack via {@link Reader#read(CharBuffer)} allocates
+ * constant amount of memory, i.e. doesn't depend on the input size.
+ * <p/>
+ * Relies on the <code>HotSpot</code>-specific {@link com.sun.management.ThreadMXBean}, the test is skipped if it's
+ * not available.
+ *
+ * @author Denis Zhdanov
+ * @since 6/15/11
+ */
+public class ReaderAllocationTest {
+
+    private static final int PASTE_SIZE = 1024 * 1024;
+
+    /** Max number of bytes that may be allocated during reading the whole paste (reader objects and their buffers). */
+    private static final long MAX_ALLOCATED_BYTES = 64 * 1024;
+
+    @Test
+    public void urlDecodingInputStreamReader() throws Exception {
+        final byte[] data = ("source=" + getEncodedPaste()).getBytes("ASCII");
+        doTest(new ReaderFactory() {
+            @Override
+            public Reader create() {
+                return new SymbolCountingReader(
+                    new UrlDecodingInputStreamReader(new ByteArrayInputStream(data), true, true)
+                );
+            }
+        });
+    }
+
+    @Test
+    public void replacingFilterReaders() throws Exception {
+        final String data = getEncodedPaste();
+        doTest(new ReaderFactory() {
+            @Override
+            public Reader create() {
+                return new SymbolCountingReader(new HtmlEntityDecodingReader(new UrlDecodingReader(
+                    new StringReader(data)
+                )));
+            }
+        });
+    }
+
+    private static void doTest(ReaderFactory factory) throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        CharBuffer buffer = CharBuffer.allocate(1024);
+
+        // Warm up in order to exclude class loading and initialization.
+        readAll(factory.create(), buffer);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long read = readAll(factory.create(), buffer);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(read >= PASTE_SIZE);
+        assertTrue(String.format("%d bytes are allocated during reading %d symbols", allocated, read),
+                   allocated < MAX_ALLOCATED_BYTES);
+    }
+
+    private static long readAll(Reader reader, CharBuffer buffer) throws Exception {
+        long result = 0;
+        int read;
+        while (true) {
+            buffer.clear();
+            read = reader.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            // Don't use assertEquals() here because it boxes its arguments.
+            assertTrue(read == buffer.position());
+            result += read;
+        }
+        return result;
+    }
+
+    private static String getEncodedPaste() {
+        String line = "    if (a < b%20%7C%7C%20c > 0) {%0A        map.put(%22key%22, %26quot;value%26quot;);%0A    }%0A";
+        StringBuilder builder = new StringBuilder(PASTE_SIZE * 2);
+        while (builder.length() < PASTE_SIZE * 2) {
+            builder.append(line);
+        }
+        return builder.toString();
+    }
+
+    private interface ReaderFactory {
+        Reader create();
+    }
+}
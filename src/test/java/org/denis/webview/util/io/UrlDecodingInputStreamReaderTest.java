@@ -0,0 +1,198 @@
+package org.denis.webview.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Denis Zhdanov
+ * @since 6/14/11
+ */
+public class UrlDecodingInputStreamReaderTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullStreamAtConstructor() {
+        new UrlDecodingInputStreamReader(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidHexSymbols() throws Exception {
+        getReader("%AG").read(new char[5]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void incompleteHexData() throws Exception {
+        UrlDecodingInputStreamReader reader = getReader("%A");
+        reader.read(new char[5]);
+    }
+
+    @Test
+    public void noReplacements() throws Exception {
+        doTest("test", "test");
+    }
+
+    @Test
+    public void spaceReplacement() throws Exception {
+        doTest("this+is+a+test", "this is a test");
+    }
+
+    @Test
+    public void encodedPlus() throws Exception {
+        doTest("1%2B2", "1+2");
+    }
+
+    @Test
+    public void hexReplacement() throws Exception {
+        doTest("%26%231090%3B%26%231077%3B%26%231089%3B%26%231090%3B", "&#1090;&#1077;&#1089;&#1090;");
+    }
+
+    @Test
+    public void nonAsciiSymbols() throws Exception {
+        doTest(
+            "ide=%D1%80%D1%83%D1%81%D1%81%D0%BA%D0%BE%D0%B5+%D1%81%D0%BB%D0%BE%D0%B2%D0%BE&language=java",
+            "ide=русское слово&language=java"
+        );
+    }
+
+    @Test
+    public void rawNonAsciiBytes() throws Exception {
+        doTest(new byte[] {'a', (byte) 0xD1, (byte) 0x80, 'b'}, "aрb");
+    }
+
+    @Test
+    public void supplementarySymbol() throws Exception {
+        doTest("x%F0%9F%98%80y", "x😀y");
+    }
+
+    @Test
+    public void malformedSequences() throws Exception {
+        doTest("a%D1b", "a�b");
+        doTest("a%80b", "a�b");
+        doTest("a%C0%80b", "a�b"); // Overlong encoding.
+        doTest("a%D1", "a�");
+    }
+
+    @Test
+    public void smallInternalBuffer() throws Exception {
+        String input = "%D1%80%D1%83+%F0%9F%98%80+test";
+        String expected = "ру 😀 test";
+        for (int bufferSize = 1; bufferSize < input.length(); ++bufferSize) {
+            UrlDecodingInputStreamReader reader = new UrlDecodingInputStreamReader(
+                new ByteArrayInputStream(input.getBytes("ASCII")), bufferSize
+            );
+            assertEquals(expected, readAll(reader, new char[1]));
+        }
+    }
+
+    @Test
+    public void entities() throws Exception {
+        doFusedTest("%26lt%3Bp%26gt%3B+%26amp%3Bamp%3B", "<p> &amp;");
+        doFusedTest("%26%231090%3B%26%23x435%3B%26%23X441%3B%26%231090%3B", "тест");
+        doFusedTest("%26%23x1F600%3B", "😀");
+        doFusedTest("%26NotEqualTilde%3B%26Afr%3B", "\u2242\u0338\uD835\uDD04");
+        doFusedTest("%26%230%3B%26%23x110000%3B%26%23xD800%3B", "���");
+    }
+
+    @Test
+    public void unknownEntitiesAreKeptAsIs() throws Exception {
+        doFusedTest("a+%26%26+b", "a && b");
+        doFusedTest("%26unknown%3B%26%23%3B%26%23x%3B", "&unknown;&#;&#x;");
+        doFusedTest("%26lt+%26lt", "&lt &lt");
+        doFusedTest("%26veryveryveryverylongname%3B", "&veryveryveryverylongname;");
+        doFusedTest("%26%D1%80", "&р");
+    }
+
+    @Test
+    public void parameters() throws Exception {
+        UrlDecodingInputStreamReader reader = getFusedReader("a=1&b=%26lt%3B%26&&c=x%26y");
+        assertEquals("a=1", readAll(reader, new char[3]));
+        assertTrue(reader.nextParameter());
+        assertEquals("b=<&", readAll(reader, new char[1]));
+        assertTrue(reader.nextParameter());
+        assertEquals("", readAll(reader, new char[5]));
+        assertTrue(reader.nextParameter());
+        assertEquals("c=x&y", readAll(reader, new char[5]));
+        assertFalse(reader.nextParameter());
+        assertEquals(-1, reader.read());
+    }
+
+    @Test
+    public void skipParameters() throws Exception {
+        UrlDecodingInputStreamReader reader = getFusedReader("a=1&b=2&source=test");
+        assertEquals('a', reader.read());
+        assertTrue(reader.nextParameter());
+        assertTrue(reader.nextParameter());
+        assertEquals("source=test", readAll(reader, new char[1024]));
+        assertFalse(reader.nextParameter());
+    }
+
+    @Test
+    public void fusedSmallInternalBuffer() throws Exception {
+        String input = "x=%D1%80%26lt%3B%26%23x1F600%3B%26%26+%26amp%3B&y=%26";
+        for (int bufferSize = 1; bufferSize < input.length(); ++bufferSize) {
+            UrlDecodingInputStreamReader reader = new UrlDecodingInputStreamReader(
+                new ByteArrayInputStream(input.getBytes("ASCII")), bufferSize, true, true
+            );
+            assertEquals("x=р<😀&& &", readAll(reader, new char[1]));
+            assertTrue(reader.nextParameter());
+            assertEquals("y=&", readAll(reader, new char[2]));
+            assertFalse(reader.nextParameter());
+        }
+    }
+
+    @Test
+    public void rawMode() throws Exception {
+        byte[] in = "a+b%20&lt;&x=\u0440".getBytes("UTF-8");
+        for (int bufferSize = 1; bufferSize <= in.length; ++bufferSize) {
+            UrlDecodingInputStreamReader reader = new UrlDecodingInputStreamReader(
+                new ByteArrayInputStream(in), bufferSize, false, false, false
+            );
+            assertEquals("a+b%20&lt;&x=\u0440", readAll(reader, new char[3]));
+        }
+    }
+
+    private static UrlDecodingInputStreamReader getFusedReader(String in) throws Exception {
+        return new UrlDecodingInputStreamReader(new ByteArrayInputStream(in.getBytes("ASCII")), true, true);
+    }
+
+    private static void doFusedTest(String in, String out) throws Exception {
+        assertEquals(out, readAll(getFusedReader(in), new char[1]));
+        assertEquals(out, readAll(getFusedReader(in), new char[1024]));
+    }
+
+    private static UrlDecodingInputStreamReader getReader(String in) throws Exception {
+        return new UrlDecodingInputStreamReader(new ByteArrayInputStream(in.getBytes("ASCII")));
+    }
+
+    private static void doTest(String in, String out) throws Exception {
+        doTest(in.getBytes("ASCII"), out);
+    }
+
+    private static void doTest(byte[] in, String out) throws Exception {
+        // Single char read.
+        UrlDecodingInputStreamReader reader = new UrlDecodingInputStreamReader(new ByteArrayInputStream(in));
+        StringBuilder builder = new StringBuilder();
+        int read;
+        while ((read = reader.read()) >= 0) {
+            builder.append((char) read);
+        }
+        assertEquals(out, builder.toString());
+
+        // Small and big buffers.
+        assertEquals(out, readAll(new UrlDecodingInputStreamReader(new ByteArrayInputStream(in)), new char[2]));
+        assertEquals(out, readAll(new UrlDecodingInputStreamReader(new ByteArrayInputStream(in)), new char[1024]));
+    }
+
+    private static String readAll(UrlDecodingInputStreamReader reader, char[] buffer) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+}